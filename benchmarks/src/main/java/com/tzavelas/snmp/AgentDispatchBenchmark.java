@@ -0,0 +1,114 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+
+/**
+ * Throughput of pipelined GETs of an annotated method that costs some CPU,
+ * processed on the transport thread of the agent or on its request pool.
+ * Compare -p threads=1,2,4,... up to the number of cores to see the pools
+ * scale, the "transport" pool ignores threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgentDispatchBenchmark {
+    private static final String ADDRESS = "127.0.0.1/2163";
+    private static final int PIPELINED_REQUESTS = 256;
+    private static final int MAX_PENDING_REQUESTS = 1024;
+    private static final OID BUSY = new OID(BusyBenchmarkStats.OID_PREFIX + ".1.0");
+
+    static class BusyBenchmarkStats {
+        static final String OID_PREFIX = "1.3.6.1.4.1.29506.102";
+
+        @MibObject(oid=OID_PREFIX+".1")
+        long getBusy() {
+            // e.g. an aggregate over some internal state
+            long hash = 0;
+            for (int i = 0; i < 20000; i++) {
+                hash = hash * 31 + i;
+            }
+            return hash & Long.MAX_VALUE;
+        }
+    }
+
+    @Param({ "transport", "fixed", "workStealing", "virtual" })
+    public String pool;
+
+    @Param({ "1", "2", "4" })
+    public int threads;
+
+    private SimpleSNMPAgent agent;
+    private SimpleSNMPClient client;
+    private AnnotatedStatsMOGroup moGroup;
+
+    @Setup
+    public void setup() throws Exception {
+        agent = new SimpleSNMPAgent(ADDRESS);
+        switch (pool) {
+        case "transport": break;
+        case "fixed":
+            agent.setRequestExecutor(Executors.newFixedThreadPool(threads), MAX_PENDING_REQUESTS,
+                    SimpleSNMPAgent.OverloadPolicy.CALLER_RUNS);
+            break;
+        case "workStealing":
+            agent.setRequestExecutor(Executors.newWorkStealingPool(threads), MAX_PENDING_REQUESTS,
+                    SimpleSNMPAgent.OverloadPolicy.CALLER_RUNS);
+            break;
+        case "virtual":
+            agent.setRequestExecutor(VirtualThreads.newExecutor("agent-request"), MAX_PENDING_REQUESTS,
+                    SimpleSNMPAgent.OverloadPolicy.CALLER_RUNS);
+            break;
+        default: throw new IllegalArgumentException("Unknown pool " + pool);
+        }
+        agent.start();
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new BusyBenchmarkStats());
+        moGroup.registerMOs(agent.getServer(), null);
+        client = new SimpleSNMPClient(ADDRESS);
+        client.setMaxInFlight(PIPELINED_REQUESTS);
+        client.start();
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        client.shutdown();
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINED_REQUESTS)
+    public PDU pipelinedGet() throws Exception {
+        CompletableFuture<PDU> last = null;
+        for (int i = 0; i < PIPELINED_REQUESTS; i++) {
+            last = client.getMibObjectsAsync(BUSY);
+        }
+        // Responses may arrive out of order, wait for the last one then for the rest of the window
+        PDU response = last.get();
+        while (client.getInFlight() > 0) {
+            Thread.yield();
+        }
+        return response;
+    }
+}
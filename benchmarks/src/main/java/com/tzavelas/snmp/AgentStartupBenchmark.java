@@ -0,0 +1,43 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time from constructing SimpleSNMPAgent until it serves requests, with the
+ * default startup or in memory. Each fork starts one agent in a fresh JVM,
+ * so this is the cold start of a short-lived process including class
+ * loading. Run with -wi 10 -i 10 for the start of further agents in a
+ * warmed up JVM, e.g. in tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class AgentStartupBenchmark {
+    // Any free port, so an agent never waits for the port of the previous one
+    private static final String ADDRESS = "127.0.0.1/0";
+
+    @Param({ "default", "inMemory" })
+    public String startup;
+
+    @Benchmark
+    public SimpleSNMPAgent startAndStop() throws Exception {
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(ADDRESS, "inMemory".equals(startup));
+        agent.start();
+        agent.stop();
+        return agent;
+    }
+}
@@ -0,0 +1,32 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of benchmarks.jar, runs JMH with the allocation profiler on so
+ * that the bytes allocated per operation are reported next to the timings.
+ * Takes the usual JMH command line, e.g. a benchmark regex, -p or -t.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] argv) throws Exception {
+        List<String> args = new ArrayList<>(Arrays.asList(argv));
+        if (!hasGcProfiler(args)) {
+            args.add(0, "-prof");
+            args.add(1, "gc");
+        }
+        Main.main(args.toArray(new String[args.size()]));
+    }
+
+    private static boolean hasGcProfiler(List<String> args) {
+        for (int i = 0; i < args.size() - 1; i++) {
+            if (args.get(i).equals("-prof") && args.get(i + 1).startsWith("gc")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
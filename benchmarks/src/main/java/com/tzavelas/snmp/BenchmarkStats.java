@@ -0,0 +1,67 @@
+package com.tzavelas.snmp;
+
+/**
+ * Annotated members of every supported Java type, read by the benchmarks.
+ * Members are not private so MibObjectProcessor generates BenchmarkStatsMOGroup.
+ *
+ * Boxed values are outside of the valueOf caches so boxing would allocate.
+ */
+class BenchmarkStats {
+    static final String OID_PREFIX = "1.3.6.1.4.1.29506.100";
+
+    @MibObject(oid=OID_PREFIX+".1")
+    byte byteVal = (byte)1;
+    @MibObject(oid=OID_PREFIX+".2")
+    short shortVal = (short)1234;
+    @MibObject(oid=OID_PREFIX+".3")
+    int intVal = 123456;
+    @MibObject(oid=OID_PREFIX+".4")
+    long longVal = 123456789012L;
+    @MibObject(oid=OID_PREFIX+".5")
+    String strVal = "ABCDEDFGAAJFKLAJ";
+    @MibObject(oid=OID_PREFIX+".6")
+    Byte boxedByteVal = (byte)1;
+    @MibObject(oid=OID_PREFIX+".7")
+    Short boxedShortVal = (short)1234;
+    @MibObject(oid=OID_PREFIX+".8")
+    Integer boxedIntVal = 123456;
+    @MibObject(oid=OID_PREFIX+".9")
+    Long boxedLongVal = 123456789012L;
+    @MibObject(oid=OID_PREFIX+".10")
+    final StripedCounter counterVal = new StripedCounter();
+    @MibObject(oid=OID_PREFIX+".11")
+    final MaxGauge gaugeVal = new MaxGauge();
+
+    @MibObject(oid=OID_PREFIX+".13")
+    int getIntMethod(){
+        return intVal;
+    }
+
+    BenchmarkStats() {
+        counterVal.add(123456789012L);
+        gaugeVal.update(123456);
+    }
+
+    /**
+     * OID of the member of a Java type, "intMethod" for the annotated method
+     */
+    static String getOid(String type) {
+        int member;
+        switch (type) {
+        case "byte": member = 1; break;
+        case "short": member = 2; break;
+        case "int": member = 3; break;
+        case "long": member = 4; break;
+        case "String": member = 5; break;
+        case "Byte": member = 6; break;
+        case "Short": member = 7; break;
+        case "Integer": member = 8; break;
+        case "Long": member = 9; break;
+        case "StripedCounter": member = 10; break;
+        case "MaxGauge": member = 11; break;
+        case "intMethod": member = 13; break;
+        default: throw new IllegalArgumentException("Unknown type " + type);
+        }
+        return OID_PREFIX + "." + member + ".0";
+    }
+}
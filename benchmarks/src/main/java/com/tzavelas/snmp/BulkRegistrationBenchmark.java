@@ -0,0 +1,78 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+
+/**
+ * Time to register N scalars with a fresh MOServer one at a time and all at
+ * once with MOServers, then unregister them. The scalars are in OID order,
+ * in any other order DefaultMOServer scans its registry on each
+ * registration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkRegistrationBenchmark {
+    @Param({ "default", "trie" })
+    public String server;
+
+    @Param({ "1000", "100000" })
+    public int objects;
+
+    private List<ManagedObject> mos;
+
+    @Setup
+    public void setup() {
+        mos = new ArrayList<>(objects);
+        for (int i = 0; i < objects; i++) {
+            OID oid = new OID("1.3.6.1.4.1.29506.200." + (i / 100) + "." + (i % 100 + 1) + ".0");
+            mos.add(new MOScalar(oid, MOAccessImpl.ACCESS_READ_ONLY, new Integer32(i)));
+        }
+    }
+
+    private DefaultMOServer newServer() {
+        return "trie".equals(server) ? new OidTrieMOServer() : new DefaultMOServer();
+    }
+
+    @Benchmark
+    public DefaultMOServer oneByOne() throws Exception {
+        DefaultMOServer moServer = newServer();
+        for (ManagedObject mo : mos) {
+            moServer.register(mo, null);
+        }
+        for (ManagedObject mo : mos) {
+            moServer.unregister(mo, null);
+        }
+        return moServer;
+    }
+
+    @Benchmark
+    public DefaultMOServer bulk() throws Exception {
+        DefaultMOServer moServer = newServer();
+        MOServers.register(moServer, mos, null);
+        MOServers.unregister(moServer, mos, null);
+        return moServer;
+    }
+}
@@ -0,0 +1,63 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of metrics updated by all the benchmark threads at once.
+ * Runs with one thread per CPU, compare runs with -t 1, -t 2, ... to see
+ * how each type scales with the number of writers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ContentionBenchmark {
+    private long synchronizedValue = 0;
+    private final AtomicLong atomicValue = new AtomicLong();
+    private final StripedCounter counter = new StripedCounter();
+    private final MaxGauge gauge = new MaxGauge();
+    private final RateMeter meter = new RateMeter();
+
+    @Benchmark
+    public void synchronizedLong() {
+        synchronized (this) {
+            synchronizedValue++;
+        }
+    }
+
+    @Benchmark
+    public void atomicLong() {
+        atomicValue.incrementAndGet();
+    }
+
+    @Benchmark
+    public void stripedCounter() {
+        counter.increment();
+    }
+
+    @Benchmark
+    public void maxGauge() {
+        gauge.update(ThreadLocalRandom.current().nextInt(1000000));
+    }
+
+    @Benchmark
+    public void rateMeter() {
+        meter.mark();
+    }
+}
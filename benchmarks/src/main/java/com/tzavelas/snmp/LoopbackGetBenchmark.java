@@ -0,0 +1,84 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.PDU;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.smi.OID;
+
+/**
+ * Round trip of a GET over loopback UDP between SimpleSNMPClient and
+ * SimpleSNMPAgent serving annotated members, one request at a time and
+ * pipelined with getMibObjectsAsync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoopbackGetBenchmark {
+    private static final String ADDRESS = "127.0.0.1/2161";
+    private static final int PIPELINED_REQUESTS = 256;
+
+    @Param({ "int", "long", "String", "intMethod" })
+    public String type;
+
+    private SimpleSNMPAgent agent;
+    private SimpleSNMPClient client;
+    private AnnotatedStatsMOGroup moGroup;
+    private OID oid;
+
+    @Setup
+    public void setup() throws Exception {
+        oid = new OID(BenchmarkStats.getOid(type));
+        agent = new SimpleSNMPAgent(ADDRESS);
+        agent.start();
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new BenchmarkStats());
+        moGroup.registerMOs(agent.getServer(), null);
+        client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        client.shutdown();
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Benchmark
+    public ResponseEvent get() throws Exception {
+        return client.getMibObjects(oid);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINED_REQUESTS)
+    public PDU pipelinedGet() throws Exception {
+        CompletableFuture<PDU> last = null;
+        for (int i = 0; i < PIPELINED_REQUESTS; i++) {
+            last = client.getMibObjectsAsync(oid);
+        }
+        // Responses may arrive out of order, wait for the last one then for the rest of the window
+        PDU response = last.get();
+        while (client.getInFlight() > 0) {
+            Thread.yield();
+        }
+        return response;
+    }
+}
@@ -0,0 +1,81 @@
+package com.tzavelas.snmp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.agent.DefaultMOContextScope;
+import org.snmp4j.agent.DefaultMOQuery;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.MOQuery;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+
+/**
+ * Lookups of a GET and a GETNEXT among N registered scalars, with
+ * DefaultMOServer and OidTrieMOServer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MOServerLookupBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({ "default", "trie" })
+    public String server;
+
+    @Param({ "1000", "100000" })
+    public int objects;
+
+    private DefaultMOServer moServer;
+    private MOQuery[] gets;
+    private MOQuery[] getNexts;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        moServer = "trie".equals(server) ? new OidTrieMOServer() : new DefaultMOServer();
+        // 100 scalars per object, like the annotated members of a tenant
+        OID[] instances = new OID[objects];
+        for (int i = 0; i < objects; i++) {
+            instances[i] = new OID("1.3.6.1.4.1.29506.200." + (i / 100) + "." + (i % 100 + 1) + ".0");
+            moServer.register(new MOScalar(instances[i], MOAccessImpl.ACCESS_READ_ONLY, new Integer32(i)), null);
+        }
+        Random random = new Random(29506);
+        gets = new MOQuery[QUERIES];
+        getNexts = new MOQuery[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            OID instance = instances[random.nextInt(objects)];
+            gets[i] = new DefaultMOQuery(new DefaultMOContextScope(null, instance, true, instance, true));
+            getNexts[i] = new DefaultMOQuery(new DefaultMOContextScope(null, instance, false, null, false));
+        }
+    }
+
+    @Benchmark
+    public ManagedObject get() {
+        next = (next + 1) & (QUERIES - 1);
+        return moServer.lookup(gets[next]);
+    }
+
+    @Benchmark
+    public ManagedObject getNext() {
+        next = (next + 1) & (QUERIES - 1);
+        return moServer.lookup(getNexts[next]);
+    }
+}
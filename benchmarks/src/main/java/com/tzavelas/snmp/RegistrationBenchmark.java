@@ -0,0 +1,64 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.agent.DefaultMOServer;
+
+/**
+ * Time to add N annotated objects under distinct OID prefixes and register
+ * them with a fresh MOServer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistrationBenchmark {
+    @Param({ "1", "100", "10000" })
+    public int objects;
+
+    private BenchmarkStats[] stats;
+    private String[] prefixes;
+
+    @Setup
+    public void setup() {
+        stats = new BenchmarkStats[objects];
+        prefixes = new String[objects];
+        for (int i = 0; i < objects; i++) {
+            stats[i] = new BenchmarkStats();
+            prefixes[i] = "1.3.6.1.4.1.29506.200." + i + ".";
+        }
+    }
+
+    @Benchmark
+    public DefaultMOServer annotated() throws Exception {
+        AnnotatedStatsMOGroup moGroup = new AnnotatedStatsMOGroup();
+        for (int i = 0; i < objects; i++) {
+            moGroup.addAnnotatedMibObject(stats[i], prefixes[i]);
+        }
+        DefaultMOServer server = new DefaultMOServer();
+        moGroup.registerMOs(server, null);
+        return server;
+    }
+
+    @Benchmark
+    public DefaultMOServer generated() throws Exception {
+        DefaultMOServer server = new DefaultMOServer();
+        for (int i = 0; i < objects; i++) {
+            new BenchmarkStatsMOGroup(stats[i], prefixes[i]).registerMOs(server, null);
+        }
+        return server;
+    }
+}
@@ -0,0 +1,112 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.smi.OID;
+
+/**
+ * Members that take a few microseconds to evaluate, e.g. sums over a buffer
+ */
+class ExpensiveStats {
+    static final String OID_PREFIX = "1.3.6.1.4.1.29506.101";
+    static final int MEMBERS = 8;
+
+    private final long[] samples = new long[4096];
+
+    ExpensiveStats() {
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = i;
+        }
+    }
+
+    private long sum(int from) {
+        long sum = 0;
+        for (int i = from; i < samples.length; i++) {
+            sum += samples[i];
+        }
+        return sum;
+    }
+
+    @MibObject(oid=OID_PREFIX+".1")
+    private long getSum1() { return sum(1); }
+    @MibObject(oid=OID_PREFIX+".2")
+    private long getSum2() { return sum(2); }
+    @MibObject(oid=OID_PREFIX+".3")
+    private long getSum3() { return sum(3); }
+    @MibObject(oid=OID_PREFIX+".4")
+    private long getSum4() { return sum(4); }
+    @MibObject(oid=OID_PREFIX+".5")
+    private long getSum5() { return sum(5); }
+    @MibObject(oid=OID_PREFIX+".6")
+    private long getSum6() { return sum(6); }
+    @MibObject(oid=OID_PREFIX+".7")
+    private long getSum7() { return sum(7); }
+    @MibObject(oid=OID_PREFIX+".8")
+    private long getSum8() { return sum(8); }
+}
+
+/**
+ * Managers polling the same OIDs of SimpleSNMPAgent over loopback UDP, with
+ * and without the response cache. Every request is identical, so with the
+ * cache only one per window evaluates the members.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseCacheBenchmark {
+    private static final String ADDRESS = "127.0.0.1/2164";
+
+    @Param({ "0", "500" })
+    public long windowMillis;
+
+    private SimpleSNMPAgent agent;
+    private SimpleSNMPClient client;
+    private AnnotatedStatsMOGroup moGroup;
+    private OID[] oids;
+
+    @Setup
+    public void setup() throws Exception {
+        oids = new OID[ExpensiveStats.MEMBERS];
+        for (int i = 0; i < oids.length; i++) {
+            oids[i] = new OID(ExpensiveStats.OID_PREFIX + "." + (i + 1) + ".0");
+        }
+        agent = new SimpleSNMPAgent(ADDRESS, true);
+        if (windowMillis > 0) {
+            agent.setResponseCache(windowMillis, 1 << 20);
+        }
+        agent.start();
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new ExpensiveStats());
+        moGroup.registerMOs(agent.getServer(), null);
+        client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        client.shutdown();
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Benchmark
+    public ResponseEvent get() throws Exception {
+        return client.getMibObjects(oids);
+    }
+}
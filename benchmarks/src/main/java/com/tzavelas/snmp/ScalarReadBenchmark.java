@@ -0,0 +1,76 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+
+/**
+ * Cost of reading a scalar the way the agent does for a GET, getValue().clone(),
+ * for a plain MOScalar holding a constant, the reflective AnnotatedStatsMOGroup
+ * and the MOGroup generated by MibObjectProcessor, for each Java type mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalarReadBenchmark {
+    @Param({ "byte", "short", "int", "long", "String", "Byte", "Short", "Integer", "Long",
+            "StripedCounter", "MaxGauge", "intMethod" })
+    public String type;
+
+    private MOScalar pojo;
+    private MOScalar annotated;
+    private MOScalar generated;
+
+    @Setup
+    public void setup() throws Exception {
+        OID oid = new OID(BenchmarkStats.getOid(type));
+        BenchmarkStats stats = new BenchmarkStats();
+
+        AnnotatedStatsMOGroup moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(stats);
+        DefaultMOServer annotatedServer = new DefaultMOServer();
+        moGroup.registerMOs(annotatedServer, null);
+        annotated = (MOScalar) annotatedServer.getManagedObject(oid, null);
+
+        DefaultMOServer generatedServer = new DefaultMOServer();
+        new BenchmarkStatsMOGroup(stats).registerMOs(generatedServer, null);
+        generated = (MOScalar) generatedServer.getManagedObject(oid, null);
+
+        // Same MIB type and value, without the annotated member behind it
+        Variable value = (Variable) annotated.getValue().clone();
+        pojo = new MOScalar(oid, MOAccessImpl.ACCESS_READ_ONLY, value);
+    }
+
+    @Benchmark
+    public Object pojo() {
+        return pojo.getValue().clone();
+    }
+
+    @Benchmark
+    public Object annotated() {
+        return annotated.getValue().clone();
+    }
+
+    @Benchmark
+    public Object generated() {
+        return generated.getValue().clone();
+    }
+}
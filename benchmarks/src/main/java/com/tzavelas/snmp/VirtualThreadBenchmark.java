@@ -0,0 +1,107 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.smi.OID;
+
+/**
+ * Synchronous polling code, one blocking GET per target, run on a fixed pool
+ * of platform threads vs a virtual thread per target. The agent evaluates a
+ * slow annotated method on its own VirtualThreads executor, so the time of a
+ * round is bounded by how many GETs wait at once.
+ *
+ * Virtual threads need Java 21, on older JVMs the "virtual" executor falls
+ * back to a platform thread per concurrent target.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VirtualThreadBenchmark {
+    private static final String ADDRESS = "127.0.0.1/2162";
+    private static final int TARGETS = 1000;
+    private static final int PLATFORM_THREADS = 64;
+    private static final OID SLOW = new OID(SlowBenchmarkStats.OID_PREFIX + ".1.0");
+
+    static class SlowBenchmarkStats {
+        static final String OID_PREFIX = "1.3.6.1.4.1.29506.101";
+
+        @MibObject(oid=OID_PREFIX+".1")
+        int getSlow() throws InterruptedException {
+            // e.g. a query of another service
+            Thread.sleep(1);
+            return 1;
+        }
+    }
+
+    @Param({ "platform", "virtual" })
+    public String executor;
+
+    private SimpleSNMPAgent agent;
+    private SimpleSNMPClient client;
+    private AnnotatedStatsMOGroup moGroup;
+    private ExecutorService pollers;
+
+    @Setup
+    public void setup() throws Exception {
+        agent = new SimpleSNMPAgent(ADDRESS);
+        agent.setRequestExecutor(VirtualThreads.newExecutor("agent-request"));
+        agent.start();
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new SlowBenchmarkStats());
+        moGroup.registerMOs(agent.getServer(), null);
+        client = new SimpleSNMPClient(ADDRESS);
+        client.setVirtualThreadMode(true);
+        client.start();
+        pollers = "virtual".equals(executor) ? VirtualThreads.newExecutor("poller")
+                : Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        pollers.shutdown();
+        client.shutdown();
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TARGETS)
+    public int pollTargets() throws Exception {
+        List<Future<Integer>> polls = new ArrayList<>(TARGETS);
+        for (int i = 0; i < TARGETS; i++) {
+            polls.add(pollers.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return client.getMibObjectAsInteger(SLOW);
+                }
+            }));
+        }
+        int sum = 0;
+        for (Future<Integer> poll : polls) {
+            sum += poll.get();
+        }
+        return sum;
+    }
+}
@@ -115,6 +115,10 @@ public class AnnotatedMibFileGenerator {
             .put(Integer.class.getName(), "Integer32")
             .put(Long.class.getName(), "Counter64")
             .put(String.class.getName(), "OctetString")
+            .put(StripedCounter.class.getName(), "Counter64")   //contention-free metric type
+            .put(MaxGauge.class.getName(), "Gauge32")
+            .put(MinGauge.class.getName(), "Gauge32")
+            .put(RateMeter.class.getName(), "Gauge32")
             .put("byte", "Integer32")                   //primitive type
             .put("short", "Integer32")
             .put("int", "Integer32")
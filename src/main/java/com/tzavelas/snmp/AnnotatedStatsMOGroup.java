@@ -2,26 +2,42 @@ package com.tzavelas.snmp;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.ConsoleHandler;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.snmp4j.agent.DuplicateRegistrationException;
 import org.snmp4j.agent.MOGroup;
 import org.snmp4j.agent.MOServer;
+import org.snmp4j.agent.ManagedObject;
 import org.snmp4j.agent.mo.MOAccessImpl;
-import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.AssignableFromInteger;
+import org.snmp4j.smi.AssignableFromLong;
 import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.Gauge32;
 import org.snmp4j.smi.Integer32;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.Variable;
 import org.snmp4j.smi.VariantVariable;
-import org.snmp4j.smi.VariantVariableCallback;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 /**
@@ -34,6 +50,16 @@ import com.google.common.collect.ImmutableMap;
  *         moGroup.addAnnotatedMibObject(obj);
  *         ...
  *         moGroup.registerMOs(agent.getServer(), null);
+ *
+ * Members annotated with @MibTable are registered as read-only tables whose
+ * rows are looked up in the annotated collection on each request.
+ *
+ * Members are evaluated on the SNMP request threads unless background sampling
+ * is started with startSampling().
+ *
+ * Set an EvaluationStats with setEvaluationStats() to find which members are
+ * slow to evaluate, and a ThresholdNotifier with setNotifier() to send
+ * notifications for members with thresholds or notifyOnChange.
  */
 public class AnnotatedStatsMOGroup implements MOGroup {
     /**
@@ -41,9 +67,12 @@ public class AnnotatedStatsMOGroup implements MOGroup {
      */
     private static interface MemberSubAccessor {
         public Class<?> getValueType(Object obj);
+        public Type getGenericValueType(Object obj);
         public MibObject getMibObjectAnnotation(Object obj);
+        public MibTable getMibTableAnnotation(Object obj);
         public boolean isSynthetic(Object obj);
-        public VariantVariableCallback createVariantCallback(Object obj, Object clsMember, Logger logger);
+        public DynamicVariantVariableCallback.MemberGetter resolveGetter(Object clsMember, Class<?> mibType,
+                                                                          long cacheMillis);
 
     }
 
@@ -55,21 +84,25 @@ public class AnnotatedStatsMOGroup implements MOGroup {
             return ((Field)obj).getType();
         }
 
+        public Type getGenericValueType(Object obj) {
+            return ((Field)obj).getGenericType();
+        }
+
         public MibObject getMibObjectAnnotation(Object obj) {
             return ((Field)obj).getAnnotation(MibObject.class);
         }
 
+        public MibTable getMibTableAnnotation(Object obj) {
+            return ((Field)obj).getAnnotation(MibTable.class);
+        }
+
         public boolean isSynthetic(Object obj) {
             return ((Field)obj).isSynthetic();
         }
 
-        public VariantVariableCallback createVariantCallback(Object obj,
-                Object clsMember, Logger logger) {
-            return new DynamicVariantVariableCallback
-                    .DynamicVariantVariableCallbackBuilder(obj)
-                    .field((Field)clsMember)
-                    .logger(logger)
-                    .build();
+        public DynamicVariantVariableCallback.MemberGetter resolveGetter(Object clsMember, Class<?> mibType,
+                                                                         long cacheMillis) {
+            return DynamicVariantVariableCallback.MemberGetter.resolve((Field)clsMember, null, mibType, cacheMillis);
         }
     };
 
@@ -81,27 +114,31 @@ public class AnnotatedStatsMOGroup implements MOGroup {
             return ((Method)obj).getReturnType();
         }
 
+        public Type getGenericValueType(Object obj) {
+            return ((Method)obj).getGenericReturnType();
+        }
+
         public MibObject getMibObjectAnnotation(Object obj) {
             return ((Method)obj).getAnnotation(MibObject.class);
         }
 
+        public MibTable getMibTableAnnotation(Object obj) {
+            return ((Method)obj).getAnnotation(MibTable.class);
+        }
+
         public boolean isSynthetic(Object obj) {
             return ((Method)obj).isSynthetic();
         }
 
-        public VariantVariableCallback createVariantCallback(Object obj,
-                Object clsMember, Logger logger) {
-            return new DynamicVariantVariableCallback
-                    .DynamicVariantVariableCallbackBuilder(obj)
-                    .method((Method)clsMember)
-                    .logger(logger)
-                    .build();
+        public DynamicVariantVariableCallback.MemberGetter resolveGetter(Object clsMember, Class<?> mibType,
+                                                                         long cacheMillis) {
+            return DynamicVariantVariableCallback.MemberGetter.resolve(null, (Method)clsMember, mibType, cacheMillis);
         }
     };
 
     private static final String EMPTY_OID = "";
     private static final String EMPTY_TYPE = "";
-    private static Map<String, Class<?>> OBJECT_CLASS_TO_MIB_CLASS_MAPPING =
+    static final Map<String, Class<?>> OBJECT_CLASS_TO_MIB_CLASS_MAPPING =
             new ImmutableMap.Builder<String,Class<?>>()
             .put("integer32", Integer32.class )
             .put("counter64", Counter64.class)
@@ -112,25 +149,130 @@ public class AnnotatedStatsMOGroup implements MOGroup {
             .put(Integer.class.getName(), Integer32.class)
             .put(Long.class.getName(), Counter64.class)
             .put(String.class.getName(), OctetString.class)
+            .put(StripedCounter.class.getName(), Counter64.class)   //contention-free metric type
+            .put(MaxGauge.class.getName(), Gauge32.class)
+            .put(MinGauge.class.getName(), Gauge32.class)
+            .put(RateMeter.class.getName(), Gauge32.class)
             .put("byte", Integer32.class)                   //primitive type
             .put("short", Integer32.class)
             .put("int", Integer32.class)
             .put("long", Counter64.class)
             .build();
 
-    private List<MOScalar> _managedObjects = new ArrayList<>();
+    private static final Logger PLAN_LOGGER = Logger.getLogger(AnnotatedStatsMOGroup.class.getName());
+
+    /**
+     * A valid @MibObject member of a class with everything that does not depend on
+     * the annotated instance already resolved.
+     */
+    private static class PlannedMember {
+        private final DynamicVariantVariableCallback.MemberGetter getter;
+        private final Class<?> mibClass;
+        private final String oid;
+        private final int[] oidValue;
+        private final long sampleMillis;
+        private final long risingThreshold;
+        private final long fallingThreshold;
+        private final boolean notifyOnChange;
+
+        private PlannedMember(DynamicVariantVariableCallback.MemberGetter getter, Class<?> mibClass, String oid,
+                              long sampleMillis, long risingThreshold, long fallingThreshold,
+                              boolean notifyOnChange) {
+            this.getter = getter;
+            this.mibClass = mibClass;
+            this.oid = oid;
+            this.sampleMillis = sampleMillis;
+            this.risingThreshold = risingThreshold;
+            this.fallingThreshold = fallingThreshold;
+            this.notifyOnChange = notifyOnChange;
+            this.oidValue = new OID(oid.startsWith(".") ? oid.substring(1) : oid).getValue();
+        }
+
+        private boolean isWatched() {
+            return risingThreshold != Long.MAX_VALUE || fallingThreshold != Long.MIN_VALUE || notifyOnChange;
+        }
+    }
+
+    /**
+     * A valid @MibTable member of a class with the columns of its row class resolved.
+     */
+    private static class PlannedTable {
+        private final DynamicVariantVariableCallback.MemberGetter rowsGetter;
+        private final String oid;
+        private final int[] oidValue;
+        private final List<LazyMOTable.Column> columns;
+
+        private PlannedTable(DynamicVariantVariableCallback.MemberGetter rowsGetter, String oid,
+                             List<LazyMOTable.Column> columns) {
+            this.rowsGetter = rowsGetter;
+            this.oid = oid;
+            this.oidValue = new OID(oid.startsWith(".") ? oid.substring(1) : oid).getValue();
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * Everything registered for an annotated class
+     */
+    private static class RegistrationPlan {
+        private final List<PlannedMember> members;
+        private final List<PlannedTable> tables;
+
+        private RegistrationPlan(List<PlannedMember> members, List<PlannedTable> tables) {
+            this.members = members;
+            this.tables = tables;
+        }
+    }
+
+    /**
+     * Registration plans keyed by class, computed the first time an instance of
+     * the class is added. Registering further instances only binds them to the plan.
+     */
+    private static final ClassValue<RegistrationPlan> REGISTRATION_PLANS = new ClassValue<RegistrationPlan>() {
+        @Override
+        protected RegistrationPlan computeValue(Class<?> type) {
+            ImmutableList.Builder<PlannedMember> members = ImmutableList.builder();
+            planMembers(type.getDeclaredFields(), FieldSubAccessor, members);
+            planMembers(type.getDeclaredMethods(), MethodSubAccessor, members);
+            ImmutableList.Builder<PlannedTable> tables = ImmutableList.builder();
+            planTables(type.getDeclaredFields(), FieldSubAccessor, tables);
+            planTables(type.getDeclaredMethods(), MethodSubAccessor, tables);
+            return new RegistrationPlan(members.build(), tables.build());
+        }
+    };
+
+    private List<ManagedObject> _managedObjects = new ArrayList<>();
     private Logger _logger = null;
+    private final SnapshotMOScalar.SnapshotSettings _snapshotSettings = new SnapshotMOScalar.SnapshotSettings();
+    private volatile EvaluationStats _evaluationStats = null;
+
+    // Members with thresholds or notifyOnChange, checked by the notifier once set
+    private final List<ThresholdNotifier.Watch> _watches = new ArrayList<>();
+    private ThresholdNotifier _notifier = null;
+
+    // Background sampling: callbacks keyed by the interval requested by their member, 0 for the group interval
+    private final Map<Long, List<DynamicVariantVariableCallback>> _sampledCallbacks = new HashMap<>();
+    private final List<ScheduledFuture<?>> _samplingTasks = new ArrayList<>();
+    private ScheduledExecutorService _sampler = null;
+    private boolean _ownSampler = false;
+    private long _sampleMillis = 0;
 
     /**
      * Constructor
      */
     public AnnotatedStatsMOGroup(){
         _logger = Logger.getLogger(this.getClass().getName());
-        _logger.setUseParentHandlers(false);
 
-        ConsoleHandler consoleHandler = new ConsoleHandler();
-        consoleHandler.setFormatter(new VerySimpleFormatterWithTimestamp());
-        _logger.addHandler(consoleHandler);
+        // The logger is shared by all the groups, only the first one sets its handler up
+        synchronized (_logger) {
+            if (_logger.getUseParentHandlers()) {
+                _logger.setUseParentHandlers(false);
+
+                ConsoleHandler consoleHandler = new ConsoleHandler();
+                consoleHandler.setFormatter(new VerySimpleFormatterWithTimestamp());
+                _logger.addHandler(consoleHandler);
+            }
+        }
     }
 
     /**
@@ -140,7 +282,7 @@ public class AnnotatedStatsMOGroup implements MOGroup {
      * @param mibClass
      * @return MIB Class
      */
-    private Class<?> getMibObjectType(String mibAnnotationType, Class<?> mibClass){
+    private static Class<?> getMibObjectType(String mibAnnotationType, Class<?> mibClass){
         String typeNorm = mibAnnotationType.trim().toLowerCase();
         Class<?> ret = null;
         if (typeNorm.equals(EMPTY_TYPE) ){
@@ -148,7 +290,7 @@ public class AnnotatedStatsMOGroup implements MOGroup {
             if (ret == null) {
                 ret = OctetString.class;
             }
-            _logger.info("Autodetected oid type: " + ret + ", from type: " + mibClass.getName());
+            PLAN_LOGGER.info("Autodetected oid type: " + ret + ", from type: " + mibClass.getName());
         } else if (OBJECT_CLASS_TO_MIB_CLASS_MAPPING.containsKey(typeNorm)) {
             ret = OBJECT_CLASS_TO_MIB_CLASS_MAPPING.get(typeNorm);
         } else {
@@ -163,33 +305,26 @@ public class AnnotatedStatsMOGroup implements MOGroup {
      * @param annotation
      * @return
      */
-    private boolean isAnnotationValid(MibObject annotation) {
+    private static boolean isAnnotationValid(MibObject annotation) {
         if (annotation == null) {
             return false;
         } else if (annotation.oid().trim().equals(EMPTY_OID)) {
-            _logger.warning("Empty OID provided");
+            PLAN_LOGGER.warning("Empty OID provided");
             return false;
         }
         return true;
     }
 
     /**
-     * Process all the members to find the @MibOject fields in the object
+     * Process all the members of a class to find the @MibObject fields and add them to its plan
      *
-     * @param annotatedMibObject
-     * @param oidPrefix
      * @param members
      * @param accessor
-     * @return number of valid @MibObjects processed
-     * @throws InstantiationException
-     * @throws IllegalAccessException
+     * @param plan
      */
-    private int processObjectFields(Object annotatedMibObject, String oidPrefix, Object[] members,
-                                    MemberSubAccessor accessor) throws InstantiationException, IllegalAccessException {
-        int processCount = 0;
-
+    private static void planMembers(Object[] members, MemberSubAccessor accessor,
+                                    ImmutableList.Builder<PlannedMember> plan) {
         for (Object member: members) {
-            Variable var = null;
             Class<?> mibObjCls = null;
             String oidSuffix = "";
             MibObject mibAnnotation = accessor.getMibObjectAnnotation(member);
@@ -204,24 +339,157 @@ public class AnnotatedStatsMOGroup implements MOGroup {
                 continue;
             }
 
-            var = new VariantVariable((Variable) mibObjCls.newInstance(),
-                    accessor.createVariantCallback(annotatedMibObject, member, _logger));
-
             // For Scalar value, .0 ending is needed
             if (!mibAnnotation.oid().endsWith(".0")) {
                 oidSuffix = ".0";
             }
 
-            OID oidObj = new OID(oidPrefix + mibAnnotation.oid() + oidSuffix);
-            _managedObjects.add(new MOScalar<>(oidObj, MOAccessImpl.ACCESS_READ_ONLY, var));
-            _logger.info("OID:" + oidObj + ", varType: " + ((VariantVariable)var).getVariable().getClass().getName());
-            processCount +=1;
+            long risingThreshold = mibAnnotation.risingThreshold();
+            long fallingThreshold = mibAnnotation.fallingThreshold();
+            boolean numeric = AssignableFromInteger.class.isAssignableFrom(mibObjCls)
+                    || AssignableFromLong.class.isAssignableFrom(mibObjCls);
+            if (!numeric && (risingThreshold != Long.MAX_VALUE || fallingThreshold != Long.MIN_VALUE)) {
+                PLAN_LOGGER.warning("Thresholds of non numeric OID " + mibAnnotation.oid() + " are ignored");
+                risingThreshold = Long.MAX_VALUE;
+                fallingThreshold = Long.MIN_VALUE;
+            } else if (risingThreshold != Long.MAX_VALUE && fallingThreshold != Long.MIN_VALUE
+                    && fallingThreshold >= risingThreshold) {
+                // Each crossing would arm the other threshold again, a value between them would notify on every evaluation
+                PLAN_LOGGER.warning("Thresholds of OID " + mibAnnotation.oid()
+                        + " are ignored, fallingThreshold must be below risingThreshold");
+                risingThreshold = Long.MAX_VALUE;
+                fallingThreshold = Long.MIN_VALUE;
+            }
+
+            plan.add(new PlannedMember(accessor.resolveGetter(member, mibObjCls, mibAnnotation.cacheMillis()), mibObjCls,
+                    mibAnnotation.oid() + oidSuffix, mibAnnotation.sampleMillis(), risingThreshold, fallingThreshold,
+                    mibAnnotation.notifyOnChange()));
+            PLAN_LOGGER.info("OID:" + mibAnnotation.oid() + oidSuffix + ", varType: " + mibObjCls.getName());
+        }
+    }
+
+    /**
+     * Process all the members of a class to find the @MibTable fields and add them to its plan
+     *
+     * @param members
+     * @param accessor
+     * @param plan
+     */
+    private static void planTables(Object[] members, MemberSubAccessor accessor,
+                                   ImmutableList.Builder<PlannedTable> plan) {
+        for (Object member: members) {
+            MibTable tableAnnotation = accessor.getMibTableAnnotation(member);
+            if (tableAnnotation == null || accessor.isSynthetic(member)) {
+                continue;
+            } else if (tableAnnotation.oid().trim().equals(EMPTY_OID)) {
+                PLAN_LOGGER.warning("Empty table OID provided");
+                continue;
+            }
+
+            Class<?> entryCls = getTableEntryType(tableAnnotation, accessor.getValueType(member),
+                    accessor.getGenericValueType(member));
+            if (entryCls == null) {
+                PLAN_LOGGER.warning("Unknown row class of table " + tableAnnotation.oid() + ", set its entry");
+                continue;
+            }
+
+            List<LazyMOTable.Column> columns = new ArrayList<>();
+            planColumns(entryCls.getDeclaredFields(), FieldSubAccessor, columns);
+            planColumns(entryCls.getDeclaredMethods(), MethodSubAccessor, columns);
+            if (columns.isEmpty()) {
+                PLAN_LOGGER.warning("No @MibObject column in " + entryCls.getName());
+                continue;
+            }
+            Collections.sort(columns, new Comparator<LazyMOTable.Column>() {
+                @Override
+                public int compare(LazyMOTable.Column c1, LazyMOTable.Column c2) {
+                    return Long.compare(c1.getId() & 0xFFFFFFFFL, c2.getId() & 0xFFFFFFFFL);
+                }
+            });
+
+            plan.add(new PlannedTable(accessor.resolveGetter(member, null, 0), tableAnnotation.oid(),
+                    ImmutableList.copyOf(columns)));
+            PLAN_LOGGER.info("Table OID:" + tableAnnotation.oid() + ", entry: " + entryCls.getName());
+        }
+    }
+
+    /**
+     * Get the row class of a table, from the annotation or from the type of the member
+     *
+     * @param annotation
+     * @param valueType
+     * @param genericType
+     * @return row class, null if it can not be determined
+     */
+    private static Class<?> getTableEntryType(MibTable annotation, Class<?> valueType, Type genericType) {
+        if (annotation.entry() != Object.class) {
+            return annotation.entry();
+        } else if (valueType.isArray()) {
+            return valueType.getComponentType();
+        } else if (genericType instanceof ParameterizedType) {
+            // The element of collections and the value of maps are the last type argument
+            Type[] typeArguments = ((ParameterizedType) genericType).getActualTypeArguments();
+            Type entryType = typeArguments[typeArguments.length - 1];
+            if (entryType instanceof ParameterizedType) {
+                entryType = ((ParameterizedType) entryType).getRawType();
+            }
+            if (entryType instanceof Class) {
+                return (Class<?>) entryType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Process all the members of a row class to find the @MibObject columns
+     *
+     * @param members
+     * @param accessor
+     * @param columns
+     */
+    private static void planColumns(Object[] members, MemberSubAccessor accessor, List<LazyMOTable.Column> columns) {
+        for (Object member: members) {
+            MibObject mibAnnotation = accessor.getMibObjectAnnotation(member);
+            if (!isAnnotationValid(mibAnnotation) || accessor.isSynthetic(member)) {
+                continue;
+            }
+
+            String oid = mibAnnotation.oid().trim();
+            int[] columnOid = new OID(oid.startsWith(".") ? oid.substring(1) : oid).getValue();
+            if (columnOid.length != 1) {
+                PLAN_LOGGER.warning("Column OID must be a single sub-identifier: " + oid);
+                continue;
+            }
+
+            Class<?> mibObjCls = getMibObjectType(mibAnnotation.type(), accessor.getValueType(member));
+            if (mibObjCls == null) {
+                continue;
+            }
+            columns.add(new LazyMOTable.Column(columnOid[0], mibObjCls, accessor.resolveGetter(member, mibObjCls, 0)));
+        }
+    }
+
+    /**
+     * Build the OID of a planned member. When the prefix and the member OID join on
+     * a single dot, the parsed prefix is reused instead of parsing the concatenation.
+     *
+     * @param oidPrefix
+     * @param prefixValue parsed prefix without its trailing dot, null if it has none
+     * @param oid OID of the member
+     * @param oidValue parsed OID of the member
+     * @return OID of the member
+     */
+    private static OID getMemberOid(String oidPrefix, int[] prefixValue, String oid, int[] oidValue) {
+        if (oidPrefix.isEmpty()) {
+            return new OID(oidValue);
+        } else if (prefixValue != null && !oid.startsWith(".")) {
+            return new OID(prefixValue, oidValue);
         }
-        return processCount;
+        return new OID(oidPrefix + oid);
     }
 
     /**
-     * Add the @MibObject annotated members to the group to be registered.
+     * Add the @MibObject and @MibTable annotated members to the group to be registered.
      *
      * @param annotatedMibObject
      * @return the number of annotated fields and methods added
@@ -231,7 +499,7 @@ public class AnnotatedStatsMOGroup implements MOGroup {
     }
 
     /**
-     * Add the @MibObject annotated members to the group to be registered with an OID prefix
+     * Add the @MibObject and @MibTable annotated members to the group to be registered with an OID prefix
      *
      * @param annotatedMibObject
      * @param oidPrefix
@@ -239,10 +507,37 @@ public class AnnotatedStatsMOGroup implements MOGroup {
      */
     public int addAnnotatedMibObject(Object annotatedMibObject, String oidPrefix) {
         int moAdded = 0;
-        Class<?> aCls = annotatedMibObject.getClass();
         try {
-            moAdded += processObjectFields( annotatedMibObject, oidPrefix, aCls.getDeclaredFields(), FieldSubAccessor );
-            moAdded += processObjectFields( annotatedMibObject, oidPrefix, aCls.getDeclaredMethods(), MethodSubAccessor );
+            RegistrationPlan plan = REGISTRATION_PLANS.get(annotatedMibObject.getClass());
+            int[] prefixValue = oidPrefix.endsWith(".")
+                    ? new OID(oidPrefix.substring(0, oidPrefix.length() - 1)).getValue() : null;
+
+            SnapshotMOScalar.Scope scope = new SnapshotMOScalar.Scope(_snapshotSettings);
+
+            for (PlannedMember member : plan.members) {
+                DynamicVariantVariableCallback callback = member.getter.bind(annotatedMibObject, _logger);
+                Variable var = new VariantVariable((Variable) member.mibClass.newInstance(), callback);
+                OID oidObj = getMemberOid(oidPrefix, prefixValue, member.oid, member.oidValue);
+                EvaluationStats evaluationStats = _evaluationStats;
+                if (evaluationStats != null) {
+                    callback.setEvaluationStats(evaluationStats.register(oidObj.toString()));
+                }
+                addSampledCallback(member.sampleMillis, callback);
+                if (member.isWatched()) {
+                    addWatch(new ThresholdNotifier.Watch(oidObj, callback, (Variable) member.mibClass.newInstance(),
+                            member.risingThreshold, member.fallingThreshold, member.notifyOnChange));
+                }
+                _managedObjects.add(new SnapshotMOScalar(oidObj, MOAccessImpl.ACCESS_READ_ONLY, var, scope));
+                _logger.fine("OID:" + oidObj + ", varType: " + member.mibClass.getName());
+                moAdded += 1;
+            }
+
+            for (PlannedTable table : plan.tables) {
+                OID oidObj = getMemberOid(oidPrefix, prefixValue, table.oid, table.oidValue);
+                _managedObjects.add(new LazyMOTable(oidObj, table.columns, annotatedMibObject, table.rowsGetter, _logger));
+                _logger.fine("Table OID:" + oidObj);
+                moAdded += 1;
+            }
         } catch (IllegalArgumentException
                 | IllegalAccessException
                 | InstantiationException e) {
@@ -253,18 +548,167 @@ public class AnnotatedStatsMOGroup implements MOGroup {
         return moAdded;
     }
 
+    /**
+     * Serve each request from a snapshot of the annotated objects it reads.
+     *
+     * The first time a request reads a member of an annotated object, all the
+     * members of that object are read together and every varbind of the request
+     * is answered from that snapshot. Ratios of related counters requested in
+     * one PDU are then consistent and each member is evaluated at most once per
+     * request, at the cost of evaluating the members of the object that were not
+     * requested.
+     *
+     * @param requestSnapshots
+     */
+    public void setRequestSnapshots(boolean requestSnapshots) {
+        _snapshotSettings.setEnabled(requestSnapshots);
+    }
+
+    /**
+     * Record how often and how long the @MibObject members added afterwards are
+     * evaluated, on request or by background sampling. Table columns are not
+     * recorded.
+     *
+     * @param evaluationStats statistics shared with other groups, e.g. SimpleSNMPAgent.getEvaluationStats(),
+     *                        null to stop recording the members added afterwards
+     */
+    public void setEvaluationStats(EvaluationStats evaluationStats) {
+        _evaluationStats = evaluationStats;
+    }
+
+    /**
+     * Send the notifications of the @MibObject members with thresholds or
+     * notifyOnChange, of the group and added afterwards, with a notifier.
+     *
+     * @param notifier evaluates the members once started, null to stop notifying
+     */
+    public synchronized void setNotifier(ThresholdNotifier notifier) {
+        for (ThresholdNotifier.Watch watch : _watches) {
+            if (_notifier != null) {
+                _notifier.removeWatch(watch);
+            }
+            if (notifier != null) {
+                notifier.addWatch(watch);
+            }
+        }
+        _notifier = notifier;
+    }
+
+    private synchronized void addWatch(ThresholdNotifier.Watch watch) {
+        _watches.add(watch);
+        if (_notifier != null) {
+            _notifier.addWatch(watch);
+        }
+    }
+
+    /**
+     * Keep track of a callback so it is sampled in the background once sampling is started
+     *
+     * @param sampleMillis interval requested by the member, 0 for the group interval
+     * @param callback
+     */
+    private synchronized void addSampledCallback(long sampleMillis, DynamicVariantVariableCallback callback) {
+        List<DynamicVariantVariableCallback> callbacks = _sampledCallbacks.get(sampleMillis);
+        if (callbacks == null) {
+            callbacks = new CopyOnWriteArrayList<>();
+            _sampledCallbacks.put(sampleMillis, callbacks);
+            if (_sampler != null) {
+                scheduleSampling(sampleMillis, callbacks);
+            }
+        }
+        callbacks.add(callback);
+        callback.setSampled(_sampler != null);
+    }
+
+    private void scheduleSampling(long sampleMillis, final List<DynamicVariantVariableCallback> callbacks) {
+        long intervalMillis = sampleMillis > 0 ? sampleMillis : _sampleMillis;
+        _samplingTasks.add(_sampler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                for (DynamicVariantVariableCallback callback : callbacks) {
+                    // An escaping Error would cancel the task and every later sample of the group
+                    try {
+                        callback.sample();
+                    } catch (Throwable e) {
+                        _logger.log(Level.WARNING, "Sampling of a member failed", e);
+                    }
+                }
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Sample the annotated members in the background on a dedicated daemon thread.
+     *
+     * @param intervalMillis sampling interval of members that do not set their own sampleMillis
+     */
+    public synchronized void startSampling(long intervalMillis) {
+        Preconditions.checkArgument(intervalMillis > 0, "Sampling interval must be positive");
+        Preconditions.checkState(_sampler == null, "Sampling already started");
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AnnotatedStatsMOGroup-sampler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        startSampling(sampler, intervalMillis);
+        _ownSampler = true;
+    }
+
+    /**
+     * Sample the annotated members in the background instead of evaluating them
+     * on the SNMP request threads. Requests are then served from the last sample,
+     * so their latency does not depend on how slow the annotated members are.
+     *
+     * @param sampler executor running the sampling tasks
+     * @param intervalMillis sampling interval of members that do not set their own sampleMillis
+     */
+    public synchronized void startSampling(ScheduledExecutorService sampler, long intervalMillis) {
+        Preconditions.checkArgument(intervalMillis > 0, "Sampling interval must be positive");
+        Preconditions.checkState(_sampler == null, "Sampling already started");
+        _sampler = sampler;
+        _ownSampler = false;
+        _sampleMillis = intervalMillis;
+        for (Map.Entry<Long, List<DynamicVariantVariableCallback>> entry : _sampledCallbacks.entrySet()) {
+            for (DynamicVariantVariableCallback callback : entry.getValue()) {
+                callback.setSampled(true);
+            }
+            scheduleSampling(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Stop background sampling, annotated members are evaluated on request again.
+     */
+    public synchronized void stopSampling() {
+        if (_sampler == null) {
+            return;
+        }
+        for (ScheduledFuture<?> task : _samplingTasks) {
+            task.cancel(false);
+        }
+        _samplingTasks.clear();
+        if (_ownSampler) {
+            _sampler.shutdown();
+        }
+        _sampler = null;
+        for (List<DynamicVariantVariableCallback> callbacks : _sampledCallbacks.values()) {
+            for (DynamicVariantVariableCallback callback : callbacks) {
+                callback.setSampled(false);
+            }
+        }
+    }
+
     @Override
     public void registerMOs(MOServer server, OctetString arg1)
             throws DuplicateRegistrationException {
-        for (MOScalar mo:_managedObjects) {
-            server.register(mo, arg1);
-        }
+        MOServers.register(server, _managedObjects, arg1);
     }
 
     @Override
     public void unregisterMOs(MOServer server, OctetString arg1) {
-        for (MOScalar mo:_managedObjects) {
-            server.unregister(mo, arg1);
-        }
+        MOServers.unregister(server, _managedObjects, arg1);
     }
 }
@@ -1,8 +1,14 @@
 package com.tzavelas.snmp;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 import org.snmp4j.smi.AssignableFromInteger;
@@ -12,53 +18,198 @@ import org.snmp4j.smi.ReadonlyVariableCallback;
 import org.snmp4j.smi.Variable;
 import org.snmp4j.smi.VariantVariable;
 
+import com.google.common.base.Throwables;
+
 /**
  * Callback to monitor any change in the value of the variable.
  * Used by AnnotatedStatsMOGroup hence why its not public
+ *
+ * The annotated member is resolved once, when the callback is built, into a
+ * MethodHandle bound to the annotated object so that reading the value does not
+ * go through reflective access checks on every request.
+ *
+ * When the member is a Java primitive or a Number, e.g. StripedCounter, and the
+ * MIB type is known, the resolved getter binds to a callback specialized for int
+ * or long reads so that the value is never boxed.
  */
-class DynamicVariantVariableCallback extends ReadonlyVariableCallback {
-    private Object reprObj = null;
-    private Field field = null;
-    private Method method = null;
+abstract class DynamicVariantVariableCallback extends ReadonlyVariableCallback {
+    private static final MethodType OBJECT_GETTER_TYPE = MethodType.methodType(Object.class);
+    // How long a read waits for the first evaluation of a cached member before evaluating it itself
+    private static final long FIRST_REFRESH_WAIT_MILLIS = 1000;
+
     private Logger logger = null;
 
-    private DynamicVariantVariableCallback(DynamicVariantVariableCallbackBuilder builder) {
-        reprObj = builder.obj;
-        field = builder.field;
-        method = builder.method;
-        logger = builder.logger;
+    // Value caching, only used when a cache duration is set
+    private final long cacheNanos;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile boolean cached = false;
+    private volatile long expiresAt = 0;
+    private final CountDownLatch firstRefresh;
+
+    // Background sampling, the value is only evaluated by sample()
+    private volatile boolean sampled = false;
+
+    // Evaluations are timed into it when set
+    private EvaluationStats.Member evaluationStats = null;
+
+    private DynamicVariantVariableCallback(Logger logger, long cacheMillis) {
+        this.logger = logger;
+        this.cacheNanos = TimeUnit.MILLISECONDS.toNanos(cacheMillis);
+        this.firstRefresh = cacheMillis > 0 ? new CountDownLatch(1) : null;
     }
 
-    private Object getObjCurrentValue() throws IllegalArgumentException, IllegalAccessException,
-            InvocationTargetException {
-        Object ret = null;
+    /**
+     * Evaluate the member and write its value into the variable
+     */
+    protected abstract void evaluateInto(Variable inVar) throws Throwable;
 
-        if (field != null) {
-            boolean accessible = field.isAccessible();
-            try {
-                field.setAccessible(true);
-                ret = field.get(reprObj);
-            } finally {
-                field.setAccessible(accessible);
-            }
-        } else {
-            boolean accessible = method.isAccessible();
-            try {
-                method.setAccessible(true);
-                ret = method.invoke(reprObj);
-            } finally {
-                method.setAccessible(accessible);
-            }
+    /**
+     * Evaluate the member and keep its value as the cached value
+     */
+    protected abstract void refresh() throws Throwable;
+
+    /**
+     * Write the cached value into the variable
+     */
+    protected abstract void assign(Variable inVar);
+
+    /**
+     * Switch background sampling on or off. While sampled, reads are served
+     * from the last sample and the member is only evaluated by sample().
+     */
+    void setSampled(boolean sampled) {
+        this.sampled = sampled;
+    }
+
+    /**
+     * Record the evaluations of the member, set before the callback is registered
+     */
+    void setEvaluationStats(EvaluationStats.Member evaluationStats) {
+        this.evaluationStats = evaluationStats;
+    }
+
+    private void timedEvaluateInto(Variable inVar) throws Throwable {
+        EvaluationStats.Member stats = evaluationStats;
+        if (stats == null) {
+            evaluateInto(inVar);
+            return;
         }
+        long start = System.nanoTime();
+        try {
+            evaluateInto(inVar);
+        } finally {
+            stats.record(System.nanoTime() - start);
+        }
+    }
 
-        return ret;
+    private void timedRefresh() throws Throwable {
+        EvaluationStats.Member stats = evaluationStats;
+        if (stats == null) {
+            refresh();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            refresh();
+        } finally {
+            stats.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Evaluate the member and keep the value for the following reads
+     */
+    void sample() {
+        try {
+            timedRefresh();
+            cached = true;
+        } catch (Throwable e) {
+            handleException(e);
+        }
     }
 
+    /**
+     * When sampled, the last sample is served. The member is only evaluated
+     * on the read path until the first sample is taken.
+     *
+     * Without a cache duration the member is evaluated on every read.
+     *
+     * With one, the cached value is served until it expires. A single thread
+     * then refreshes it while the others keep serving the previous value, so
+     * an expired entry never causes concurrent evaluations of the member.
+     * Until the first value is cached the others wait for it, and only evaluate
+     * the member themselves if it fails or takes too long.
+     */
     @Override
-    public void updateVariable(VariantVariable variable){
+    public final void updateVariable(VariantVariable variable){
         Variable inVar = variable.getVariable();
         try {
-            Object val = getObjCurrentValue();
+            if (sampled && cached) {
+                assign(inVar);
+                return;
+            }
+            if (cacheNanos <= 0) {
+                timedEvaluateInto(inVar);
+                return;
+            }
+            if (!cached || System.nanoTime() - expiresAt >= 0) {
+                if (refreshing.compareAndSet(false, true)) {
+                    try {
+                        timedRefresh();
+                        expiresAt = System.nanoTime() + cacheNanos;
+                        cached = true;
+                    } finally {
+                        refreshing.set(false);
+                        firstRefresh.countDown();
+                    }
+                } else if (!cached && !awaitFirstRefresh()) {
+                    timedEvaluateInto(inVar);
+                    return;
+                }
+            }
+            assign(inVar);
+        } catch (Throwable e) {
+            handleException(e);
+        }
+    }
+
+    /**
+     * Wait for the first evaluation in progress in another thread
+     *
+     * @return whether a value is cached
+     */
+    private boolean awaitFirstRefresh() {
+        try {
+            firstRefresh.await(FIRST_REFRESH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return cached;
+    }
+
+    protected void handleException(Throwable e) {
+        Throwables.propagateIfInstanceOf(e, Error.class);
+        if (logger != null) {
+            logger.info(String.format("Encountered Exception: %s", e));
+            logger.info(e.getMessage());
+        } else {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Callback for any member type, the value is converted according to the variable type.
+     */
+    private static class ObjectValueCallback extends DynamicVariantVariableCallback {
+        private final MethodHandle getter;
+        private volatile Object cachedValue;
+
+        private ObjectValueCallback(Logger logger, long cacheMillis, MethodHandle getter) {
+            super(logger, cacheMillis);
+            this.getter = getter.asType(OBJECT_GETTER_TYPE);
+        }
+
+        private static void assign(Variable inVar, Object val) {
             if (inVar instanceof AssignableFromInteger) {
                 AssignableFromInteger convVar = (AssignableFromInteger)inVar;
                 Number number = (Number)val;
@@ -73,12 +224,240 @@ class DynamicVariantVariableCallback extends ReadonlyVariableCallback {
             } else {
                 //No update on variable if there is no matching type.
             }
-        } catch (IllegalArgumentException | IllegalAccessException | InvocationTargetException e) {
-            if (logger != null) {
-                logger.info(String.format("Encountered Exception: %s", e));
-                logger.info(e.getMessage());
-            } else {
-                e.printStackTrace();
+        }
+
+        @Override
+        protected void evaluateInto(Variable inVar) throws Throwable {
+            assign(inVar, (Object) getter.invokeExact());
+        }
+
+        @Override
+        protected void refresh() throws Throwable {
+            cachedValue = (Object) getter.invokeExact();
+        }
+
+        @Override
+        protected void assign(Variable inVar) {
+            assign(inVar, cachedValue);
+        }
+    }
+
+    /**
+     * Callback for primitive members backing an AssignableFromInteger variable, e.g. Integer32
+     */
+    private static class IntValueCallback extends DynamicVariantVariableCallback {
+        private final MethodHandle getter;
+        private volatile int cachedValue;
+
+        private IntValueCallback(Logger logger, long cacheMillis, MethodHandle getter) {
+            super(logger, cacheMillis);
+            this.getter = getter;
+        }
+
+        @Override
+        protected void evaluateInto(Variable inVar) throws Throwable {
+            ((AssignableFromInteger)inVar).setValue((int) getter.invokeExact());
+        }
+
+        @Override
+        protected void refresh() throws Throwable {
+            cachedValue = (int) getter.invokeExact();
+        }
+
+        @Override
+        protected void assign(Variable inVar) {
+            ((AssignableFromInteger)inVar).setValue(cachedValue);
+        }
+    }
+
+    /**
+     * Callback for primitive members backing an AssignableFromLong variable, e.g. Counter64 or Gauge32
+     */
+    private static class LongValueCallback extends DynamicVariantVariableCallback {
+        private final MethodHandle getter;
+        private volatile long cachedValue;
+
+        private LongValueCallback(Logger logger, long cacheMillis, MethodHandle getter) {
+            super(logger, cacheMillis);
+            this.getter = getter;
+        }
+
+        @Override
+        protected void evaluateInto(Variable inVar) throws Throwable {
+            ((AssignableFromLong)inVar).setValue((long) getter.invokeExact());
+        }
+
+        @Override
+        protected void refresh() throws Throwable {
+            cachedValue = (long) getter.invokeExact();
+        }
+
+        @Override
+        protected void assign(Variable inVar) {
+            ((AssignableFromLong)inVar).setValue(cachedValue);
+        }
+    }
+
+    /**
+     * Getter of an annotated member resolved independently of any instance.
+     * Resolving is the expensive part, it is done once per class member and
+     * the result is bound to each annotated object.
+     */
+    static final class MemberGetter {
+        private static enum ValueKind { INT, LONG, OBJECT }
+
+        private static final MethodHandle NUMBER_INT_VALUE;
+        private static final MethodHandle NUMBER_LONG_VALUE;
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                NUMBER_INT_VALUE = lookup.findVirtual(Number.class, "intValue", MethodType.methodType(int.class));
+                NUMBER_LONG_VALUE = lookup.findVirtual(Number.class, "longValue", MethodType.methodType(long.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final MethodHandle getter;
+        private final ValueKind kind;
+        private final long cacheMillis;
+
+        private MemberGetter(MethodHandle getter, ValueKind kind, long cacheMillis) {
+            this.getter = getter;
+            this.kind = kind;
+            this.cacheMillis = cacheMillis;
+        }
+
+        /**
+         * Resolve the field or method into a MethodHandle taking the declaring
+         * object as an Object, static members ignore it.
+         * Access is only granted for the duration of the lookup, the handle
+         * keeps it afterwards.
+         *
+         * @param field field to read, or null
+         * @param method zero-arg method to invoke, or null
+         * @param mibType the variable class the value is written to, allows primitive specialization
+         * @param cacheMillis how long a value is reused before the member is evaluated again, 0 for no caching
+         * @return the resolved getter
+         */
+        static MemberGetter resolve(Field field, Method method, Class<?> mibType, long cacheMillis) {
+            if (field == null && method == null) {
+                throw new IllegalStateException("Either a field or a method is required");
+            }
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle handle;
+            int modifiers;
+
+            try {
+                if (field != null) {
+                    boolean accessible = field.isAccessible();
+                    try {
+                        field.setAccessible(true);
+                        handle = lookup.unreflectGetter(field);
+                    } finally {
+                        field.setAccessible(accessible);
+                    }
+                    modifiers = field.getModifiers();
+                } else {
+                    boolean accessible = method.isAccessible();
+                    try {
+                        method.setAccessible(true);
+                        handle = lookup.unreflect(method);
+                    } finally {
+                        method.setAccessible(accessible);
+                    }
+                    modifiers = method.getModifiers();
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException(e);
+            }
+
+            ValueKind kind = ValueKind.OBJECT;
+            Class<?> valueType = handle.type().returnType();
+            if (mibType != null && isNumericPrimitive(valueType)) {
+                if (AssignableFromInteger.class.isAssignableFrom(mibType)) {
+                    kind = ValueKind.INT;
+                    handle = MethodHandles.explicitCastArguments(handle, handle.type().changeReturnType(int.class));
+                } else if (AssignableFromLong.class.isAssignableFrom(mibType)) {
+                    kind = ValueKind.LONG;
+                    handle = MethodHandles.explicitCastArguments(handle, handle.type().changeReturnType(long.class));
+                }
+            } else if (mibType != null && Number.class.isAssignableFrom(valueType)) {
+                // e.g. StripedCounter, read through intValue()/longValue() instead of the conversion chain
+                if (AssignableFromInteger.class.isAssignableFrom(mibType)) {
+                    kind = ValueKind.INT;
+                    handle = MethodHandles.filterReturnValue(handle,
+                            NUMBER_INT_VALUE.asType(MethodType.methodType(int.class, valueType)));
+                } else if (AssignableFromLong.class.isAssignableFrom(mibType)) {
+                    kind = ValueKind.LONG;
+                    handle = MethodHandles.filterReturnValue(handle,
+                            NUMBER_LONG_VALUE.asType(MethodType.methodType(long.class, valueType)));
+                }
+            }
+            if (Modifier.isStatic(modifiers)) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            Class<?> returnType = kind == ValueKind.OBJECT ? Object.class : handle.type().returnType();
+            return new MemberGetter(handle.asType(MethodType.methodType(returnType, Object.class)), kind, cacheMillis);
+        }
+
+        private static boolean isNumericPrimitive(Class<?> valueType) {
+            return valueType.isPrimitive() && valueType != boolean.class && valueType != void.class;
+        }
+
+        /**
+         * Bind the getter to an annotated object
+         *
+         * @param obj the annotated object, ignored for static members
+         * @param logger
+         * @return callback reading the member of obj
+         */
+        DynamicVariantVariableCallback bind(Object obj, Logger logger) {
+            MethodHandle bound = getter.bindTo(obj);
+            switch (kind) {
+            case INT:
+                return new IntValueCallback(logger, cacheMillis, bound);
+            case LONG:
+                return new LongValueCallback(logger, cacheMillis, bound);
+            default:
+                return new ObjectValueCallback(logger, cacheMillis, bound);
+            }
+        }
+
+        /**
+         * Read the member of an object, e.g. the collection behind a table
+         *
+         * @param obj the annotated object, ignored for static members
+         * @return the value of the member, boxed for primitives
+         */
+        Object read(Object obj) throws Throwable {
+            switch (kind) {
+            case INT:
+                return (int) getter.invokeExact(obj);
+            case LONG:
+                return (long) getter.invokeExact(obj);
+            default:
+                return (Object) getter.invokeExact(obj);
+            }
+        }
+
+        /**
+         * Read the member of an object straight into a variable without binding
+         * a callback, used for the columns of table rows
+         *
+         * @param obj the annotated object, ignored for static members
+         * @param inVar the variable the value is written to
+         */
+        void readInto(Object obj, Variable inVar) throws Throwable {
+            switch (kind) {
+            case INT:
+                ((AssignableFromInteger)inVar).setValue((int) getter.invokeExact(obj));
+                break;
+            case LONG:
+                ((AssignableFromLong)inVar).setValue((long) getter.invokeExact(obj));
+                break;
+            default:
+                ObjectValueCallback.assign(inVar, (Object) getter.invokeExact(obj));
             }
         }
     }
@@ -89,6 +468,8 @@ class DynamicVariantVariableCallback extends ReadonlyVariableCallback {
         // other parameters
         private Field field;
         private Method method;
+        private Class<?> mibType;
+        private long cacheMillis;
         private Logger logger;
 
         public DynamicVariantVariableCallbackBuilder(Object obj) {
@@ -105,13 +486,29 @@ class DynamicVariantVariableCallback extends ReadonlyVariableCallback {
             return this;
         }
 
+        /**
+         * The variable class the value is written to, allows primitive specialization
+         */
+        public DynamicVariantVariableCallbackBuilder mibType(Class<?> mibType) {
+            this.mibType = mibType;
+            return this;
+        }
+
+        /**
+         * How long a value is reused before the member is evaluated again
+         */
+        public DynamicVariantVariableCallbackBuilder cacheMillis(long cacheMillis) {
+            this.cacheMillis = cacheMillis;
+            return this;
+        }
+
         public DynamicVariantVariableCallbackBuilder logger(Logger logger) {
             this.logger = logger;
             return this;
         }
 
         public DynamicVariantVariableCallback build() {
-            return new DynamicVariantVariableCallback(this);
+            return MemberGetter.resolve(field, method, mibType, cacheMillis).bind(obj, logger);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,196 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * How often and how long the annotated members of AnnotatedStatsMOGroup are
+ * evaluated, per OID: the number of evaluations, their cumulative time and a
+ * histogram of their latency in fixed buckets. Values served from a cache or
+ * from the last sample are not evaluations.
+ *
+ * Groups record into it once set with moGroup.setEvaluationStats(stats), each
+ * evaluation then costs two System.nanoTime() calls and three atomic increments
+ * of the array of its member, nothing is allocated.
+ *
+ * The members are a @MibTable with a relative OID, register it under a prefix,
+ * e.g. moGroup.addAnnotatedMibObject(stats, "1.3.6.1.4.1.29506.14."), or let the
+ * agent do it with SimpleSNMPAgent.registerEvaluationStats.
+ */
+public final class EvaluationStats {
+    // Upper bounds of the histogram buckets, the last bucket has none
+    private static final long[] BUCKET_BOUNDS_NANOS = {
+        TimeUnit.MICROSECONDS.toNanos(1),
+        TimeUnit.MICROSECONDS.toNanos(10),
+        TimeUnit.MICROSECONDS.toNanos(100),
+        TimeUnit.MILLISECONDS.toNanos(1),
+        TimeUnit.MILLISECONDS.toNanos(10),
+        TimeUnit.MILLISECONDS.toNanos(100)
+    };
+
+    public static final int BUCKETS = BUCKET_BOUNDS_NANOS.length + 1;
+
+    // Layout of the array of a member
+    private static final int EVALUATIONS = 0;
+    private static final int TOTAL_NANOS = 1;
+    private static final int FIRST_BUCKET = 2;
+
+    @MibTable(oid="1", description="Evaluations of the annotated members, one row per OID")
+    private final List<Member> members = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, Member> membersByOid = new ConcurrentHashMap<>();
+
+    /**
+     * Statistics of the member registered with an OID. Live while recorded
+     * into, fixed once returned by snapshot().
+     */
+    public static final class Member {
+        private final String oid;
+        private final AtomicLongArray values;
+
+        private Member(String oid, AtomicLongArray values) {
+            this.oid = oid;
+            this.values = values;
+        }
+
+        void record(long nanos) {
+            values.incrementAndGet(EVALUATIONS);
+            values.addAndGet(TOTAL_NANOS, nanos);
+            values.incrementAndGet(FIRST_BUCKET + bucketOf(nanos));
+        }
+
+        private Member copy() {
+            AtomicLongArray copy = new AtomicLongArray(values.length());
+            for (int i = 0; i < values.length(); i++) {
+                copy.set(i, values.get(i));
+            }
+            return new Member(oid, copy);
+        }
+
+        @MibObject(oid="1", description="OID of the member")
+        public String getOid() {
+            return oid;
+        }
+
+        @MibObject(oid="2", type="Counter64", description="Evaluations of the member")
+        public long getEvaluations() {
+            return values.get(EVALUATIONS);
+        }
+
+        public long getTotalNanos() {
+            return values.get(TOTAL_NANOS);
+        }
+
+        @MibObject(oid="3", type="Counter64", description="Cumulative evaluation time in microseconds")
+        public long getTotalMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(getTotalNanos());
+        }
+
+        @MibObject(oid="4", type="Gauge32", description="Mean evaluation time in microseconds")
+        public long getMeanMicros() {
+            long evaluations = getEvaluations();
+            return evaluations == 0 ? 0 : getTotalMicros() / evaluations;
+        }
+
+        /**
+         * @param bucket from 0 to BUCKETS - 1
+         * @return evaluations that took at most getBucketBoundNanos(bucket)
+         *         and more than the bound of the previous bucket
+         */
+        public long getBucketCount(int bucket) {
+            Preconditions.checkElementIndex(bucket, BUCKETS);
+            return values.get(FIRST_BUCKET + bucket);
+        }
+
+        @MibObject(oid="5", type="Counter64", description="Evaluations up to 1 microsecond")
+        private long getUpTo1Micro() {
+            return getBucketCount(0);
+        }
+
+        @MibObject(oid="6", type="Counter64", description="Evaluations up to 10 microseconds")
+        private long getUpTo10Micros() {
+            return getBucketCount(1);
+        }
+
+        @MibObject(oid="7", type="Counter64", description="Evaluations up to 100 microseconds")
+        private long getUpTo100Micros() {
+            return getBucketCount(2);
+        }
+
+        @MibObject(oid="8", type="Counter64", description="Evaluations up to 1 millisecond")
+        private long getUpTo1Milli() {
+            return getBucketCount(3);
+        }
+
+        @MibObject(oid="9", type="Counter64", description="Evaluations up to 10 milliseconds")
+        private long getUpTo10Millis() {
+            return getBucketCount(4);
+        }
+
+        @MibObject(oid="10", type="Counter64", description="Evaluations up to 100 milliseconds")
+        private long getUpTo100Millis() {
+            return getBucketCount(5);
+        }
+
+        @MibObject(oid="11", type="Counter64", description="Evaluations over 100 milliseconds")
+        private long getOver100Millis() {
+            return getBucketCount(6);
+        }
+    }
+
+    /**
+     * @param bucket from 0 to BUCKETS - 1
+     * @return upper bound of the bucket, Long.MAX_VALUE for the last one
+     */
+    public static long getBucketBoundNanos(int bucket) {
+        Preconditions.checkElementIndex(bucket, BUCKETS);
+        return bucket < BUCKET_BOUNDS_NANOS.length ? BUCKET_BOUNDS_NANOS[bucket] : Long.MAX_VALUE;
+    }
+
+    private static int bucketOf(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * Statistics to record the evaluations of the member with an OID into.
+     * A member registered again, e.g. by another group, keeps its statistics.
+     *
+     * @param oid
+     * @return the member to record into
+     */
+    synchronized Member register(String oid) {
+        Member member = membersByOid.get(oid);
+        if (member == null) {
+            member = new Member(oid, new AtomicLongArray(FIRST_BUCKET + BUCKETS));
+            membersByOid.put(oid, member);
+            members.add(member);
+        }
+        return member;
+    }
+
+    /**
+     * Copy of the statistics of every member, in registration order. Each
+     * value is read once, so a member evaluated meanwhile may be off by that
+     * evaluation across its values.
+     *
+     * @return members that do not change anymore
+     */
+    public List<Member> snapshot() {
+        List<Member> snapshot = new ArrayList<>(members.size());
+        for (Member member : members) {
+            snapshot.add(member.copy());
+        }
+        return Collections.unmodifiableList(snapshot);
+    }
+}
@@ -0,0 +1,109 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.util.WorkerPool;
+import org.snmp4j.util.WorkerTask;
+
+/**
+ * The snmp4j WorkerPool of SimpleSNMPAgent backed by an ExecutorService,
+ * e.g. VirtualThreads.newExecutor.
+ *
+ * At most maxPending tasks are queued or running, whatever the queue of the
+ * executor, the overload policy decides what happens to the following ones.
+ */
+class ExecutorWorkerPool implements WorkerPool {
+    private static final long STOP_TIMEOUT_SECONDS = 5;
+
+    private final ExecutorService executor;
+    private final Semaphore pending;
+    private final SimpleSNMPAgent.OverloadPolicy overloadPolicy;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+
+    ExecutorWorkerPool(ExecutorService executor) {
+        this(executor, Integer.MAX_VALUE, SimpleSNMPAgent.OverloadPolicy.DROP);
+    }
+
+    ExecutorWorkerPool(ExecutorService executor, int maxPending, SimpleSNMPAgent.OverloadPolicy overloadPolicy) {
+        this.executor = executor;
+        this.pending = new Semaphore(maxPending);
+        this.overloadPolicy = overloadPolicy;
+    }
+
+    /**
+     * Runs the task on the executor, or applies the overload policy if
+     * maxPending tasks are pending or the executor rejects it
+     */
+    @Override
+    public void execute(WorkerTask task) {
+        if (!tryToExecute(task)) {
+            if (overloadPolicy == SimpleSNMPAgent.OverloadPolicy.CALLER_RUNS) {
+                task.run();
+            } else {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public boolean tryToExecute(final WorkerTask task) {
+        if (!pending.tryAcquire()) {
+            return false;
+        }
+        active.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        active.decrementAndGet();
+                        pending.release();
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            active.decrementAndGet();
+            pending.release();
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of tasks dropped by the DROP overload policy
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stop accepting tasks and wait for the running ones
+     */
+    @Override
+    public void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isIdle() {
+        return active.get() == 0;
+    }
+}
@@ -0,0 +1,23 @@
+package com.tzavelas.snmp;
+
+/**
+ * Conversion of the values of the gauge types, e.g. MinGauge, MaxGauge or
+ * RateMeter, to the Gauge32 range read by the agent.
+ */
+final class Gauge32Values {
+    static final long GAUGE32_MAX = 0xFFFFFFFFL;
+
+    private Gauge32Values() {
+    }
+
+    /**
+     * Bound a value to the Gauge32 range, the extreme values of the
+     * accumulators that were not updated read as 0
+     */
+    static long toGauge32(long value) {
+        if (value == Long.MIN_VALUE || value == Long.MAX_VALUE || value < 0) {
+            return 0;
+        }
+        return Math.min(value, GAUGE32_MAX);
+    }
+}
@@ -0,0 +1,590 @@
+package com.tzavelas.snmp;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.snmp4j.PDU;
+import org.snmp4j.agent.DefaultMOScope;
+import org.snmp4j.agent.MOScope;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.request.SubRequest;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+
+import com.google.common.base.Throwables;
+
+/**
+ * Read-only conceptual table backed by a @MibTable annotated member.
+ * Used by AnnotatedStatsMOGroup hence why its not public
+ *
+ * Unlike DefaultMOTable, no row is copied into a table model: every request
+ * reads the collection held by the annotated member and only looks up the row
+ * it needs. GETNEXT and GETBULK walks of positional collections that are not
+ * RandomAccess resume from the iterator left by the previous lookup, so a
+ * walk of the table only iterates the collection once per column. Maps without
+ * a natural key order are walked through their sorted keys, sorted once for
+ * all the lookups of a walk.
+ */
+class LazyMOTable implements ManagedObject {
+    private static final long MAX_INDEX = 0xFFFFFFFFL;
+
+    /**
+     * A column of the table, one @MibObject member of the row class
+     */
+    static final class Column {
+        private final int id;
+        private final Class<?> mibClass;
+        private final DynamicVariantVariableCallback.MemberGetter getter;
+
+        Column(int id, Class<?> mibClass, DynamicVariantVariableCallback.MemberGetter getter) {
+            this.id = id;
+            this.mibClass = mibClass;
+            this.getter = getter;
+        }
+
+        int getId() {
+            return id;
+        }
+    }
+
+    /**
+     * A row found by a lookup and its index
+     */
+    private static final class Row {
+        private final long index;
+        private final Object value;
+
+        private Row(long index, Object value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    /**
+     * An instance of a cell found for a GETNEXT
+     */
+    private static final class Instance {
+        private final OID oid;
+        private final Column column;
+        private final Object row;
+
+        private Instance(OID oid, Column column, Object row) {
+            this.oid = oid;
+            this.column = column;
+            this.row = row;
+        }
+    }
+
+    private final OID entryOid;
+    private final Column[] columns;
+    private final OID[] columnOids;
+    private final DefaultMOScope scope;
+    private final Object annotatedObject;
+    private final DynamicVariantVariableCallback.MemberGetter rowsGetter;
+    private final Logger logger;
+
+    // Iterator left by the last lookup of a positional collection that is not RandomAccess
+    private final AtomicReference<Cursor> cursor = new AtomicReference<>();
+    // Sorted keys of the last map without a natural key order
+    private final AtomicReference<SortedKeys> sortedKeys = new AtomicReference<>();
+
+    /**
+     * @param tableOid OID of the table, the entry is tableOid.1
+     * @param columns columns sorted by id
+     * @param annotatedObject the object holding the rows, null for static members
+     * @param rowsGetter getter of the member holding the rows
+     * @param logger
+     */
+    LazyMOTable(OID tableOid, List<Column> columns, Object annotatedObject,
+                DynamicVariantVariableCallback.MemberGetter rowsGetter, Logger logger) {
+        this.entryOid = new OID(tableOid.getValue(), new int[] { 1 });
+        this.columns = columns.toArray(new Column[columns.size()]);
+        this.columnOids = new OID[this.columns.length];
+        for (int i = 0; i < this.columns.length; i++) {
+            columnOids[i] = new OID(entryOid.getValue(), new int[] { this.columns[i].id });
+        }
+        this.scope = new DefaultMOScope(entryOid, true, entryOid.nextPeer(), false);
+        this.annotatedObject = annotatedObject;
+        this.rowsGetter = rowsGetter;
+        this.logger = logger;
+    }
+
+    @Override
+    public MOScope getScope() {
+        return scope;
+    }
+
+    @Override
+    public OID find(MOScope range) {
+        Instance instance = nextInstance(range);
+        return instance == null ? null : instance.oid;
+    }
+
+    @Override
+    public void get(SubRequest request) {
+        VariableBinding vb = request.getVariableBinding();
+        OID oid = vb.getOid();
+        Column column = null;
+        if (oid.size() == entryOid.size() + 2 && oid.startsWith(entryOid)) {
+            column = getColumn(oid.get(entryOid.size()));
+        }
+        if (column == null) {
+            vb.setVariable(Null.noSuchObject);
+        } else {
+            Object row = getRows().get(oid.get(entryOid.size() + 1) & MAX_INDEX);
+            vb.setVariable(row == null ? Null.noSuchInstance : readCell(column, row));
+        }
+        request.completed();
+    }
+
+    @Override
+    public boolean next(SubRequest request) {
+        Instance instance = nextInstance(request.getScope());
+        if (instance == null) {
+            return false;
+        }
+        VariableBinding vb = request.getVariableBinding();
+        vb.setOid(instance.oid);
+        vb.setVariable(readCell(instance.column, instance.row));
+        request.completed();
+        return true;
+    }
+
+    @Override
+    public void prepare(SubRequest request) {
+        request.getStatus().setErrorStatus(PDU.notWritable);
+    }
+
+    @Override
+    public void commit(SubRequest request) {
+        request.getStatus().setErrorStatus(PDU.commitFailed);
+    }
+
+    @Override
+    public void undo(SubRequest request) {
+        request.getStatus().setErrorStatus(PDU.undoFailed);
+    }
+
+    @Override
+    public void cleanup(SubRequest request) {
+        request.completed();
+    }
+
+    private Column getColumn(int id) {
+        for (Column column : columns) {
+            if (column.id == id) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the first cell after the lower bound of the scope, walking the
+     * table column by column.
+     */
+    private Instance nextInstance(MOScope range) {
+        OID lower = range.getLowerBound();
+        Rows rows = null;
+        for (int i = 0; i < columns.length; i++) {
+            OID columnOid = columnOids[i];
+            long after;
+            if (lower == null || lower.compareTo(columnOid) <= 0) {
+                after = -1;
+            } else if (lower.startsWith(columnOid)) {
+                long index = lower.get(columnOid.size()) & MAX_INDEX;
+                boolean exact = lower.size() == columnOid.size() + 1;
+                after = exact && range.isLowerIncluded() ? index - 1 : index;
+            } else {
+                continue;
+            }
+
+            if (rows == null) {
+                rows = getRows();
+            }
+            Row row = rows.next(after);
+            if (row == null) {
+                continue;
+            }
+            OID oid = new OID(columnOid);
+            oid.append((int) row.index);
+            if (isAboveUpperBound(range, oid)) {
+                return null;
+            }
+            return new Instance(oid, columns[i], row.value);
+        }
+        return null;
+    }
+
+    private static boolean isAboveUpperBound(MOScope range, OID oid) {
+        OID upper = range.getUpperBound();
+        if (upper == null) {
+            return false;
+        }
+        int cmp = oid.compareTo(upper);
+        return cmp > 0 || (cmp == 0 && !range.isUpperIncluded());
+    }
+
+    private Variable readCell(Column column, Object row) {
+        try {
+            Variable var = (Variable) column.mibClass.newInstance();
+            column.getter.readInto(row, var);
+            return var;
+        } catch (Throwable e) {
+            handleException(e);
+            return Null.noSuchInstance;
+        }
+    }
+
+    /**
+     * Wrap the current value of the annotated member
+     */
+    private Rows getRows() {
+        Object value;
+        try {
+            value = rowsGetter.read(annotatedObject);
+        } catch (Throwable e) {
+            handleException(e);
+            value = null;
+        }
+
+        if (value instanceof List && value instanceof RandomAccess) {
+            return new ListRows((List<?>) value);
+        } else if (value instanceof Object[]) {
+            return new ArrayRows((Object[]) value);
+        } else if (value instanceof NavigableMap && ((NavigableMap<?, ?>) value).comparator() == null) {
+            return new NavigableMapRows((NavigableMap<?, ?>) value);
+        } else if (value instanceof Map) {
+            return new MapRows((Map<?, ?>) value, sortedKeys);
+        } else if (value instanceof Iterable) {
+            return new IterableRows((Iterable<?>) value, cursor);
+        }
+        if (value != null) {
+            logger.warning("Unsupported table member type: " + value.getClass().getName());
+        }
+        return EMPTY_ROWS;
+    }
+
+    private void handleException(Throwable e) {
+        Throwables.propagateIfInstanceOf(e, Error.class);
+        logger.info(String.format("Encountered Exception: %s", e));
+    }
+
+    /**
+     * The rows held by the annotated member
+     */
+    private static abstract class Rows {
+        /**
+         * @return the row with the given index, null if there is none
+         */
+        abstract Object get(long index);
+
+        /**
+         * @param after index the row must follow, -1 for the first row
+         * @return the row with the lowest index greater than after, null if there is none
+         */
+        abstract Row next(long after);
+    }
+
+    private static final Rows EMPTY_ROWS = new Rows() {
+        @Override
+        Object get(long index) {
+            return null;
+        }
+
+        @Override
+        Row next(long after) {
+            return null;
+        }
+    };
+
+    private static class ListRows extends Rows {
+        private final List<?> list;
+
+        private ListRows(List<?> list) {
+            this.list = list;
+        }
+
+        @Override
+        Object get(long index) {
+            return index >= 1 && index <= list.size() ? list.get((int) index - 1) : null;
+        }
+
+        @Override
+        Row next(long after) {
+            long index = Math.max(after, 0) + 1;
+            for (; index <= list.size(); index++) {
+                Object value = list.get((int) index - 1);
+                if (value != null) {
+                    return new Row(index, value);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class ArrayRows extends Rows {
+        private final Object[] array;
+
+        private ArrayRows(Object[] array) {
+            this.array = array;
+        }
+
+        @Override
+        Object get(long index) {
+            return index >= 1 && index <= array.length ? array[(int) index - 1] : null;
+        }
+
+        @Override
+        Row next(long after) {
+            long index = Math.max(after, 0) + 1;
+            for (; index <= array.length; index++) {
+                Object value = array[(int) index - 1];
+                if (value != null) {
+                    return new Row(index, value);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Position of an iteration over a collection, shared between lookups so
+     * that walking a table does not restart the iteration for each row
+     */
+    private static final class Cursor {
+        private final Iterable<?> source;
+        private final int size;
+        private final Iterator<?> iterator;
+        private long position = 0;
+        private Object current = null;
+
+        private Cursor(Iterable<?> source) {
+            this.source = source;
+            this.size = sizeOf(source);
+            this.iterator = source.iterator();
+        }
+
+        /**
+         * Size of a collection, -1 for other iterables
+         */
+        private static int sizeOf(Iterable<?> iterable) {
+            return iterable instanceof Collection ? ((Collection<?>) iterable).size() : -1;
+        }
+    }
+
+    private static class IterableRows extends Rows {
+        private final Iterable<?> iterable;
+        private final AtomicReference<Cursor> cursorHolder;
+
+        private IterableRows(Iterable<?> iterable, AtomicReference<Cursor> cursorHolder) {
+            this.iterable = iterable;
+            this.cursorHolder = cursorHolder;
+        }
+
+        @Override
+        Object get(long index) {
+            Row row = index >= 1 ? next(index - 1) : null;
+            return row != null && row.index == index ? row.value : null;
+        }
+
+        @Override
+        Row next(long after) {
+            // Take the cursor so concurrent walks never share an iterator
+            Cursor cursor = cursorHolder.getAndSet(null);
+            long target = Math.max(after, 0) + 1;
+            // Each walk starts from a new iteration, so rows replaced since the last walk are not served
+            if (cursor == null || cursor.source != iterable || cursor.position > target || target == 1
+                    || cursor.size != Cursor.sizeOf(iterable)) {
+                cursor = new Cursor(iterable);
+            } else if (cursor.position == target) {
+                // The same row is looked up again, e.g. by the repetitions of a GETBULK
+                cursorHolder.set(cursor);
+                return new Row(cursor.position, cursor.current);
+            }
+            try {
+                return advance(cursor, target);
+            } catch (ConcurrentModificationException e) {
+                // The collection changed since the cursor was left, iterate it again
+                return advance(new Cursor(iterable), target);
+            }
+        }
+
+        private Row advance(Cursor cursor, long target) {
+            while (cursor.iterator.hasNext()) {
+                Object value = cursor.iterator.next();
+                cursor.position++;
+                if (cursor.position >= target && value != null) {
+                    cursor.current = value;
+                    cursorHolder.set(cursor);
+                    return new Row(cursor.position, value);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Convert an index to a key of the same type as the keys of a map
+     *
+     * @return the key, null if the index can not be represented by the key type
+     */
+    private static Object toKey(long index, Object sampleKey) {
+        if (sampleKey instanceof Long) {
+            return index;
+        } else if (sampleKey instanceof Integer) {
+            return index <= Integer.MAX_VALUE ? (Object) (int) index : null;
+        } else if (sampleKey instanceof Short) {
+            return index <= Short.MAX_VALUE ? (Object) (short) index : null;
+        } else if (sampleKey instanceof Byte) {
+            return index <= Byte.MAX_VALUE ? (Object) (byte) index : null;
+        }
+        return null;
+    }
+
+    private static boolean isIndexKey(Object key) {
+        if (!(key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte)) {
+            return false;
+        }
+        long index = ((Number) key).longValue();
+        return index >= 0 && index <= MAX_INDEX;
+    }
+
+    private static class NavigableMapRows extends Rows {
+        private final NavigableMap<?, ?> map;
+
+        private NavigableMapRows(NavigableMap<?, ?> map) {
+            this.map = map;
+        }
+
+        @Override
+        Object get(long index) {
+            if (map.isEmpty()) {
+                return null;
+            }
+            Object key = toKey(index, map.firstKey());
+            return key == null ? null : map.get(key);
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        @Override
+        Row next(long after) {
+            if (map.isEmpty()) {
+                return null;
+            }
+            NavigableMap rawMap = map;
+            Object key = toKey(Math.max(after, 0), map.firstKey());
+            if (key == null) {
+                return null;
+            }
+            Map.Entry<?, ?> entry = after < 0 ? rawMap.ceilingEntry(key) : rawMap.higherEntry(key);
+            for (; entry != null; entry = rawMap.higherEntry(entry.getKey())) {
+                if (isIndexKey(entry.getKey()) && entry.getValue() != null) {
+                    return new Row(((Number) entry.getKey()).longValue(), entry.getValue());
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The index keys of a map in ascending order, shared between lookups so
+     * that walking a table does not sort the keys for each row
+     */
+    private static final class SortedKeys {
+        private final Map<?, ?> source;
+        private final int size;
+        private final Object sampleKey;
+        private final long[] indexes;
+        // Set once a sorted key is found missing from the map
+        private volatile boolean stale = false;
+
+        private SortedKeys(Map<?, ?> source) {
+            this.source = source;
+            this.size = source.size();
+            long[] indexes = new long[size];
+            int count = 0;
+            Object sampleKey = null;
+            for (Object key : source.keySet()) {
+                if (count < indexes.length && isIndexKey(key)) {
+                    indexes[count++] = ((Number) key).longValue();
+                    sampleKey = key;
+                }
+            }
+            indexes = Arrays.copyOf(indexes, count);
+            Arrays.sort(indexes);
+            this.sampleKey = sampleKey;
+            this.indexes = indexes;
+        }
+    }
+
+    /**
+     * Maps without a natural key order, e.g. HashMap, are walked through their
+     * sorted keys. The keys are sorted again when a walk starts, when the size
+     * of the map changes and when a sorted key is no longer in the map.
+     */
+    private static class MapRows extends Rows {
+        private final Map<?, ?> map;
+        private final AtomicReference<SortedKeys> keysHolder;
+
+        private MapRows(Map<?, ?> map, AtomicReference<SortedKeys> keysHolder) {
+            this.map = map;
+            this.keysHolder = keysHolder;
+        }
+
+        @Override
+        Object get(long index) {
+            for (Object sampleKey : map.keySet()) {
+                Object key = toKey(index, sampleKey);
+                return key == null ? null : map.get(key);
+            }
+            return null;
+        }
+
+        @Override
+        Row next(long after) {
+            // Concurrent walks share the sorted keys, only their stale flag is written afterwards
+            SortedKeys keys = keysHolder.get();
+            if (keys == null || keys.source != map || keys.size != map.size()
+                    || keys.indexes.length == 0 || after < keys.indexes[0]) {
+                keys = sortKeys();
+            }
+            Row row = next(keys, after);
+            if (keys.stale) {
+                // A key was removed, maybe replaced by another one at the same size
+                row = next(sortKeys(), after);
+            }
+            return row;
+        }
+
+        private SortedKeys sortKeys() {
+            SortedKeys keys = new SortedKeys(map);
+            keysHolder.set(keys);
+            return keys;
+        }
+
+        private Row next(SortedKeys keys, long after) {
+            int i = Arrays.binarySearch(keys.indexes, Math.max(after, 0));
+            i = i < 0 ? -i - 1 : (after < 0 ? i : i + 1);
+            for (; i < keys.indexes.length; i++) {
+                Object key = toKey(keys.indexes[i], keys.sampleKey);
+                Object value = key == null ? null : map.get(key);
+                if (value != null) {
+                    return new Row(keys.indexes[i], value);
+                }
+                keys.stale = true;
+            }
+            return null;
+        }
+    }
+}
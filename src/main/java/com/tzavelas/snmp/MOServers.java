@@ -0,0 +1,63 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.snmp4j.agent.DuplicateRegistrationException;
+import org.snmp4j.agent.MOServer;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * Registration of many managed objects at once, e.g. the members of a
+ * tenant, with any MOServer.
+ *
+ * An OidTrieMOServer checks them for conflicts first and publishes or
+ * removes them in one step, so requests see either none or all of them.
+ * Other servers register them one at a time, requests may see some of them
+ * meanwhile, and those registered are unregistered again on a conflict.
+ */
+public final class MOServers {
+    private MOServers() {
+    }
+
+    /**
+     * Register all the managed objects or none of them
+     *
+     * @throws DuplicateRegistrationException if any of them overlaps another
+     *         or a registered one
+     */
+    public static void register(MOServer server, Collection<? extends ManagedObject> mos, OctetString context)
+            throws DuplicateRegistrationException {
+        if (server instanceof OidTrieMOServer) {
+            ((OidTrieMOServer) server).registerAll(mos, context);
+            return;
+        }
+        List<ManagedObject> registered = new ArrayList<>(mos.size());
+        try {
+            for (ManagedObject mo : mos) {
+                server.register(mo, context);
+                registered.add(mo);
+            }
+        } catch (DuplicateRegistrationException ex) {
+            for (ManagedObject mo : registered) {
+                server.unregister(mo, context);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Unregister the managed objects, those not registered are skipped
+     */
+    public static void unregister(MOServer server, Collection<? extends ManagedObject> mos, OctetString context) {
+        if (server instanceof OidTrieMOServer) {
+            ((OidTrieMOServer) server).unregisterAll(mos, context);
+            return;
+        }
+        for (ManagedObject mo : mos) {
+            server.unregister(mo, context);
+        }
+    }
+}
@@ -8,25 +8,33 @@ import java.lang.annotation.RetentionPolicy;
  * A custom annotation to mark a field or zero-arg method in a class to be
  * used as a MIB Object. The decorated field will only be read-only
  *
- * Of all the attributes defined, only type and oid is relevant for
- * server implementation. The other attributes are used to generate
- * SMIv2 MIB definition.
+ * The type and oid, along with cacheMillis, sampleMillis, risingThreshold,
+ * fallingThreshold and notifyOnChange, are used by the server implementation.
+ * The other attributes are used to generate SMIv2 MIB definition.
+ *
+ * Within the row class of a @MibTable, the oid is the column number.
  */
 @Documented
 @Retention(RetentionPolicy.RUNTIME)
 public @interface MibObject {
-    //TODO: support SNMP Tables
     /**
      * The syntax/type of the MIB object, valid values are restricted to:
      *     - Integer32
      *     - Counter64
+     *     - Gauge32
      *     - OctetString
      *
      * If unspecified, null or "", it will be using the type of the following mapping:
-     *     - (Java) byte, short, int    => (SNMP) Integer32
-     *     - (Java) long                => (SNMP) Counter64
-     *     - (Java) String              => (SNMP) OctetString
-     *     - (Java) other type          => (SNMP) OctetString   (Use the .toString())
+     *     - (Java) byte, short, int and their boxed types  => (SNMP) Integer32
+     *     - (Java) long, Long                              => (SNMP) Counter64
+     *     - (Java) StripedCounter                          => (SNMP) Counter64
+     *     - (Java) MaxGauge, MinGauge                      => (SNMP) Gauge32
+     *     - (Java) RateMeter                               => (SNMP) Gauge32   (The rate, rounded)
+     *     - (Java) String                                  => (SNMP) OctetString
+     *     - (Java) other type                              => (SNMP) OctetString   (Use the .toString())
+     *
+     * MaxGauge, MinGauge and RateMeter values are bounded to the Gauge32 range
+     * 0..4294967295, and a gauge that was never updated reads as 0.
      **/
     String type() default "";
 
@@ -48,5 +56,51 @@ public @interface MibObject {
     /** A name for the object. */
     String name() default "";
 
+    /**
+     * How long, in milliseconds, a value is served again before the member is
+     * re-evaluated. Useful for methods that are expensive to compute.
+     * default is 0, the member is evaluated on every request.
+     *
+     * Only honored by AnnotatedStatsMOGroup.
+     **/
+    long cacheMillis() default 0;
+
+    /**
+     * Sampling interval, in milliseconds, of this member when its group samples
+     * in the background (see AnnotatedStatsMOGroup.startSampling).
+     * default is 0, the interval of the group is used.
+     **/
+    long sampleMillis() default 0;
+
+    /**
+     * Value at or above which a ThresholdNotifier watching the group of this
+     * member sends a rising notification. The next one is only sent once the
+     * value reached fallingThreshold, or went below this one without it.
+     * default is Long.MAX_VALUE, no rising notification.
+     *
+     * Only honored for numeric members by AnnotatedStatsMOGroup.
+     **/
+    long risingThreshold() default Long.MAX_VALUE;
+
+    /**
+     * Value at or below which a ThresholdNotifier watching the group of this
+     * member sends a falling notification. The next one is only sent once the
+     * value reached risingThreshold, or went above this one without it.
+     * default is Long.MIN_VALUE, no falling notification.
+     *
+     * Only honored for numeric members by AnnotatedStatsMOGroup, and when
+     * both thresholds are set only if it is below risingThreshold.
+     **/
+    long fallingThreshold() default Long.MIN_VALUE;
+
+    /**
+     * Whether a ThresholdNotifier watching the group of this member sends a
+     * notification whenever its value changes.
+     * default is false.
+     *
+     * Only honored by AnnotatedStatsMOGroup.
+     **/
+    boolean notifyOnChange() default false;
+
     //String access() default "read-only";  -- let's not support write yet
 }
\ No newline at end of file
@@ -0,0 +1,388 @@
+package com.tzavelas.snmp;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import org.snmp4j.smi.AssignableFromInteger;
+import org.snmp4j.smi.AssignableFromLong;
+import org.snmp4j.smi.AssignableFromString;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * Annotation processor that generates a reflection-free MOGroup for every class
+ * carrying @MibObject members.
+ *
+ * For a class Foo, a FooMOGroup is generated in the same package. It reads the
+ * annotated fields and getters directly and holds the OIDs as constants, so
+ * neither registration nor polling use reflection.
+ *
+ * The processor is not registered as a service, so it only runs when named
+ * explicitly, e.g. javac -processor com.tzavelas.snmp.MibObjectProcessor, or
+ * with the maven-compiler-plugin:
+ *         <annotationProcessors>
+ *             <annotationProcessor>com.tzavelas.snmp.MibObjectProcessor</annotationProcessor>
+ *         </annotationProcessors>
+ *
+ * Usage:
+ *         Foo obj = new Foo();
+ *         ...
+ *         FooMOGroup moGroup = new FooMOGroup(obj);
+ *         moGroup.registerMOs(agent.getServer(), null);
+ *
+ * The generated code lives in the package of the annotated class, so private
+ * members cannot be read by it. They are skipped and left to
+ * AnnotatedStatsMOGroup.
+ */
+@SupportedAnnotationTypes("com.tzavelas.snmp.MibObject")
+public class MibObjectProcessor extends AbstractProcessor {
+    private static final String GROUP_SUFFIX = "MOGroup";
+    private static final String EMPTY_OID = "";
+    private static final String EMPTY_TYPE = "";
+
+    /**
+     * A @MibObject member that can be read by the generated group
+     */
+    private static class MemberDefinition {
+        private final String constantName;
+        private final String oid;
+        private final Class<?> mibClass;
+        private final String readExpression;
+        // Kind of the member value, DECLARED for objects
+        private final TypeKind kind;
+
+        private MemberDefinition(String constantName, String oid, Class<?> mibClass,
+                                 String readExpression, TypeKind kind) {
+            this.constantName = constantName;
+            this.oid = oid;
+            this.mibClass = mibClass;
+            this.readExpression = readExpression;
+            this.kind = kind;
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<TypeElement, List<Element>> membersByType = new LinkedHashMap<>();
+        for (Element member : roundEnv.getElementsAnnotatedWith(MibObject.class)) {
+            if (member.getKind() != ElementKind.FIELD && member.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            TypeElement owner = (TypeElement) member.getEnclosingElement();
+            List<Element> members = membersByType.get(owner);
+            if (members == null) {
+                members = new ArrayList<>();
+                membersByType.put(owner, members);
+            }
+            members.add(member);
+        }
+
+        for (Map.Entry<TypeElement, List<Element>> entry : membersByType.entrySet()) {
+            TypeElement owner = entry.getKey();
+            if (!isAccessibleFromPackage(owner)) {
+                warning(owner, "@MibObject members of " + owner + " cannot be read from generated code, skipping");
+                continue;
+            }
+            try {
+                generateGroup(owner, entry.getValue());
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to generate MOGroup for " + owner + ": " + e.getMessage(), owner);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine if the type can be referenced from a class generated in its package
+     *
+     * @param type
+     * @return
+     */
+    private boolean isAccessibleFromPackage(TypeElement type) {
+        Element element = type;
+        while (element instanceof TypeElement) {
+            TypeElement typeElement = (TypeElement) element;
+            if (typeElement.getNestingKind() == NestingKind.LOCAL
+                    || typeElement.getNestingKind() == NestingKind.ANONYMOUS
+                    || typeElement.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            element = typeElement.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * Get MIB class from @MibObject type, same rules as AnnotatedStatsMOGroup
+     *
+     * @param mibAnnotationType
+     * @param typeName
+     * @return MIB Class
+     */
+    private Class<?> getMibObjectType(String mibAnnotationType, String typeName) {
+        String typeNorm = mibAnnotationType.trim().toLowerCase();
+        Class<?> ret = null;
+        if (typeNorm.equals(EMPTY_TYPE)) {
+            ret = AnnotatedStatsMOGroup.OBJECT_CLASS_TO_MIB_CLASS_MAPPING.get(typeName);
+            if (ret == null) {
+                ret = OctetString.class;
+            }
+        } else if (AnnotatedStatsMOGroup.OBJECT_CLASS_TO_MIB_CLASS_MAPPING.containsKey(typeNorm)) {
+            ret = AnnotatedStatsMOGroup.OBJECT_CLASS_TO_MIB_CLASS_MAPPING.get(typeNorm);
+        } else {
+            ret = AnnotatedStatsMOGroup.OBJECT_CLASS_TO_MIB_CLASS_MAPPING.get(typeName);
+        }
+        return ret;
+    }
+
+    /**
+     * Build the definition of a member, or null if it cannot be generated
+     *
+     * @param owner
+     * @param member
+     * @param usedNames
+     * @return member definition
+     */
+    private MemberDefinition processMember(TypeElement owner, Element member, Set<String> usedNames) {
+        MibObject mibAnnotation = member.getAnnotation(MibObject.class);
+        if (mibAnnotation.oid().trim().equals(EMPTY_OID)) {
+            warning(member, "Empty OID provided");
+            return null;
+        }
+        if (member.getModifiers().contains(Modifier.PRIVATE)) {
+            // Read through reflection by AnnotatedStatsMOGroup, the usual case
+            return null;
+        }
+        if (mibAnnotation.cacheMillis() > 0 || mibAnnotation.sampleMillis() > 0) {
+            warning(member, "cacheMillis and sampleMillis are not honored by generated groups, "
+                    + "the member is read on every request");
+        }
+        if (mibAnnotation.risingThreshold() != Long.MAX_VALUE || mibAnnotation.fallingThreshold() != Long.MIN_VALUE
+                || mibAnnotation.notifyOnChange()) {
+            warning(member, "Notifications are not sent for generated groups, use AnnotatedStatsMOGroup");
+        }
+
+        TypeMirror valueType;
+        String access = member.getModifiers().contains(Modifier.STATIC)
+                ? owner.getQualifiedName() + "." + member.getSimpleName()
+                : "obj." + member.getSimpleName();
+        if (member.getKind() == ElementKind.METHOD) {
+            ExecutableElement method = (ExecutableElement) member;
+            valueType = method.getReturnType();
+            if (!method.getParameters().isEmpty() || valueType.getKind() == TypeKind.VOID) {
+                warning(member, "@MibObject method must take no argument and return a value, skipping");
+                return null;
+            }
+            for (TypeMirror thrown : method.getThrownTypes()) {
+                if (!isSubtype(thrown, RuntimeException.class) && !isSubtype(thrown, Error.class)) {
+                    warning(member, "@MibObject method throwing checked exceptions cannot be read from "
+                            + "generated code, skipping");
+                    return null;
+                }
+            }
+            access += "()";
+        } else {
+            valueType = member.asType();
+        }
+
+        boolean primitive = valueType.getKind().isPrimitive();
+        String typeName = processingEnv.getTypeUtils().erasure(valueType).toString();
+        Class<?> mibClass = getMibObjectType(mibAnnotation.type(), typeName);
+        if (mibClass == null) {
+            warning(member, "Unsupported @MibObject type " + mibAnnotation.type() + " for " + typeName);
+            return null;
+        }
+
+        boolean numericMibClass = AssignableFromInteger.class.isAssignableFrom(mibClass)
+                || AssignableFromLong.class.isAssignableFrom(mibClass);
+        boolean numeric = (primitive && valueType.getKind() != TypeKind.BOOLEAN)
+                || isSubtype(valueType, Number.class);
+        if (numericMibClass && !numeric) {
+            warning(member, mibClass.getSimpleName() + " requires a numeric member, found " + typeName);
+            return null;
+        }
+
+        String oid = mibAnnotation.oid().trim();
+        // For Scalar value, .0 ending is needed
+        if (!oid.endsWith(".0")) {
+            oid += ".0";
+        }
+
+        String constantName = toConstantName(member.getSimpleName().toString()) + "_OID";
+        while (!usedNames.add(constantName)) {
+            constantName = "_" + constantName;
+        }
+        return new MemberDefinition(constantName, oid, mibClass, access,
+                primitive ? valueType.getKind() : TypeKind.DECLARED);
+    }
+
+    private boolean isSubtype(TypeMirror type, Class<?> cls) {
+        TypeElement clsElement = processingEnv.getElementUtils().getTypeElement(cls.getName());
+        return clsElement != null
+                && processingEnv.getTypeUtils().isAssignable(type, clsElement.asType());
+    }
+
+    private static String toConstantName(String memberName) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < memberName.length(); i++) {
+            char c = memberName.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) {
+                sb.append('_');
+            }
+            sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Statement that copies the member value into the variable of the VariantVariable
+     *
+     * @param member
+     * @return java statement
+     */
+    private static String updateStatement(MemberDefinition member) {
+        if (AssignableFromInteger.class.isAssignableFrom(member.mibClass)) {
+            return member.kind.isPrimitive()
+                    ? "((org.snmp4j.smi.AssignableFromInteger) variable.getVariable()).setValue("
+                        + castTo(TypeKind.INT, member.kind) + member.readExpression + ");"
+                    : "java.lang.Number value = " + member.readExpression + ";\n"
+                        + "                    if (value != null) {\n"
+                        + "                        ((org.snmp4j.smi.AssignableFromInteger) variable.getVariable())"
+                        + ".setValue(value.intValue());\n"
+                        + "                    }";
+        } else if (AssignableFromLong.class.isAssignableFrom(member.mibClass)) {
+            return member.kind.isPrimitive()
+                    ? "((org.snmp4j.smi.AssignableFromLong) variable.getVariable()).setValue("
+                        + castTo(TypeKind.LONG, member.kind) + member.readExpression + ");"
+                    : "java.lang.Number value = " + member.readExpression + ";\n"
+                        + "                    if (value != null) {\n"
+                        + "                        ((org.snmp4j.smi.AssignableFromLong) variable.getVariable())"
+                        + ".setValue(value.longValue());\n"
+                        + "                    }";
+        }
+        // Like the reflective groups, a null member leaves the previous value instead of "null"
+        return "java.lang.Object value = " + member.readExpression + ";\n"
+                + "                    if (value != null) {\n"
+                + "                        ((org.snmp4j.smi.AssignableFromString) variable.getVariable())"
+                + ".setValue(value.toString());\n"
+                + "                    }";
+    }
+
+    /**
+     * Cast of a primitive value to int or long, empty when the conversion is
+     * a widening one so that the generated code has no redundant cast
+     */
+    private static String castTo(TypeKind target, TypeKind kind) {
+        boolean narrowing = kind == TypeKind.FLOAT || kind == TypeKind.DOUBLE
+                || (target == TypeKind.INT && kind == TypeKind.LONG);
+        return narrowing ? "(" + target.name().toLowerCase() + ") " : "";
+    }
+
+    private void generateGroup(TypeElement owner, List<Element> elements) throws IOException {
+        List<MemberDefinition> members = new ArrayList<>();
+        Set<String> usedNames = new HashSet<>();
+        for (Element element : elements) {
+            MemberDefinition member = processMember(owner, element, usedNames);
+            if (member != null) {
+                members.add(member);
+            }
+        }
+        if (members.isEmpty()) {
+            return;
+        }
+
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(owner);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String ownerName = processingEnv.getTypeUtils().erasure(owner.asType()).toString();
+        String groupName = (packageName.isEmpty() ? ownerName : ownerName.substring(packageName.length() + 1))
+                .replace('.', '_') + GROUP_SUFFIX;
+        String qualifiedGroupName = packageName.isEmpty() ? groupName : packageName + "." + groupName;
+
+        JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(qualifiedGroupName, owner);
+        try (PrintWriter out = new PrintWriter(sourceFile.openWriter())) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * Generated by " + MibObjectProcessor.class.getName() + " from " + ownerName + ".");
+            out.println(" * Registers the @MibObject members of " + owner.getSimpleName() + " without reflection.");
+            out.println(" */");
+            out.println("public final class " + groupName + " implements org.snmp4j.agent.MOGroup {");
+            for (MemberDefinition member : members) {
+                out.println("    public static final org.snmp4j.smi.OID " + member.constantName
+                        + " = new org.snmp4j.smi.OID(\"" + member.oid + "\");");
+            }
+            out.println();
+            out.println("    private final org.snmp4j.agent.mo.MOScalar[] managedObjects;");
+            out.println();
+            out.println("    public " + groupName + "(final " + ownerName + " obj) {");
+            out.println("        this(obj, \"\");");
+            out.println("    }");
+            out.println();
+            out.println("    public " + groupName + "(final " + ownerName + " obj, String oidPrefix) {");
+            out.println("        managedObjects = new org.snmp4j.agent.mo.MOScalar[] {");
+            for (MemberDefinition member : members) {
+                out.println("            scalar(oidPrefix, " + member.constantName + ", new "
+                        + member.mibClass.getName() + "(), new org.snmp4j.smi.ReadonlyVariableCallback() {");
+                out.println("                @Override");
+                out.println("                public void updateVariable(org.snmp4j.smi.VariantVariable variable) {");
+                out.println("                    " + updateStatement(member));
+                out.println("                }");
+                out.println("            }),");
+            }
+            out.println("        };");
+            out.println("    }");
+            out.println();
+            out.println("    private static org.snmp4j.agent.mo.MOScalar scalar(String oidPrefix, org.snmp4j.smi.OID oid,");
+            out.println("            org.snmp4j.smi.Variable variable, org.snmp4j.smi.VariantVariableCallback callback) {");
+            out.println("        org.snmp4j.smi.OID oidObj = oidPrefix.isEmpty() ? oid : new org.snmp4j.smi.OID(oidPrefix + oid);");
+            out.println("        return new org.snmp4j.agent.mo.MOScalar(oidObj, org.snmp4j.agent.mo.MOAccessImpl.ACCESS_READ_ONLY,");
+            out.println("                new org.snmp4j.smi.VariantVariable(variable, callback));");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void registerMOs(org.snmp4j.agent.MOServer server, org.snmp4j.smi.OctetString context)");
+            out.println("            throws org.snmp4j.agent.DuplicateRegistrationException {");
+            out.println("        com.tzavelas.snmp.MOServers.register(server, java.util.Arrays.asList(managedObjects), context);");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void unregisterMOs(org.snmp4j.agent.MOServer server, org.snmp4j.smi.OctetString context) {");
+            out.println("        com.tzavelas.snmp.MOServers.unregister(server, java.util.Arrays.asList(managedObjects), context);");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    private void warning(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+}
@@ -0,0 +1,46 @@
+package com.tzavelas.snmp;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * A custom annotation to mark a field or zero-arg method in a class to be
+ * used as a conceptual SNMP table. The decorated member must hold a List,
+ * an array, an Iterable or a Map with integer keys, and the rows are its elements.
+ * The table is read-only.
+ *
+ * The columns of the table are the @MibObject members of the element class,
+ * their oid is the column number within the entry, e.g. "1", "2", ...
+ * The instance of a cell is oid.1.column.index where index is:
+ *     - List, array, Iterable   => the 1-based position of the element
+ *     - Map                     => the key of the element, keys must be non-negative
+ *
+ * Rows are looked up when requested instead of being copied on every request.
+ * Prefer a RandomAccess List or a NavigableMap for large tables, other
+ * collections are iterated to reach a row and the keys of other maps are
+ * sorted. The keys are sorted again for each walk of the table, and within
+ * a walk whenever the map is found to have changed.
+ *
+ * Only honored by AnnotatedStatsMOGroup.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MibTable {
+    /** OID of the table, the entry is oid.1 **/
+    String oid() default "";
+
+    /**
+     * Class of the rows, its @MibObject members are the columns.
+     * If unspecified, it is taken from the generic type of the member,
+     * e.g. List&lt;QueueStats&gt; or Map&lt;Integer, QueueStats&gt;, or from
+     * the component type of an array.
+     **/
+    Class<?> entry() default Object.class;
+
+    /** Description of this table **/
+    String description() default "";
+
+    /** A name for the table. */
+    String name() default "";
+}
@@ -0,0 +1,77 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Gauge holding the lowest value it was updated with, e.g. a minimum free capacity.
+ * Updates that do not lower the minimum do not write to shared memory, so many
+ * threads can update it without contending.
+ *
+ * A @MibObject member of this type is a Gauge32 by default, the value read by
+ * the agent is bounded to the Gauge32 range.
+ */
+public final class MinGauge extends Number {
+    private static final long serialVersionUID = 1L;
+
+    private static final LongBinaryOperator MIN = new LongBinaryOperator() {
+        @Override
+        public long applyAsLong(long left, long right) {
+            return Math.min(left, right);
+        }
+    };
+
+    private final LongAccumulator accumulator = new LongAccumulator(MIN, Long.MAX_VALUE);
+
+    public void update(long value) {
+        accumulator.accumulate(value);
+    }
+
+    /**
+     * @return the minimum, Long.MAX_VALUE if the gauge was not updated since it was reset
+     */
+    public long get() {
+        return accumulator.get();
+    }
+
+    /**
+     * Forget the minimum, e.g. to report the low point of each interval
+     *
+     * @return the minimum before the reset
+     */
+    public long getAndReset() {
+        return accumulator.getThenReset();
+    }
+
+    public void reset() {
+        accumulator.reset();
+    }
+
+    @Override
+    public int intValue() {
+        return (int) longValue();
+    }
+
+    /**
+     * @return the minimum bounded to the Gauge32 range, 0 if the gauge was not updated
+     */
+    @Override
+    public long longValue() {
+        return Gauge32Values.toGauge32(get());
+    }
+
+    @Override
+    public float floatValue() {
+        return longValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return longValue();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(longValue());
+    }
+}
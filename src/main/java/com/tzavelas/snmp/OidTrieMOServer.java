@@ -0,0 +1,602 @@
+package com.tzavelas.snmp;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+import org.snmp4j.agent.DefaultMOContextScope;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.DuplicateRegistrationException;
+import org.snmp4j.agent.MOContextScope;
+import org.snmp4j.agent.MOQuery;
+import org.snmp4j.agent.MOScope;
+import org.snmp4j.agent.MOScopeComparator;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.UpdatableManagedObject;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * MOServer for agents with a very large number of managed objects, e.g.
+ * hundreds of thousands of annotated scalars.
+ *
+ * DefaultMOServer keeps the managed objects in a sorted map and scans it
+ * from the requested OID for the first one in scope. This server keeps
+ * them in a trie of their lower bound OIDs instead, one per context, and
+ * links them in lexicographic order:
+ *     - a lookup descends the trie in O(OID length), each node knows the
+ *       first and last managed object below it
+ *     - a GETNEXT or a walk moves to the next managed object in O(1)
+ *
+ * Large groups are registered and unregistered in one step with
+ * registerAll() and unregisterAll(), see MOServers.
+ *
+ * It answers lookups as DefaultMOServer does, i.e. with the first managed
+ * object in OID order that overlaps the query and matches it, firing the
+ * same query and lookup events. Contexts, locks and listeners are those of
+ * DefaultMOServer.
+ *
+ * Usage:
+ *         SimpleSNMPAgent agent = new SimpleSNMPAgent(address);
+ *         agent.setServer(new OidTrieMOServer());
+ *         agent.start();
+ */
+public class OidTrieMOServer extends DefaultMOServer {
+    private static final Logger logger = Logger.getLogger(OidTrieMOServer.class.getName());
+
+    // Where the lower bound of a scope sorts among the scopes of a node
+    private static final int LOWER_INCLUDED = 0;
+    private static final int LOWER_EXCLUDED = 1;
+    private static final int AFTER_NODE = 2;
+
+    private static final int[] NO_SUBIDS = new int[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    // Tries by context, the null context holds the managed objects of all contexts
+    private final Map<OctetString, Trie> tries = new HashMap<>();
+    // Guards tries, never held while calling managed objects or listeners
+    private final ReadWriteLock registryLock = new ReentrantReadWriteLock();
+
+    /**
+     * A registered managed object, linked to its neighbours in OID order
+     */
+    private static final class Entry {
+        private final OctetString context;
+        private final ManagedObject mo;
+        private final MOScope scope;
+        private final OID lowerBound;
+        private final int position;
+        private Entry prev;
+        private Entry next;
+        private boolean removed;
+
+        private Entry(OctetString context, ManagedObject mo) {
+            this.context = context;
+            this.mo = mo;
+            this.scope = mo.getScope();
+            this.lowerBound = scope.getLowerBound() == null ? new OID() : scope.getLowerBound();
+            this.position = scope.isLowerIncluded() ? LOWER_INCLUDED : LOWER_EXCLUDED;
+        }
+
+        /**
+         * Order of the registry of DefaultMOServer, managed objects of a
+         * context before those of all contexts with the same lower bound
+         * and by context
+         */
+        private int compareTo(Entry other) {
+            int c = lowerBound.compareTo(other.lowerBound);
+            if (c != 0) {
+                return c;
+            }
+            if (position != other.position) {
+                return position - other.position;
+            }
+            if (context == null || other.context == null) {
+                return context == other.context ? 0 : context == null ? 1 : -1;
+            }
+            return context.compareTo(other.context);
+        }
+    }
+
+    /**
+     * Trie node of a sub-identifier, with the managed objects whose lower
+     * bound is the OID of the node
+     */
+    private static final class Node {
+        // Sorted as unsigned, like OID.compareTo
+        private int[] subids = NO_SUBIDS;
+        private Node[] children = NO_CHILDREN;
+        private int count = 0;
+        private Entry included;
+        private Entry excluded;
+        // First and last managed objects of the subtree
+        private Entry first;
+        private Entry last;
+
+        /**
+         * @return the index of the child, or -(insertion point + 1)
+         */
+        private int indexOf(int subid) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = Integer.compareUnsigned(subids[mid], subid);
+                if (c < 0) {
+                    low = mid + 1;
+                } else if (c > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private Node addChild(int index, int subid) {
+            if (count == subids.length) {
+                int capacity = Math.max(2, count * 2);
+                subids = Arrays.copyOf(subids, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(subids, index, subids, index + 1, count - index);
+            System.arraycopy(children, index, children, index + 1, count - index);
+            Node child = new Node();
+            subids[index] = subid;
+            children[index] = child;
+            count++;
+            return child;
+        }
+
+        private void removeChild(int index) {
+            count--;
+            System.arraycopy(subids, index + 1, subids, index, count - index);
+            System.arraycopy(children, index + 1, children, index, count - index);
+            children[count] = null;
+        }
+
+        /**
+         * @return the first managed object after those of this node, in or after its subtree
+         */
+        private Entry afterOwnEntries() {
+            if (count > 0) {
+                return children[0].first;
+            }
+            return last == null ? null : last.next;
+        }
+    }
+
+    /**
+     * Managed objects of a context
+     */
+    private static final class Trie {
+        private final Node root = new Node();
+        private int size = 0;
+
+        /**
+         * @return the first managed object at or after the position in OID order
+         */
+        private Entry ceiling(OID oid, int position) {
+            Node node = root;
+            for (int i = 0; i < oid.size(); i++) {
+                int index = node.indexOf(oid.get(i));
+                if (index < 0) {
+                    index = -index - 1;
+                    if (index < node.count) {
+                        return node.children[index].first;
+                    }
+                    return node.last == null ? null : node.last.next;
+                }
+                node = node.children[index];
+            }
+            switch (position) {
+            case LOWER_INCLUDED:
+                return node.first;
+            case LOWER_EXCLUDED:
+                return node.excluded != null ? node.excluded : node.afterOwnEntries();
+            default:
+                return node.afterOwnEntries();
+            }
+        }
+
+        /**
+         * @return the managed object after entry, even if entry was unregistered meanwhile
+         */
+        private Entry next(Entry entry) {
+            if (!entry.removed) {
+                return entry.next;
+            }
+            return ceiling(entry.lowerBound, entry.position + 1);
+        }
+
+        /**
+         * @return the first managed object whose scope overlaps scope, null if none
+         */
+        private Entry findOverlapping(MOScope scope) {
+            OID lowerBound = scope.getLowerBound() == null ? new OID() : scope.getLowerBound();
+            Entry entry = ceiling(lowerBound, LOWER_INCLUDED);
+            // Only the previous scope may start before and reach into scope, as scopes do not overlap
+            Entry prev = entry != null ? entry.prev : root.last;
+            if (prev != null && scope.isOverlapping(prev.scope)) {
+                return prev;
+            }
+            for (; entry != null && !isBeyond(entry, scope); entry = entry.next) {
+                if (scope.isOverlapping(entry.scope)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        private void insert(Entry entry) {
+            Entry next = ceiling(entry.lowerBound, entry.position);
+            Entry prev = next != null ? next.prev : root.last;
+            OID oid = entry.lowerBound;
+            Node node = root;
+            updateBounds(node, entry, prev, next);
+            for (int i = 0; i < oid.size(); i++) {
+                int index = node.indexOf(oid.get(i));
+                node = index < 0 ? node.addChild(-index - 1, oid.get(i)) : node.children[index];
+                updateBounds(node, entry, prev, next);
+            }
+            if (entry.position == LOWER_INCLUDED) {
+                node.included = entry;
+            } else {
+                node.excluded = entry;
+            }
+            entry.prev = prev;
+            entry.next = next;
+            if (prev != null) {
+                prev.next = entry;
+            }
+            if (next != null) {
+                next.prev = entry;
+            }
+            size++;
+        }
+
+        private static void updateBounds(Node node, Entry entry, Entry prev, Entry next) {
+            // The managed objects of a subtree are contiguous in OID order
+            if (node.first == null || node.first == next) {
+                node.first = entry;
+            }
+            if (node.last == null || node.last == prev) {
+                node.last = entry;
+            }
+        }
+
+        /**
+         * @return the registered entry of mo, null if none
+         */
+        private Entry find(ManagedObject mo) {
+            MOScope scope = mo.getScope();
+            OID oid = scope.getLowerBound() == null ? new OID() : scope.getLowerBound();
+            Node node = root;
+            for (int i = 0; i < oid.size() && node != null; i++) {
+                int index = node.indexOf(oid.get(i));
+                node = index < 0 ? null : node.children[index];
+            }
+            if (node == null) {
+                return null;
+            }
+            Entry entry = scope.isLowerIncluded() ? node.included : node.excluded;
+            return entry != null && entry.mo == mo ? entry : null;
+        }
+
+        private void remove(Entry entry) {
+            OID oid = entry.lowerBound;
+            Node[] path = new Node[oid.size() + 1];
+            int[] indexes = new int[oid.size()];
+            path[0] = root;
+            for (int i = 0; i < oid.size(); i++) {
+                indexes[i] = path[i].indexOf(oid.get(i));
+                path[i + 1] = path[i].children[indexes[i]];
+            }
+            Node node = path[oid.size()];
+            if (entry.position == LOWER_INCLUDED) {
+                node.included = null;
+            } else {
+                node.excluded = null;
+            }
+            for (int i = oid.size(); i >= 0; i--) {
+                Node n = path[i];
+                if (n.first == entry && n.last == entry) {
+                    n.first = null;
+                    n.last = null;
+                    if (i > 0) {
+                        path[i - 1].removeChild(indexes[i - 1]);
+                    }
+                } else if (n.first == entry) {
+                    n.first = entry.next;
+                } else if (n.last == entry) {
+                    n.last = entry.prev;
+                }
+            }
+            if (entry.prev != null) {
+                entry.prev.next = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            }
+            entry.removed = true;
+            size--;
+        }
+    }
+
+    /**
+     * @return whether entry and all the following managed objects are past the upper bound of scope
+     */
+    private static boolean isBeyond(Entry entry, MOScope scope) {
+        OID upperBound = scope.getUpperBound();
+        return upperBound != null && entry.lowerBound.compareTo(upperBound) >= 0 && !scope.isOverlapping(entry.scope);
+    }
+
+    /**
+     * Tries of the managed objects in context, i.e. of all the contexts for
+     * the null context, as DefaultMOContextScope.isContextMatching. Call
+     * with registryLock held.
+     */
+    private Trie[] matchingTries(OctetString context) {
+        if (context == null) {
+            return tries.values().toArray(new Trie[tries.size()]);
+        }
+        Trie shared = tries.get(null);
+        Trie own = tries.get(context);
+        if (shared == null) {
+            return own == null ? new Trie[0] : new Trie[] { own };
+        }
+        return own == null ? new Trie[] { shared } : new Trie[] { shared, own };
+    }
+
+    @Override
+    public ManagedObject lookup(MOQuery query) {
+        MOContextScope scope = query.getScope();
+        OID lowerBound = scope.getLowerBound() == null ? new OID() : scope.getLowerBound();
+        Trie[] matching;
+        Entry[] entries;
+        registryLock.readLock().lock();
+        try {
+            matching = matchingTries(scope.getContext());
+            entries = new Entry[matching.length];
+            for (int i = 0; i < matching.length; i++) {
+                entries[i] = first(matching[i], lowerBound, scope);
+            }
+        } finally {
+            registryLock.readLock().unlock();
+        }
+        // Merge the managed objects of the tries in OID order
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] != null && (next < 0 || entries[i].compareTo(entries[next]) < 0)) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                return null;
+            }
+            Entry entry = entries[next];
+            if (scope.isOverlapping(entry.scope)) {
+                ManagedObject mo = entry.mo;
+                fireQueryEvent(mo, query);
+                if (mo instanceof UpdatableManagedObject) {
+                    checkForUpdate((UpdatableManagedObject) mo, query);
+                }
+                if (query.matchesQuery(mo)) {
+                    fireLookupEvent(mo, query);
+                    return mo;
+                }
+            }
+            registryLock.readLock().lock();
+            try {
+                entries[next] = following(matching[next], entry, scope);
+            } finally {
+                registryLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the first managed object of trie that may overlap scope
+     */
+    private static Entry first(Trie trie, OID lowerBound, MOScope scope) {
+        Entry entry = trie.ceiling(lowerBound, LOWER_INCLUDED);
+        Entry prev = entry != null ? entry.prev : trie.root.last;
+        if (prev != null && scope.isOverlapping(prev.scope)) {
+            return prev;
+        }
+        return entry == null || isBeyond(entry, scope) ? null : entry;
+    }
+
+    private static Entry following(Trie trie, Entry entry, MOScope scope) {
+        Entry next = trie.next(entry);
+        return next == null || isBeyond(next, scope) ? null : next;
+    }
+
+    @Override
+    public void register(ManagedObject mo, OctetString context) throws DuplicateRegistrationException {
+        MOContextScope registration = new DefaultMOContextScope(context, mo.getScope());
+        registryLock.writeLock().lock();
+        try {
+            Entry duplicate = null;
+            for (Trie trie : matchingTries(context)) {
+                Entry overlapping = trie.findOverlapping(registration);
+                if (overlapping != null && (duplicate == null || overlapping.compareTo(duplicate) < 0)) {
+                    duplicate = overlapping;
+                }
+            }
+            if (duplicate != null) {
+                throw new DuplicateRegistrationException(registration, duplicate.scope);
+            }
+            Trie trie = tries.get(context);
+            if (trie == null) {
+                trie = new Trie();
+                tries.put(context, trie);
+            }
+            trie.insert(new Entry(context, mo));
+        } finally {
+            registryLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Register managed objects all at once, e.g. the members of a tenant.
+     * They are checked against each other and the registered ones first,
+     * then published in one step, so a lookup sees either none or all of
+     * them.
+     *
+     * @throws DuplicateRegistrationException if any of them overlaps another
+     *         or a registered one, none are registered then
+     */
+    public void registerAll(Collection<? extends ManagedObject> mos, OctetString context)
+            throws DuplicateRegistrationException {
+        Entry[] entries = new Entry[mos.size()];
+        int i = 0;
+        for (ManagedObject mo : mos) {
+            entries[i++] = new Entry(context, mo);
+        }
+        // In OID order, overlapping scopes are then next to each other
+        Arrays.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                return e1.compareTo(e2);
+            }
+        });
+        for (i = 1; i < entries.length; i++) {
+            if (entries[i].scope.isOverlapping(entries[i - 1].scope)) {
+                throw new DuplicateRegistrationException(new DefaultMOContextScope(context, entries[i].scope),
+                        entries[i - 1].scope);
+            }
+        }
+        registryLock.writeLock().lock();
+        try {
+            Trie[] matching = matchingTries(context);
+            for (Entry entry : entries) {
+                MOContextScope registration = new DefaultMOContextScope(context, entry.scope);
+                for (Trie trie : matching) {
+                    Entry duplicate = trie.findOverlapping(registration);
+                    if (duplicate != null) {
+                        throw new DuplicateRegistrationException(registration, duplicate.scope);
+                    }
+                }
+            }
+            if (entries.length == 0) {
+                return;
+            }
+            Trie trie = tries.get(context);
+            if (trie == null) {
+                trie = new Trie();
+                tries.put(context, trie);
+            }
+            for (Entry entry : entries) {
+                trie.insert(entry);
+            }
+        } finally {
+            registryLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Unregister managed objects all at once, a lookup sees either all or
+     * none of them. Those not registered are skipped.
+     */
+    public void unregisterAll(Collection<? extends ManagedObject> mos, OctetString context) {
+        registryLock.writeLock().lock();
+        try {
+            Trie trie = tries.get(context);
+            int skipped = 0;
+            for (ManagedObject mo : mos) {
+                Entry entry = trie == null ? null : trie.find(mo);
+                if (entry == null) {
+                    skipped++;
+                    continue;
+                }
+                trie.remove(entry);
+            }
+            if (trie != null && trie.size == 0) {
+                tries.remove(context);
+            }
+            if (skipped > 0) {
+                logger.warning("Skipped " + skipped + " of " + mos.size() + " managed objects to remove from context "
+                        + context + ", they are not registered");
+            }
+        } finally {
+            registryLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void unregister(ManagedObject mo, OctetString context) {
+        registryLock.writeLock().lock();
+        try {
+            Trie trie = tries.get(context);
+            Entry entry = trie == null ? null : trie.find(mo);
+            if (entry == null) {
+                logger.warning("Failed to remove " + mo + " from context " + context + ", it is not registered");
+                return;
+            }
+            trie.remove(entry);
+            if (trie.size == 0) {
+                tries.remove(context);
+            }
+        } finally {
+            registryLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return a copy of the registered managed objects, keyed like those of DefaultMOServer
+     */
+    @Override
+    public SortedMap<Object, ManagedObject> getRegistry() {
+        @SuppressWarnings("unchecked")
+        Comparator<Object> comparator = new MOScopeComparator();
+        SortedMap<Object, ManagedObject> registry = new TreeMap<>(comparator);
+        registryLock.readLock().lock();
+        try {
+            for (Trie trie : tries.values()) {
+                for (Entry entry = trie.root.first; entry != null; entry = entry.next) {
+                    MOScope key = entry.context == null ? entry.scope : new DefaultMOContextScope(entry.context, entry.scope);
+                    registry.put(key, entry.mo);
+                }
+            }
+        } finally {
+            registryLock.readLock().unlock();
+        }
+        return registry;
+    }
+
+    @Override
+    public Iterator<Map.Entry<Object, ManagedObject>> iterator() {
+        return getRegistry().entrySet().iterator();
+    }
+
+    /**
+     * @return the number of registered managed objects, of all contexts
+     */
+    public int size() {
+        int size = 0;
+        registryLock.readLock().lock();
+        try {
+            for (Trie trie : tries.values()) {
+                size += trie.size;
+            }
+        } finally {
+            registryLock.readLock().unlock();
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "OidTrieMOServer[contexts=" + Arrays.toString(getContexts()) + ", registry=" + getRegistry() + "]";
+    }
+}
@@ -0,0 +1,102 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Meter of the rate of events per second. Events are counted without
+ * contention like StripedCounter, the rate is only computed when read.
+ *
+ * The rate is measured over windows of at least the configured interval: a
+ * read after the current window ended closes it and starts the next one, so
+ * with a slow poller the rate covers the time since its previous poll.
+ *
+ * A @MibObject member of this type is a Gauge32 of the rate, rounded and
+ * bounded to the Gauge32 range.
+ */
+public final class RateMeter extends Number {
+    private static final long serialVersionUID = 1L;
+
+    private final LongAdder count = new LongAdder();
+    private final long intervalNanos;
+
+    // Current window, guarded by this
+    private long windowStart;
+    private long windowCount = 0;
+    private volatile double rate = 0;
+
+    /**
+     * Meter with a one second interval
+     */
+    public RateMeter() {
+        this(1, TimeUnit.SECONDS);
+    }
+
+    public RateMeter(long interval, TimeUnit unit) {
+        Preconditions.checkArgument(interval > 0, "Interval must be positive");
+        this.intervalNanos = unit.toNanos(interval);
+        this.windowStart = System.nanoTime();
+    }
+
+    public void mark() {
+        count.increment();
+    }
+
+    public void mark(long events) {
+        count.add(events);
+    }
+
+    /**
+     * @return the number of events since the meter was created
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return events per second during the last window that ended
+     */
+    public double getRate() {
+        long now = System.nanoTime();
+        synchronized (this) {
+            long elapsed = now - windowStart;
+            if (elapsed >= intervalNanos) {
+                long current = count.sum();
+                rate = (current - windowCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+                windowStart = now;
+                windowCount = current;
+            }
+        }
+        return rate;
+    }
+
+    @Override
+    public int intValue() {
+        return (int) longValue();
+    }
+
+    /**
+     * @return the rate rounded and bounded to the Gauge32 range
+     */
+    @Override
+    public long longValue() {
+        return Gauge32Values.toGauge32(Math.round(getRate()));
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) getRate();
+    }
+
+    @Override
+    public double doubleValue() {
+        return getRate();
+    }
+
+    @Override
+    public String toString() {
+        return Double.toString(getRate());
+    }
+}
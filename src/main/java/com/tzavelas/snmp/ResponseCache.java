@@ -0,0 +1,232 @@
+package com.tzavelas.snmp;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Responses of SimpleSNMPAgent kept for a short window, so that managers
+ * polling the same OIDs at about the same time are answered without
+ * evaluating the annotated members again.
+ *
+ * A response is reused for a request with the same PDU type, OIDs, GETBULK
+ * parameters, security name and model, context and maximum response size,
+ * i.e. for which the agent would compute the same response. Only error-free
+ * responses to GET, GETNEXT and GETBULK are kept.
+ *
+ * The cache holds at most maxBytes of encoded responses and evicts the least
+ * recently used ones beyond.
+ *
+ * The statistics are @MibObject members with relative OIDs, register them
+ * under a prefix, e.g. moGroup.addAnnotatedMibObject(agent.getResponseCache(), "1.3.6.1.4.1.29506.21.")
+ */
+public final class ResponseCache {
+    // Bookkeeping of an entry besides its encoded response and OIDs
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final long windowNanos;
+    private final long maxBytes;
+
+    // Guarded by this, in access order
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    @MibObject(oid="1", type="Counter64", description="Requests answered from the cache")
+    private final AtomicLong hits = new AtomicLong();
+    @MibObject(oid="2", type="Counter64", description="Cacheable requests processed by the agent")
+    private final AtomicLong misses = new AtomicLong();
+    @MibObject(oid="3", type="Counter64", description="Responses evicted before the end of their window")
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * What makes two requests get the same response
+     */
+    static final class Key {
+        private final int type;
+        private final int nonRepeaters;
+        private final int maxRepetitions;
+        private final int maxSizeResponsePDU;
+        private final int securityModel;
+        private final OctetString securityName;
+        private final OctetString context;
+        private final OID[] oids;
+        private final int hash;
+
+        private Key(CommandResponderEvent event, OctetString context) {
+            PDU pdu = event.getPDU();
+            this.type = pdu.getType();
+            // Only meaningful for GETBULK, the error fields of other requests are ignored by the agent
+            this.nonRepeaters = type == PDU.GETBULK ? pdu.getNonRepeaters() : 0;
+            this.maxRepetitions = type == PDU.GETBULK ? pdu.getMaxRepetitions() : 0;
+            this.maxSizeResponsePDU = event.getMaxSizeResponsePDU();
+            this.securityModel = event.getSecurityModel();
+            this.securityName = new OctetString(event.getSecurityName());
+            this.context = context;
+            this.oids = new OID[pdu.size()];
+            for (int i = 0; i < oids.length; i++) {
+                oids[i] = pdu.get(i).getOid();
+            }
+            int hash = Arrays.hashCode(oids);
+            hash = 31 * hash + type;
+            hash = 31 * hash + nonRepeaters;
+            hash = 31 * hash + maxRepetitions;
+            hash = 31 * hash + securityName.hashCode();
+            this.hash = 31 * hash + context.hashCode();
+        }
+
+        /**
+         * @return the key of a request, null if its response is not cached
+         */
+        static Key of(CommandResponderEvent event, OctetString context) {
+            int type = event.getPDU().getType();
+            if (type != PDU.GET && type != PDU.GETNEXT && type != PDU.GETBULK) {
+                return null;
+            }
+            return new Key(event, context == null ? new OctetString() : context);
+        }
+
+        private int estimateBytes() {
+            int bytes = 0;
+            for (OID oid : oids) {
+                bytes += 4 * oid.size();
+            }
+            return bytes;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && type == other.type && nonRepeaters == other.nonRepeaters
+                    && maxRepetitions == other.maxRepetitions && maxSizeResponsePDU == other.maxSizeResponsePDU
+                    && securityModel == other.securityModel && securityName.equals(other.securityName)
+                    && context.equals(other.context) && Arrays.equals(oids, other.oids);
+        }
+    }
+
+    private static final class Entry {
+        private final PDU response;
+        private final long expiresAt;
+        private final int bytes;
+
+        private Entry(PDU response, long expiresAt, int bytes) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * @param windowMillis how long a response is reused
+     * @param maxBytes bound of the encoded responses kept
+     */
+    public ResponseCache(long windowMillis, long maxBytes) {
+        Preconditions.checkArgument(windowMillis > 0, "windowMillis must be positive");
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes must be positive");
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return a copy of the response to reuse for the request, null if none
+     */
+    PDU get(Key key) {
+        PDU response = null;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.expiresAt < 0) {
+                    response = entry.response;
+                } else {
+                    remove(key);
+                }
+            }
+        }
+        if (response == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return (PDU) response.clone();
+    }
+
+    /**
+     * Keep the response of a request for the window, unless it failed
+     */
+    void put(Key key, PDU response) {
+        if (response.getErrorStatus() != PDU.noError) {
+            return;
+        }
+        int size = response.getBERLength() + key.estimateBytes() + ENTRY_OVERHEAD_BYTES;
+        if (size > maxBytes) {
+            return;
+        }
+        Entry entry = new Entry((PDU) response.clone(), System.nanoTime() + windowNanos, size);
+        synchronized (this) {
+            remove(key);
+            entries.put(key, entry);
+            bytes += size;
+            long now = System.nanoTime();
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                eldest.remove();
+                bytes -= evicted.bytes;
+                if (now - evicted.expiresAt < 0) {
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the size of the responses kept, bounded by maxBytes
+     */
+    @MibObject(oid="4", type="Gauge32", description="Bytes of the responses kept")
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of responses kept, some may be past their window
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,234 @@
+package com.tzavelas.snmp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.UdpTransportMapping;
+
+/**
+ * UDP transport of SimpleSNMPAgent with socket options that the snmp4j
+ * DefaultUdpTransportMapping does not set before binding: SO_REUSEPORT, so
+ * that several of them listen on the same port and the kernel spreads the
+ * datagrams over their receiving threads, and the buffer sizes.
+ *
+ * SO_REUSEPORT needs Java 9 and Linux or BSD, it is looked up at runtime like
+ * VirtualThreads since the library is built for Java 8.
+ */
+class ReusePortUdpTransportMapping extends UdpTransportMapping {
+    private static final Logger logger = Logger.getLogger(ReusePortUdpTransportMapping.class.getName());
+
+    // Kernel statistics of the UDP sockets, one per line with the local address and the drops
+    private static final String[] PROC_NET_UDP = { "/proc/net/udp", "/proc/net/udp6" };
+
+    // DatagramSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true)
+    private static final MethodHandle SET_REUSE_PORT;
+
+    static {
+        MethodHandle setReusePort = null;
+        try {
+            Object reusePort = Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT").get(null);
+            MethodHandle setOption = MethodHandles.publicLookup().findVirtual(DatagramSocket.class, "setOption",
+                    MethodType.methodType(DatagramSocket.class, SocketOption.class, Object.class));
+            setReusePort = MethodHandles.insertArguments(setOption, 1, reusePort, Boolean.TRUE);
+        } catch (ReflectiveOperationException e) {
+            // Java 8
+            setReusePort = null;
+        }
+        SET_REUSE_PORT = setReusePort;
+    }
+
+    private final boolean reusePort;
+    private final int receiveBufferSize;
+    private final int sendBufferSize;
+    private DatagramSocket socket = null;
+    private Thread listenThread = null;
+
+    /**
+     * @param reusePort whether other sockets may listen on the same port
+     * @param receiveBufferSize SO_RCVBUF in bytes, 0 for the default of the OS
+     * @param sendBufferSize SO_SNDBUF in bytes, 0 for the default of the OS
+     */
+    ReusePortUdpTransportMapping(UdpAddress address, boolean reusePort, int receiveBufferSize, int sendBufferSize)
+            throws IOException {
+        super(address);
+        this.reusePort = reusePort;
+        this.receiveBufferSize = receiveBufferSize;
+        this.sendBufferSize = sendBufferSize;
+        this.socket = openSocket();
+    }
+
+    /**
+     * @return whether this JVM can set SO_REUSEPORT, the OS may still refuse it
+     */
+    static boolean isReusePortSupported() {
+        return SET_REUSE_PORT != null;
+    }
+
+    private DatagramSocket openSocket() throws IOException {
+        DatagramSocket socket = new DatagramSocket((SocketAddress) null);
+        try {
+            if (reusePort) {
+                if (!isReusePortSupported()) {
+                    throw new SocketException("SO_REUSEPORT requires Java 9");
+                }
+                try {
+                    SET_REUSE_PORT.invoke(socket);
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            // Set before binding so that the receive window is advertised from the start
+            if (receiveBufferSize > 0) {
+                socket.setReceiveBufferSize(receiveBufferSize);
+            }
+            if (sendBufferSize > 0) {
+                socket.setSendBufferSize(sendBufferSize);
+            }
+            socket.bind(new InetSocketAddress(udpAddress.getInetAddress(), udpAddress.getPort()));
+            return socket;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the receive buffer size granted by the OS, which may differ from the requested one
+     */
+    synchronized int getReceiveBufferSize() throws SocketException {
+        return socket.getReceiveBufferSize();
+    }
+
+    @Override
+    public void sendMessage(Address address, byte[] message) throws IOException {
+        UdpAddress target = (UdpAddress) address;
+        DatagramSocket socket;
+        synchronized (this) {
+            socket = this.socket;
+        }
+        // A late response after close must not bind the port again
+        if (socket == null) {
+            throw new SocketException("Transport mapping " + udpAddress + " is closed");
+        }
+        socket.send(new DatagramPacket(message, message.length, target.getInetAddress(), target.getPort()));
+    }
+
+    @Override
+    public synchronized void listen() throws IOException {
+        if (listenThread != null) {
+            throw new SocketException("Port already listening");
+        }
+        if (socket == null) {
+            socket = openSocket();
+        }
+        final DatagramSocket socket = this.socket;
+        listenThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive(socket);
+            }
+        }, "ReusePortUdpTransportMapping_" + udpAddress);
+        listenThread.setDaemon(true);
+        listenThread.start();
+    }
+
+    private void receive(DatagramSocket socket) {
+        byte[] buffer = new byte[getMaxInboundMessageSize()];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                UdpAddress from = new UdpAddress(packet.getAddress(), packet.getPort());
+                // The message may be processed by another thread once this one receives the next datagram
+                fireProcessMessage(from, ByteBuffer.wrap(Arrays.copyOf(packet.getData(), packet.getLength())));
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    logger.log(Level.WARNING, "Receive on " + udpAddress + " failed", e);
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Processing of a message from " + udpAddress + " failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            thread = listenThread;
+            listenThread = null;
+            if (socket != null) {
+                socket.close();
+                socket = null;
+            }
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean isListening() {
+        return listenThread != null;
+    }
+
+    /**
+     * Datagrams dropped by the kernel for the UDP sockets on a port, e.g.
+     * because the receive buffer was full. Reads /proc/net/udp on Linux.
+     *
+     * @return the drops of all the sockets on the port, -1 if the OS does not report them
+     */
+    static long getKernelDrops(int port) {
+        String localPort = String.format(Locale.ROOT, ":%04X", port);
+        long drops = -1;
+        for (String path : PROC_NET_UDP) {
+            File file = new File(path);
+            if (!file.canRead()) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                // sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode ref pointer drops
+                String header = reader.readLine();
+                if (header == null) {
+                    continue;
+                }
+                drops = Math.max(drops, 0);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length > 12 && fields[1].endsWith(localPort)) {
+                        drops += Long.parseLong(fields[12]);
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                logger.log(Level.FINE, "Cannot read " + path, e);
+            }
+        }
+        return drops;
+    }
+}
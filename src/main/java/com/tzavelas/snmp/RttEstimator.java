@@ -0,0 +1,188 @@
+package com.tzavelas.snmp;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Estimates the round trip time of an agent and derives the retransmit
+ * timeout from it like TCP does (RFC 6298): a smoothed RTT and RTT variance
+ * updated by every sample, timeout = SRTT + 4 * RTTVAR within [min, max].
+ *
+ * Each retransmission of a request waits twice as long as the previous one,
+ * and a request that timed out doubles the timeout of the following requests
+ * until the next sample. Samples of retransmitted requests are ambiguous and
+ * must not be added (Karn's algorithm).
+ *
+ * The statistics are @MibObject members with relative OIDs, register them
+ * under a prefix, e.g. moGroup.addAnnotatedMibObject(client.getRttEstimator(), "1.3.6.1.4.1.29506.12.")
+ */
+public final class RttEstimator {
+    public static final long DEFAULT_INITIAL_TIMEOUT_MILLIS = 1000;
+    public static final long DEFAULT_MIN_TIMEOUT_MILLIS = 100;
+    public static final long DEFAULT_MAX_TIMEOUT_MILLIS = 5000;
+
+    private static final int ALPHA_SHIFT = 3; // 1/8
+    private static final int BETA_SHIFT = 2; // 1/4
+    private static final int MAX_BACKOFF_SHIFT = 16;
+    // Recent samples kept for the percentiles
+    private static final int SAMPLES = 1024;
+
+    private final long minTimeoutNanos;
+    private final long maxTimeoutNanos;
+
+    // Guarded by this
+    private long srttNanos = 0;
+    private long rttvarNanos = 0;
+    private long timeoutNanos;
+    private int backoffShift = 0;
+    private final long[] samples = new long[SAMPLES];
+    private long sampleCount = 0;
+
+    @MibObject(oid="4", type="Counter64", description="Retransmitted requests")
+    private final AtomicLong retransmits = new AtomicLong();
+    @MibObject(oid="5", type="Counter64", description="Requests that timed out after their retries")
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public RttEstimator() {
+        this(DEFAULT_INITIAL_TIMEOUT_MILLIS, DEFAULT_MIN_TIMEOUT_MILLIS, DEFAULT_MAX_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param initialTimeoutMillis timeout until the first sample
+     * @param minTimeoutMillis lower bound of the timeout, above the jitter of a fast agent
+     * @param maxTimeoutMillis upper bound of the timeout, also with backoff
+     */
+    public RttEstimator(long initialTimeoutMillis, long minTimeoutMillis, long maxTimeoutMillis) {
+        Preconditions.checkArgument(minTimeoutMillis > 0, "minTimeoutMillis must be positive");
+        Preconditions.checkArgument(minTimeoutMillis <= initialTimeoutMillis && initialTimeoutMillis <= maxTimeoutMillis,
+                "initialTimeoutMillis must be between minTimeoutMillis and maxTimeoutMillis");
+        this.minTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(minTimeoutMillis);
+        this.maxTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(maxTimeoutMillis);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(initialTimeoutMillis);
+    }
+
+    /**
+     * @param rttNanos round trip time of a request answered without retransmission
+     */
+    public synchronized void addSample(long rttNanos) {
+        if (sampleCount == 0) {
+            srttNanos = rttNanos;
+            rttvarNanos = rttNanos / 2;
+        } else {
+            long error = rttNanos - srttNanos;
+            srttNanos += error >> ALPHA_SHIFT;
+            rttvarNanos += (Math.abs(error) - rttvarNanos) >> BETA_SHIFT;
+        }
+        timeoutNanos = Math.min(maxTimeoutNanos, Math.max(minTimeoutNanos, srttNanos + 4 * rttvarNanos));
+        backoffShift = 0;
+        samples[(int) (sampleCount++ % SAMPLES)] = rttNanos;
+    }
+
+    public void onRetransmit() {
+        retransmits.incrementAndGet();
+    }
+
+    /**
+     * A request got no response, back off until the next sample
+     */
+    public synchronized void onTimeout() {
+        timeouts.incrementAndGet();
+        if (backoffShift < MAX_BACKOFF_SHIFT) {
+            backoffShift++;
+        }
+    }
+
+    /**
+     * @return the timeout of the first transmission of a request
+     */
+    public long getTimeoutMillis() {
+        return getTimeoutMillis(0);
+    }
+
+    /**
+     * @param retry 0 for the first transmission, 1 for the first retransmission, ...
+     * @return the timeout of a transmission of a request, doubled for each retry
+     */
+    public synchronized long getTimeoutMillis(int retry) {
+        int shift = Math.min(MAX_BACKOFF_SHIFT, backoffShift + retry);
+        long nanos = timeoutNanos > maxTimeoutNanos >> shift ? maxTimeoutNanos : timeoutNanos << shift;
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    /**
+     * @return the total timeout of a request with its retries
+     */
+    public synchronized long getRequestTimeoutMillis(int retries) {
+        long total = 0;
+        for (int retry = 0; retry <= retries; retry++) {
+            total += getTimeoutMillis(retry);
+        }
+        return total;
+    }
+
+    @MibObject(oid="1", type="Gauge32", description="Smoothed round trip time in microseconds")
+    public synchronized long getSmoothedRttMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(srttNanos);
+    }
+
+    @MibObject(oid="2", type="Gauge32", description="Round trip time variance in microseconds")
+    public synchronized long getRttVarianceMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(rttvarNanos);
+    }
+
+    @MibObject(oid="3", type="Gauge32", description="Retransmit timeout in milliseconds")
+    private long getCurrentTimeoutMillis() {
+        return getTimeoutMillis();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the percentile of the recent round trip times in microseconds, 0 without samples
+     */
+    public long getRttPercentileMicros(double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100");
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, (int) Math.min(sampleCount, SAMPLES));
+        }
+        if (sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, index)]);
+    }
+
+    @MibObject(oid="6", type="Gauge32", description="Median of the recent round trip times in microseconds")
+    private long getRttP50Micros() {
+        return getRttPercentileMicros(50);
+    }
+
+    @MibObject(oid="7", type="Gauge32", description="90th percentile of the recent round trip times in microseconds")
+    private long getRttP90Micros() {
+        return getRttPercentileMicros(90);
+    }
+
+    @MibObject(oid="8", type="Gauge32", description="99th percentile of the recent round trip times in microseconds")
+    private long getRttP99Micros() {
+        return getRttPercentileMicros(99);
+    }
+
+    /**
+     * @return the number of samples added
+     */
+    public synchronized long getSamples() {
+        return sampleCount;
+    }
+
+    public long getRetransmits() {
+        return retransmits.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+}
@@ -2,33 +2,57 @@ package com.tzavelas.snmp;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.Inet6Address;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.ScopedPDU;
 import org.snmp4j.TransportMapping;
 import org.snmp4j.agent.BaseAgent;
 import org.snmp4j.agent.CommandProcessor;
+import org.snmp4j.agent.DefaultMOServer;
 import org.snmp4j.agent.DuplicateRegistrationException;
 import org.snmp4j.agent.MOGroup;
+import org.snmp4j.agent.MOServer;
 import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.io.DefaultMOPersistenceProvider;
 import org.snmp4j.agent.mo.MOTable;
 import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.agent.mo.snmp.CoexistenceInfo;
 import org.snmp4j.agent.mo.snmp.RowStatus;
 import org.snmp4j.agent.mo.snmp.SnmpCommunityMIB;
 import org.snmp4j.agent.mo.snmp.SnmpNotificationMIB;
 import org.snmp4j.agent.mo.snmp.SnmpTargetMIB;
 import org.snmp4j.agent.mo.snmp.StorageType;
+import org.snmp4j.agent.mo.snmp.TransportDomains;
 import org.snmp4j.agent.mo.snmp.VacmMIB;
 import org.snmp4j.agent.security.MutableVACM;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
 import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.MessageProcessingModel;
 import org.snmp4j.security.SecurityLevel;
 import org.snmp4j.security.SecurityModel;
+import org.snmp4j.security.SecurityModels;
+import org.snmp4j.security.SecurityProtocols;
 import org.snmp4j.security.USM;
 import org.snmp4j.smi.Address;
 import org.snmp4j.smi.GenericAddress;
 import org.snmp4j.smi.Integer32;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
 import org.snmp4j.smi.Variable;
+import org.snmp4j.transport.DefaultTcpTransportMapping;
 import org.snmp4j.transport.TransportMappings;
+import org.snmp4j.transport.UdpTransportMapping;
+
+import com.google.common.base.Preconditions;
 
 /**
  * A very simple minimalistic SNMP Agent
@@ -36,27 +60,250 @@ import org.snmp4j.transport.TransportMappings;
  * @source: http://www.jayway.com/2010/05/21/introduction-to-snmp4j/
  */
 public class SimpleSNMPAgent extends BaseAgent {
+    /**
+     * Largest response PDU the agent sends. The largest UDP payload is 65507 bytes
+     * and the message header takes a few bytes of it, larger responses never
+     * reach the manager so they are answered with tooBig instead.
+     */
+    static final int MAX_RESPONSE_PDU_SIZE = 65507 - 128;
+
+    /**
+     * Largest request and response over TCP, which has no datagram limit so
+     * a GETBULK can return a large part of a table at once
+     */
+    static final int MAX_TCP_MESSAGE_SIZE = 1 << 20;
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
     private String address;
+    private final boolean inMemory;
+    // Boot counter of an in-memory agent, instead of bootCounter.agent
+    private int engineBoots = 0;
+    private ExecutorWorkerPool requestPool = null;
+    private int listeners = 1;
+    private int receiveBufferSize = 0;
+    private int sendBufferSize = 0;
+    private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private final EvaluationStats evaluationStats = new EvaluationStats();
+    private final List<UdpAddress> notificationTargets = new ArrayList<>();
+    private ResponseCache responseCache = null;
+
+    /**
+     * What the agent does with a request arriving while maxPendingRequests are
+     * queued or processed, see setRequestExecutor
+     */
+    public enum OverloadPolicy {
+        /** Discard the request, the manager retries it after its timeout */
+        DROP,
+        /** Process the request on the receiving thread, which stops reading requests meanwhile */
+        CALLER_RUNS
+    }
 
     /**
      * Creates a minimalistic SNMP agent
      *
-     * @param address: should match format IP/Port. e.g. 0.0.0.0/2001
+     * @param address: should match format IP/Port. e.g. 0.0.0.0/2001,
+     *                 or tcp:IP/Port to accept managers over TCP
      * @throws IOException
      */
     public SimpleSNMPAgent(String address) throws IOException {
+        this(address, false);
+    }
+
+    /**
+     * Creates a minimalistic SNMP agent that may start without touching the
+     * filesystem, e.g. in tests and short-lived containers. An in-memory agent
+     *     - keeps its boot counter in memory and never writes its configuration
+     *     - derives its engine ID from the clock instead of the host address
+     *     - registers only the SNMPv2 MIB, the framework, target, notification,
+     *       community, USM and VACM MIBs work but cannot be read
+     *     - has neither the SNMP4J log and config MIBs nor a proxy forwarder
+     *     - skips the coldStart notification and the shutdown hook
+     *     - supports SNMPv3 without authentication or privacy protocols,
+     *       as no USM users are configured anyway
+     *
+     * @param address: should match format IP/Port. e.g. 0.0.0.0/2001
+     * @param inMemory whether to start without files and unused MIBs
+     * @throws IOException
+     */
+    public SimpleSNMPAgent(String address, boolean inMemory) throws IOException {
         // These files do not exist and are not used but have to be specified
         // Read snmp4j docs for more info
         super(new File("conf.agent"), new File("bootCounter.agent"),
-                new CommandProcessor(
-                        new OctetString(MPv3.createLocalEngineID())));
+                new BoundedCommandProcessor(createEngineID(inMemory)));
         this.address = address;
+        this.inMemory = inMemory;
     }
 
     public SimpleSNMPAgent(String host, int port) throws IOException {
         this(host+"/"+port);
     }
 
+    private static OctetString createEngineID(boolean inMemory) {
+        if (inMemory) {
+            // Resolving the local host for the default engine ID may wait for DNS
+            return new OctetString(MPv3.createLocalEngineID(new OctetString(
+                    Long.toHexString(System.currentTimeMillis()) + Long.toHexString(System.nanoTime()))));
+        }
+        return new OctetString(MPv3.createLocalEngineID());
+    }
+
+    /**
+     * @return whether the agent starts without files and unused MIBs
+     */
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    /**
+     * Process each request on the executor instead of the thread receiving it,
+     * so a slow annotated method holds up only the requests that read it. With
+     * VirtualThreads.newExecutor every request gets its own virtual thread.
+     * The executor is shut down by stop(). Set before start()
+     */
+    public void setRequestExecutor(ExecutorService executor) {
+        setRequestExecutor(executor, Integer.MAX_VALUE, OverloadPolicy.DROP);
+    }
+
+    /**
+     * Process the requests on the executor, with at most maxPendingRequests
+     * queued or processed at once. Any executor fits, e.g.
+     *     - Executors.newFixedThreadPool(n)    => n requests processed in parallel
+     *     - Executors.newWorkStealingPool(n)   => idem, with a queue per thread
+     *     - VirtualThreads.newExecutor(name)   => a virtual thread per request
+     * The executor is shut down by stop(). Set before start()
+     *
+     * @param maxPendingRequests bound of the requests waiting for or being processed
+     * @param overloadPolicy what to do with the requests beyond that bound
+     */
+    public void setRequestExecutor(ExecutorService executor, int maxPendingRequests,
+                                   OverloadPolicy overloadPolicy) {
+        Preconditions.checkArgument(maxPendingRequests > 0, "maxPendingRequests must be positive");
+        Preconditions.checkState(getAgentState() == STATE_CREATED, "Agent already started");
+        requestPool = new ExecutorWorkerPool(executor, maxPendingRequests, overloadPolicy);
+        getAgent().setWorkerPool(requestPool);
+    }
+
+    /**
+     * @return the number of requests dropped by the DROP overload policy
+     */
+    public long getDroppedRequests() {
+        return requestPool == null ? 0 : requestPool.getDropped();
+    }
+
+    /**
+     * Listen with several UDP sockets on the agent port, each with its own
+     * receiving thread. The sockets are bound with SO_REUSEPORT so the kernel
+     * spreads the requests over them by source address, which needs Java 9
+     * and Linux or BSD. Set before start()
+     */
+    public void setListeners(int listeners) {
+        Preconditions.checkArgument(listeners > 0, "listeners must be positive");
+        Preconditions.checkState(getAgentState() == STATE_CREATED, "Agent already started");
+        Preconditions.checkArgument(listeners == 1 || ReusePortUdpTransportMapping.isReusePortSupported(),
+                "Several listeners require SO_REUSEPORT, available from Java 9");
+        this.listeners = listeners;
+    }
+
+    /**
+     * Size of the receive buffer of each listener socket, which holds the
+     * requests arriving in a burst until they are read. The OS may grant less,
+     * e.g. net.core.rmem_max on Linux. Set before start()
+     *
+     * @param bytes 0 for the default of the OS
+     */
+    public void setReceiveBufferSize(int bytes) {
+        Preconditions.checkArgument(bytes >= 0, "bytes must not be negative");
+        Preconditions.checkState(getAgentState() == STATE_CREATED, "Agent already started");
+        this.receiveBufferSize = bytes;
+    }
+
+    /**
+     * Size of the send buffer of each listener socket. Set before start()
+     *
+     * @param bytes 0 for the default of the OS
+     */
+    public void setSendBufferSize(int bytes) {
+        Preconditions.checkArgument(bytes >= 0, "bytes must not be negative");
+        Preconditions.checkState(getAgentState() == STATE_CREATED, "Agent already started");
+        this.sendBufferSize = bytes;
+    }
+
+    /**
+     * Close a TCP connection of a manager after this long without traffic.
+     * Set before start()
+     */
+    public void setIdleTimeout(long idleTimeoutMillis) {
+        Preconditions.checkArgument(idleTimeoutMillis >= 0, "idleTimeoutMillis must not be negative");
+        Preconditions.checkState(getAgentState() == STATE_CREATED, "Agent already started");
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Answer identical requests arriving within windowMillis with the same
+     * response, so managers polling the same OIDs at about the same time do
+     * not evaluate the annotated members again. Their values are then up to
+     * windowMillis old. Set before start()
+     *
+     * @param windowMillis how long a response is reused, e.g. 500
+     * @param maxBytes bound of the memory held by the cached responses
+     * @see ResponseCache
+     */
+    public void setResponseCache(long windowMillis, long maxBytes) {
+        Preconditions.checkState(getAgentState() == STATE_CREATED, "Agent already started");
+        responseCache = new ResponseCache(windowMillis, maxBytes);
+        ((BoundedCommandProcessor) getAgent()).setResponseCache(responseCache);
+    }
+
+    /**
+     * Serve the managed objects from another MOServer, e.g. an OidTrieMOServer
+     * for hundreds of thousands of objects. Set before start()
+     */
+    public void setServer(DefaultMOServer server) {
+        Preconditions.checkNotNull(server, "server");
+        Preconditions.checkState(getAgentState() == STATE_CREATED, "Agent already started");
+        for (OctetString context : this.server.getContexts()) {
+            server.addContext(context);
+        }
+        this.server = server;
+        defaultPersistenceProvider = new DefaultMOPersistenceProvider(new MOServer[] { server }, configFileURI);
+    }
+
+    /**
+     * @return the response cache, null unless set with setResponseCache
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Send the notifications of the agent, e.g. of a ThresholdNotifier, to a
+     * manager as SNMPv2c traps with the public community. Set before start()
+     *
+     * @param address IP/Port of the manager, e.g. 127.0.0.1/162
+     */
+    public void addNotificationTarget(String address) {
+        Address addr = GenericAddress.parse(address);
+        Preconditions.checkArgument(addr instanceof UdpAddress, "Notification targets must be UDP addresses: %s", address);
+        Preconditions.checkState(getAgentState() == STATE_CREATED, "Agent already started");
+        notificationTargets.add((UdpAddress) addr);
+    }
+
+    /**
+     * Requests dropped by the kernel before the agent read them, mostly
+     * because a receive buffer was full. Counts all the UDP sockets on the
+     * agent port since their creation.
+     *
+     * @return the number of dropped requests, -1 if the OS does not report it
+     */
+    public long getReceiveDrops() {
+        Address addr = GenericAddress.parse(address);
+        if (!(addr instanceof UdpAddress)) {
+            return -1;
+        }
+        return ReusePortUdpTransportMapping.getKernelDrops(((UdpAddress) addr).getPort());
+    }
+
     /**
      * Clients can register the MO they need
      */
@@ -68,6 +315,45 @@ public class SimpleSNMPAgent extends BaseAgent {
         }
     }
 
+    /**
+     * Register many MOs at once, all or none of them, see MOServers
+     */
+    public void registerManagedObject(Collection<? extends ManagedObject> mos) {
+        try {
+            MOServers.register(server, mos, null);
+        } catch (DuplicateRegistrationException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public void unregisterManagedObject(Collection<? extends ManagedObject> mos) {
+        MOServers.unregister(server, mos, null);
+    }
+
+    /**
+     * Evaluation statistics of the annotated members of the agent, groups
+     * record into them with moGroup.setEvaluationStats(agent.getEvaluationStats())
+     */
+    public EvaluationStats getEvaluationStats() {
+        return evaluationStats;
+    }
+
+    /**
+     * Expose getEvaluationStats() as a table of the agent itself, so the
+     * members slow to evaluate can be found by polling it. Call after start().
+     *
+     * @param oidPrefix prefix of the table, e.g. 1.3.6.1.4.1.29506.14.
+     */
+    public void registerEvaluationStats(String oidPrefix) {
+        AnnotatedStatsMOGroup moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(evaluationStats, oidPrefix);
+        try {
+            moGroup.registerMOs(server, null);
+        } catch (DuplicateRegistrationException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
     public void unregisterManagedObject(MOGroup moGroup) {
         moGroup.unregisterMOs(server, getContext(moGroup));
     }
@@ -92,15 +378,33 @@ public class SimpleSNMPAgent extends BaseAgent {
         vacm.addViewTreeFamily(new OctetString("fullReadView"), new OID("1.3"),
                 new OctetString(), VacmMIB.vacmViewIncluded,
                 StorageType.nonVolatile);
+
+        vacm.addViewTreeFamily(new OctetString("fullNotifyView"), new OID("1.3"),
+                new OctetString(), VacmMIB.vacmViewIncluded,
+                StorageType.nonVolatile);
     }
 
     @Override
     protected void initTransportMappings() throws IOException {
         Address addr = GenericAddress.parse(address);
 
-        transportMappings = new TransportMapping[1];
-        transportMappings[0] = TransportMappings.getInstance()
-                .createTransportMapping(addr);
+        if (listeners == 1 && receiveBufferSize == 0 && sendBufferSize == 0) {
+            transportMappings = new TransportMapping[1];
+            transportMappings[0] = TransportMappings.getInstance()
+                    .createTransportMapping(addr);
+            if (transportMappings[0] instanceof DefaultTcpTransportMapping) {
+                DefaultTcpTransportMapping tcp = (DefaultTcpTransportMapping) transportMappings[0];
+                tcp.setConnectionTimeout(idleTimeoutMillis);
+                tcp.setMaxInboundMessageSize(MAX_TCP_MESSAGE_SIZE);
+            }
+            return;
+        }
+        Preconditions.checkArgument(addr instanceof UdpAddress, "Listener options require a UDP address: %s", address);
+        transportMappings = new TransportMapping[listeners];
+        for (int i = 0; i < listeners; i++) {
+            transportMappings[i] = new ReusePortUdpTransportMapping((UdpAddress) addr, listeners > 1,
+                    receiveBufferSize, sendBufferSize);
+        }
     }
 
     /**
@@ -113,11 +417,95 @@ public class SimpleSNMPAgent extends BaseAgent {
         // This method reads some old config from a file and causes
         // unexpected behavior.
         // loadConfig(ImportModes.REPLACE_CREATE);
-        addShutdownHook();
+        if (!inMemory) {
+            addShutdownHook();
+        }
         getServer().addContext(new OctetString("public"));
         finishInit();
         run();
-        sendColdStartNotification();
+        if (!inMemory) {
+            sendColdStartNotification();
+        }
+    }
+
+    /**
+     * Like BaseAgent, without the authentication and privacy protocols of
+     * SNMPv3 in memory, loading their ciphers takes most of the startup
+     */
+    @Override
+    protected void initMessageDispatcher() {
+        if (!inMemory) {
+            super.initMessageDispatcher();
+            return;
+        }
+        dispatcher = new MessageDispatcherImpl();
+        mpv3 = new MPv3(agent.getContextEngineID().getValue());
+        usm = new USM(SecurityProtocols.getInstance(), agent.getContextEngineID(), updateEngineBoots());
+        SecurityModels.getInstance().addSecurityModel(usm);
+        dispatcher.addMessageProcessingModel(new MPv1());
+        dispatcher.addMessageProcessingModel(new MPv2c());
+        dispatcher.addMessageProcessingModel(mpv3);
+        initSnmpSession();
+    }
+
+    @Override
+    protected void initConfigMIB() {
+        // The config MIB manages the configuration file, an in-memory agent has none
+        if (!inMemory) {
+            super.initConfigMIB();
+        }
+    }
+
+    @Override
+    protected void setupDefaultProxyForwarder() {
+        if (!inMemory) {
+            super.setupDefaultProxyForwarder();
+        }
+    }
+
+    @Override
+    protected void registerSnmpMIBs() {
+        if (!inMemory) {
+            super.registerSnmpMIBs();
+            return;
+        }
+        try {
+            snmpv2MIB.registerMOs(server, getContext(snmpv2MIB));
+        } catch (DuplicateRegistrationException ex) {
+            throw new RuntimeException(ex);
+        }
+        registerManagedObjects();
+    }
+
+    @Override
+    protected void unregisterSnmpMIBs() {
+        if (!inMemory) {
+            super.unregisterSnmpMIBs();
+            return;
+        }
+        snmpv2MIB.unregisterMOs(server, getContext(snmpv2MIB));
+    }
+
+    @Override
+    protected int getEngineBoots() {
+        return inMemory ? engineBoots : super.getEngineBoots();
+    }
+
+    @Override
+    protected void setEngineBoots(int engineBoots) {
+        if (inMemory) {
+            this.engineBoots = engineBoots;
+        } else {
+            super.setEngineBoots(engineBoots);
+        }
+    }
+
+    @Override
+    public void saveConfig() {
+        // An in-memory agent has no configuration file
+        if (!inMemory) {
+            super.saveConfig();
+        }
     }
 
     /**
@@ -144,15 +532,39 @@ public class SimpleSNMPAgent extends BaseAgent {
     }
 
 
-    ///////////////////////////////////////////////////////////
-    // Empty Implementation
-    ///////////////////////////////////////////////////////////
+    /**
+     * One target address per addNotificationTarget, all tagged "notify" and
+     * sent SNMPv2c traps by the "default" notification entry.
+     *
+     * The rows are volatile, they are set up again on every start.
+     */
     @Override
     protected void addNotificationTargets(SnmpTargetMIB targetMIB,
             SnmpNotificationMIB notificationMIB) {
-        // Intentional empty
+        if (notificationTargets.isEmpty()) {
+            return;
+        }
+        targetMIB.addDefaultTDomains();
+        targetMIB.addTargetParams(new OctetString("v2c"), MessageProcessingModel.MPv2c,
+                SecurityModel.SECURITY_MODEL_SNMPv2c, new OctetString("cpublic"),
+                SecurityLevel.NOAUTH_NOPRIV, StorageType.volatile_);
+        for (int i = 0; i < notificationTargets.size(); i++) {
+            UdpAddress target = notificationTargets.get(i);
+            OID domain = target.getInetAddress() instanceof Inet6Address
+                    ? TransportDomains.transportDomainUdpIpv6 : TransportDomains.transportDomainUdpIpv4;
+            targetMIB.addTargetAddress(new OctetString("notification" + i), domain,
+                    new OctetString(target.getValue()), 200, 1, new OctetString("notify"),
+                    new OctetString("v2c"), StorageType.volatile_);
+        }
+        notificationMIB.addNotifyEntry(new OctetString("default"), new OctetString("notify"),
+                SnmpNotificationMIB.SnmpNotifyTypeEnum.trap, StorageType.volatile_);
     }
 
+
+    ///////////////////////////////////////////////////////////
+    // Empty Implementation
+    ///////////////////////////////////////////////////////////
+
     /**
      * We let clients of this agent register the MO they
      * need so this method does nothing
@@ -173,8 +585,81 @@ public class SimpleSNMPAgent extends BaseAgent {
     }
 
 
+    @Override
+    public void stop() {
+        super.stop();
+        if (requestPool != null) {
+            requestPool.stop();
+        }
+    }
+
     @Override
     protected void unregisterManagedObjects() {
         // here we should unregister those objects previously registered...
     }
+
+    /**
+     * The community MIB does not limit the message size so snmp4j-agent sends
+     * any response regardless of its size. Bound it to what fits in a datagram,
+     * so the response to a GET that is too large is tooBig and a GETBULK
+     * response is trimmed. Over TCP MAX_TCP_MESSAGE_SIZE bounds it already.
+     */
+    private static class BoundedCommandProcessor extends CommandProcessor {
+        private volatile ResponseCache responseCache = null;
+        // Key of the request being processed by the thread, its response is cached
+        private final ThreadLocal<ResponseCache.Key> cacheKey = new ThreadLocal<>();
+
+        BoundedCommandProcessor(OctetString contextEngineID) {
+            super(contextEngineID);
+        }
+
+        void setResponseCache(ResponseCache responseCache) {
+            this.responseCache = responseCache;
+        }
+
+        /**
+         * Answer from the response cache when it has the response, otherwise
+         * process the request and cache its response
+         */
+        @Override
+        protected void dispatchCommand(CommandResponderEvent command, CoexistenceInfo cinfo) {
+            ResponseCache cache = responseCache;
+            ResponseCache.Key key = null;
+            if (cache != null) {
+                OctetString context = cinfo != null ? cinfo.getContextName()
+                        : command.getPDU() instanceof ScopedPDU ? ((ScopedPDU) command.getPDU()).getContextName() : null;
+                key = ResponseCache.Key.of(command, context);
+            }
+            if (key == null) {
+                super.dispatchCommand(command, cinfo);
+                return;
+            }
+            PDU cached = cache.get(key);
+            if (cached != null) {
+                cached.setRequestID(command.getPDU().getRequestID());
+                sendResponse(command, cached);
+                return;
+            }
+            cacheKey.set(key);
+            try {
+                super.dispatchCommand(command, cinfo);
+            } finally {
+                cacheKey.remove();
+            }
+        }
+
+        @Override
+        protected void sendResponse(CommandResponderEvent requestEvent, PDU response) {
+            ResponseCache.Key key = cacheKey.get();
+            if (key != null) {
+                cacheKey.remove();
+                responseCache.put(key, response);
+            }
+            if (requestEvent.getTransportMapping() instanceof UdpTransportMapping
+                    && requestEvent.getMaxSizeResponsePDU() > MAX_RESPONSE_PDU_SIZE) {
+                requestEvent.setMaxSizeResponsePDU(MAX_RESPONSE_PDU_SIZE);
+            }
+            super.sendResponse(requestEvent, response);
+        }
+    }
 }
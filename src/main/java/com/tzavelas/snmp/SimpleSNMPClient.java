@@ -1,10 +1,29 @@
 package com.tzavelas.snmp;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.snmp4j.CommunityTarget;
 import org.snmp4j.PDU;
 import org.snmp4j.Snmp;
+import org.snmp4j.TimeoutModel;
 import org.snmp4j.TransportMapping;
 import org.snmp4j.event.ResponseEvent;
 import org.snmp4j.event.ResponseListener;
@@ -13,20 +32,79 @@ import org.snmp4j.smi.Address;
 import org.snmp4j.smi.GenericAddress;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TcpAddress;
 import org.snmp4j.smi.Variable;
 import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultTcpTransportMapping;
 import org.snmp4j.transport.DefaultUdpTransportMapping;
 
+import com.google.common.base.Preconditions;
+
 /**
  * A very simple minimalistic SNMP Client.
  *
+ * The getMibObjectsAsync methods pipeline requests: up to maxInFlight requests
+ * are outstanding at once and callers block while the window is full, so a
+ * poller is bounded by throughput rather than by the round trip time.
+ *
+ * getMibObjectsAsync(List) spreads any number of OIDs over several PDUs,
+ * see setMaxOidsPerPdu, and splits them again when the agent answers tooBig.
+ *
+ * The blocking methods can be called from many threads at once, e.g. one
+ * synchronous polling loop per target on VirtualThreads.newExecutor, see
+ * setVirtualThreadMode.
+ *
+ * The timeout of each request follows the round trip times measured by
+ * getRttEstimator, with exponential backoff of the retries, unless a fixed
+ * timeout is set with setTimeout.
+ *
+ * walk and walkIterator read a subtree lazily with GETBULK requests, the next
+ * request is in flight while the caller consumes the current response.
+ *
+ * An address like tcp:host/port talks to the agent over a TCP connection,
+ * opened by the first request and reused until idle for setIdleTimeout. TCP
+ * carries responses larger than a datagram and retransmits lost segments
+ * itself, so such requests are not retried and have a fixed timeout.
+ *
  * @source: http://www.jayway.com/2010/05/21/introduction-to-snmp4j/
  */
 public class SimpleSNMPClient {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    public static final int DEFAULT_MAX_OIDS_PER_PDU = 64;
+    public static final int DEFAULT_RETRIES = 2;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+    // Largest response accepted over TCP, like SimpleSNMPAgent.MAX_TCP_MESSAGE_SIZE
+    static final int MAX_TCP_MESSAGE_SIZE = 1 << 20;
+
+    // Upper bound of the encoding of a GET PDU without its varbinds, with the message header
+    private static final int PDU_OVERHEAD_BYTES = 64;
+
     private String address = null;
     private Snmp snmp = null;
     private CommunityTarget target = null;
     private TransportMapping transport = null;
+    private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private volatile int maxOidsPerPdu = DEFAULT_MAX_OIDS_PER_PDU;
+    private boolean virtualThreadMode = false;
+    private final RttEstimator rtt = new RttEstimator();
+    private volatile boolean adaptiveTimeout = true;
+    private Semaphore inFlight = null;
+    private volatile boolean closing = false;
+    private final ResponseListener pendingRequestListener = new ResponseListener() {
+        @Override
+        public void onResponse(ResponseEvent event) {
+            // Stop the retries of the request, snmp4j keeps them until cancelled.
+            // Not while closing, close() calls back every pending request as it
+            // iterates them and drops them all afterwards
+            if (!closing) {
+                ((Snmp) event.getSource()).cancel(event.getRequest(), this);
+            }
+            ((PendingRequest) event.getUserObject()).onResponse(event);
+        }
+    };
 
     public SimpleSNMPClient(String address) {
         this(address, "public", SnmpConstants.version2c);
@@ -41,19 +119,124 @@ public class SimpleSNMPClient {
         target.setCommunity(new OctetString(community));
         target.setAddress(targetAddress);
         target.setVersion(snmpVersion);
-        target.setRetries(1);
-        target.setTimeout(5000);
+        target.setRetries(DEFAULT_RETRIES);
+        target.setTimeout(RttEstimator.DEFAULT_MAX_TIMEOUT_MILLIS);
+        if (targetAddress instanceof TcpAddress) {
+            target.setRetries(0);
+            adaptiveTimeout = false;
+        }
     }
 
     public void shutdown() throws IOException {
+        closing = true;
         snmp.close();
     }
 
+    /**
+     * Fixed timeout of each attempt of a request, instead of the adaptive timeout
+     */
+    public void setTimeout(long timeoutMillis) {
+        target.setTimeout(timeoutMillis);
+        adaptiveTimeout = false;
+    }
+
+    public void setRetries(int retries) {
+        target.setRetries(retries);
+    }
+
+    /**
+     * Close the TCP connection to the agent after this long without traffic,
+     * the next request opens a new one. Set before start()
+     */
+    public void setIdleTimeout(long idleTimeoutMillis) {
+        Preconditions.checkArgument(idleTimeoutMillis >= 0, "idleTimeoutMillis must not be negative");
+        Preconditions.checkState(snmp == null, "Client already started");
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Maximum number of asynchronous requests outstanding at once, set before start()
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+        Preconditions.checkState(snmp == null, "Client already started");
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Maximum number of OIDs put in one PDU by getMibObjectsAsync(List).
+     * The limit is lowered when the agent answers tooBig, this resets it.
+     */
+    public void setMaxOidsPerPdu(int maxOidsPerPdu) {
+        Preconditions.checkArgument(maxOidsPerPdu > 0, "maxOidsPerPdu must be positive");
+        this.maxOidsPerPdu = maxOidsPerPdu;
+    }
+
+    /**
+     * @return the current limit of OIDs per PDU, as configured or learned from tooBig responses
+     */
+    public int getMaxOidsPerPdu() {
+        return maxOidsPerPdu;
+    }
+
+    /**
+     * In virtual thread mode the blocking methods park on a future until the
+     * response arrives. Otherwise they wait inside snmp4j on a monitor, which
+     * pins the carrier thread of a virtual thread so that only as many
+     * requests as carrier threads can wait at once.
+     *
+     * The blocking methods then also take a slot of the in-flight window, like
+     * getMibObjectsAsync, so thousands of threads polling at once queue on the
+     * window instead of overflowing the socket buffers. Set before start()
+     */
+    public void setVirtualThreadMode(boolean virtualThreadMode) {
+        Preconditions.checkState(snmp == null, "Client already started");
+        this.virtualThreadMode = virtualThreadMode;
+    }
+
+    /**
+     * @return the round trip time statistics of the agent, which drive the adaptive timeout
+     */
+    public RttEstimator getRttEstimator() {
+        return rtt;
+    }
+
+    /**
+     * @return the number of asynchronous requests waiting for their response
+     */
+    public int getInFlight() {
+        return inFlight == null ? 0 : maxInFlight - inFlight.availablePermits();
+    }
+
     public void start() throws IOException {
-        transport = new DefaultUdpTransportMapping();
+        closing = false;
+        inFlight = new Semaphore(maxInFlight);
+        if (target.getAddress() instanceof TcpAddress) {
+            DefaultTcpTransportMapping tcp = new DefaultTcpTransportMapping();
+            tcp.setConnectionTimeout(idleTimeoutMillis);
+            tcp.setMaxInboundMessageSize(MAX_TCP_MESSAGE_SIZE);
+            transport = tcp;
+        } else {
+            transport = new DefaultUdpTransportMapping();
+        }
         snmp = new Snmp(transport);
+        snmp.setTimeoutModel(new TimeoutModel() {
+            @Override
+            public long getRetryTimeout(int retryCount, int totalNumberOfRetries, long targetTimeout) {
+                if (retryCount > 0) {
+                    rtt.onRetransmit();
+                }
+                return adaptiveTimeout ? rtt.getTimeoutMillis(retryCount) : targetTimeout;
+            }
+
+            @Override
+            public long getRequestTimeout(int totalNumberOfRetries, long targetTimeout) {
+                return adaptiveTimeout ? rtt.getRequestTimeoutMillis(totalNumberOfRetries)
+                        : (totalNumberOfRetries + 1) * targetTimeout;
+            }
+        });
 
-        //SNMP uses UDP, therefore we need to listen
+        //Responses arrive asynchronously, therefore we need to listen
         transport.listen();
     }
 
@@ -92,20 +275,416 @@ public class SimpleSNMPClient {
     }
 
     public ResponseEvent getMibObjects(OID ... oids) throws IOException {
-       return snmp.send(buildGetPDU(oids), target, null);
+       return send(buildGetPDU(oids));
     }
 
     public void getMibObjects(ResponseListener listener, OID ... oids) throws IOException {
         snmp.send(buildGetPDU(oids), target, null, listener);
     }
 
+    /**
+     * Send a GET without waiting for its response. Blocks while maxInFlight
+     * requests are outstanding.
+     *
+     * The future completes with the response PDU, whatever its error status,
+     * or exceptionally with a TimeoutException once the retries are exhausted.
+     * It is completed on the transport thread: dependent stages that block
+     * should use the *Async variants of CompletableFuture.
+     *
+     * @param oids
+     * @return future of the response
+     * @throws InterruptedException if interrupted while waiting for the window
+     */
+    public CompletableFuture<PDU> getMibObjectsAsync(OID ... oids) throws IOException, InterruptedException {
+        return sendAsync(buildGetPDU(oids));
+    }
+
+    /**
+     * GET any number of OIDs. The OIDs are packed into as few PDUs as the
+     * OID limit and the maximum request size of the target allow, the PDUs
+     * are pipelined like getMibObjectsAsync(OID...). A PDU answered with
+     * tooBig is split in two and sent again, and the OID limit is lowered
+     * so that the following calls do not hit the same error.
+     *
+     * @param oids
+     * @return future of the varbinds of the responses in the order of oids,
+     *         completes exceptionally if any PDU fails or is answered with
+     *         a different number of varbinds than it asked for
+     * @throws InterruptedException if interrupted while waiting for the window
+     */
+    public CompletableFuture<List<VariableBinding>> getMibObjectsAsync(List<OID> oids)
+            throws IOException, InterruptedException {
+        final VariableBinding[] results = new VariableBinding[oids.size()];
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        int start = 0;
+        while (start < oids.size()) {
+            int end = getBatchEnd(oids, start);
+            batches.add(getBatch(oids, start, end, results, true));
+            start = end;
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[batches.size()]))
+                .thenApply(new Function<Void, List<VariableBinding>>() {
+                    @Override
+                    public List<VariableBinding> apply(Void ignored) {
+                        return Arrays.asList(results);
+                    }
+                });
+    }
+
+    /**
+     * @return end of the batch of OIDs starting at start that fits in one PDU
+     */
+    private int getBatchEnd(List<OID> oids, int start) {
+        int maxEnd = Math.min(oids.size(), start + maxOidsPerPdu);
+        int bytes = PDU_OVERHEAD_BYTES;
+        int end = start;
+        while (end < maxEnd) {
+            // sequence, OID and NULL value of the varbind
+            bytes += oids.get(end).getBERLength() + 6;
+            if (bytes > target.getMaxSizeRequestPDU() && end > start) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    private CompletableFuture<Void> getBatch(final List<OID> oids, final int start, final int end,
+                                             final VariableBinding[] results, boolean windowed)
+            throws IOException, InterruptedException {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        PDU pdu = buildGetPDU(oids.subList(start, end).toArray(new OID[end - start]));
+        sendAsync(pdu, windowed).whenComplete(new BiConsumer<PDU, Throwable>() {
+            @Override
+            public void accept(PDU response, Throwable error) {
+                if (error != null) {
+                    done.completeExceptionally(error);
+                } else if (response.getErrorStatus() == PDU.tooBig && end - start > 1) {
+                    splitBatch(oids, start, end, results, done);
+                } else if (response.getErrorStatus() != PDU.noError) {
+                    done.completeExceptionally(new IOException("GET of " + oids.get(start) + " and "
+                            + (end - start - 1) + " more OIDs failed: " + response.getErrorStatusText()));
+                } else if (response.size() != end - start) {
+                    done.completeExceptionally(new IOException("GET of " + oids.get(start) + " and "
+                            + (end - start - 1) + " more OIDs answered with " + response.size() + " varbinds"));
+                } else {
+                    for (int i = 0; i < response.size(); i++) {
+                        results[start + i] = response.get(i);
+                    }
+                    done.complete(null);
+                }
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Send the two halves of a batch answered with tooBig. This runs on the
+     * transport thread, waiting for the window there would block the responses
+     * that free it, so the halves are sent outside of the window.
+     */
+    private void splitBatch(List<OID> oids, int start, int end, VariableBinding[] results,
+                            final CompletableFuture<Void> done) {
+        int half = (end - start) / 2;
+        synchronized (this) {
+            maxOidsPerPdu = Math.max(1, Math.min(maxOidsPerPdu, half));
+        }
+        try {
+            CompletableFuture.allOf(getBatch(oids, start, start + half, results, false),
+                    getBatch(oids, start + half, end, results, false))
+                    .whenComplete(new BiConsumer<Void, Throwable>() {
+                        @Override
+                        public void accept(Void ignored, Throwable error) {
+                            if (error != null) {
+                                done.completeExceptionally(error);
+                            } else {
+                                done.complete(null);
+                            }
+                        }
+                    });
+        } catch (IOException | InterruptedException e) {
+            done.completeExceptionally(e);
+        }
+    }
+
+    private CompletableFuture<PDU> sendAsync(PDU pdu) throws IOException, InterruptedException {
+        return sendAsync(pdu, true);
+    }
+
+    /**
+     * @param windowed whether the request waits for and takes a slot of the in-flight window
+     */
+    private PendingRequest sendAsync(PDU pdu, boolean windowed) throws IOException, InterruptedException {
+        if (windowed) {
+            inFlight.acquire();
+        }
+        PendingRequest pending = new PendingRequest(pdu, windowed);
+        try {
+            snmp.send(pdu, target, pending, pendingRequestListener);
+        } catch (IOException | RuntimeException e) {
+            pending.release();
+            throw e;
+        }
+        return pending;
+    }
+
+    /**
+     * Future of an asynchronous request, holds a slot of the in-flight window
+     * until it completes or is cancelled
+     */
+    private class PendingRequest extends CompletableFuture<PDU> {
+        private final PDU request;
+        private final boolean windowed;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile ResponseEvent event = null;
+        private final long sentNanos = System.nanoTime();
+        private final long timeoutMillis = getFirstTimeoutMillis();
+
+        private PendingRequest(PDU request, boolean windowed) {
+            this.request = request;
+            this.windowed = windowed;
+        }
+
+        private void release() {
+            if (windowed && released.compareAndSet(false, true)) {
+                inFlight.release();
+            }
+        }
+
+        private void onResponse(ResponseEvent event) {
+            this.event = event;
+            release();
+            onRoundTrip(event, sentNanos, timeoutMillis);
+            if (event.getError() != null) {
+                completeExceptionally(event.getError());
+            } else if (event.getResponse() == null) {
+                completeExceptionally(new TimeoutException("No response from " + address
+                        + " to request " + request.getRequestID()));
+            } else {
+                complete(event.getResponse());
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                snmp.cancel(request, pendingRequestListener);
+                release();
+            }
+            return cancelled;
+        }
+    }
+
+    //Lexicographic successors of the OIDs, e.g. to walk tables
+    public ResponseEvent getNextMibObjects(OID ... oids) throws IOException {
+        return send(buildPDU(PDU.GETNEXT, oids));
+    }
+
+    public ResponseEvent getBulkMibObjects(int maxRepetitions, OID ... oids) throws IOException {
+        PDU pdu = buildPDU(PDU.GETBULK, oids);
+        pdu.setMaxRepetitions(maxRepetitions);
+        return send(pdu);
+    }
+
+    /**
+     * Send a request and wait for its response, like snmp.send the response
+     * of the event is null on timeout
+     */
+    private ResponseEvent send(PDU pdu) throws IOException {
+        if (!virtualThreadMode) {
+            long sentNanos = System.nanoTime();
+            long timeoutMillis = getFirstTimeoutMillis();
+            ResponseEvent event = snmp.send(pdu, target, null);
+            onRoundTrip(event, sentNanos, timeoutMillis);
+            return event;
+        }
+        // Within the window, so that many threads do not burst more requests than the sockets buffer
+        PendingRequest pending = null;
+        try {
+            pending = sendAsync(pdu, true);
+            pending.get();
+        } catch (ExecutionException e) {
+            // Errors and timeouts are reported by the event, like snmp.send does
+        } catch (InterruptedException e) {
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the response of " + address);
+        }
+        return pending.event;
+    }
+
+    private long getFirstTimeoutMillis() {
+        return adaptiveTimeout ? rtt.getTimeoutMillis() : target.getTimeout();
+    }
+
+    /**
+     * Sample the round trip time of a request, unless it was retransmitted:
+     * the response may then answer any of the transmissions
+     */
+    private void onRoundTrip(ResponseEvent event, long sentNanos, long timeoutMillis) {
+        if (event.getResponse() != null) {
+            long rttNanos = System.nanoTime() - sentNanos;
+            if (rttNanos < TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+                rtt.addSample(rttNanos);
+            }
+        } else if (event.getError() == null) {
+            rtt.onTimeout();
+        }
+    }
+
+    /**
+     * Walk the subtree under root with GETBULK requests, see walkIterator.
+     * Closing the stream cancels the outstanding request of the walk.
+     *
+     * @param root
+     * @param maxRepetitions number of varbinds asked by each GETBULK
+     * @return lazy stream of the varbinds of the subtree in lexicographic order
+     */
+    public Stream<VariableBinding> walk(OID root, int maxRepetitions) {
+        final SubtreeWalk walk = new SubtreeWalk(root, maxRepetitions);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(walk,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false)
+                .onClose(new Runnable() {
+                    @Override
+                    public void run() {
+                        walk.close();
+                    }
+                });
+    }
+
+    /**
+     * Walk the subtree under root with GETBULK requests. Each request continues
+     * from the last OID of the previous response and is sent as soon as that
+     * response is taken, before its varbinds are returned, so one response is
+     * consumed while the next one is on the way. Only those two responses are
+     * held, the walk runs in constant memory whatever the size of the subtree.
+     *
+     * Requests are pipelined within the in-flight window like getMibObjectsAsync.
+     * Errors, timeouts and OIDs that do not increase end the walk with a
+     * RuntimeException from hasNext. Needs SNMP v2c, v1 has no GETBULK.
+     *
+     * @param root
+     * @param maxRepetitions number of varbinds asked by each GETBULK
+     * @return lazy iterator of the varbinds of the subtree in lexicographic order
+     */
+    public Iterator<VariableBinding> walkIterator(OID root, int maxRepetitions) {
+        return new SubtreeWalk(root, maxRepetitions);
+    }
+
+    private class SubtreeWalk implements Iterator<VariableBinding> {
+        private final OID root;
+        private final int maxRepetitions;
+        private OID last;
+        private CompletableFuture<PDU> nextResponse = null;
+        private PDU response = null;
+        private int index = 0;
+        private boolean done = false;
+
+        private SubtreeWalk(OID root, int maxRepetitions) {
+            Preconditions.checkArgument(maxRepetitions > 0, "maxRepetitions must be positive");
+            this.root = root;
+            this.maxRepetitions = maxRepetitions;
+            this.last = root;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!done && (response == null || index == response.size())) {
+                takeResponse();
+            }
+            return !done;
+        }
+
+        @Override
+        public VariableBinding next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            VariableBinding vb = response.get(index++);
+            if (index == response.size() && nextResponse == null) {
+                done = true;
+            }
+            return vb;
+        }
+
+        private void takeResponse() {
+            try {
+                if (nextResponse == null) {
+                    nextResponse = sendNext();
+                }
+                PDU pdu = nextResponse.get();
+                nextResponse = null;
+                if (pdu.getErrorStatus() != PDU.noError) {
+                    throw new IOException("GETBULK of " + last + " failed: " + pdu.getErrorStatusText());
+                }
+                // Keep the varbinds up to the end of the subtree, and request the rest right away
+                int size = 0;
+                boolean more = false;
+                while (size < pdu.size()) {
+                    VariableBinding vb = pdu.get(size);
+                    if (vb.isException() || !vb.getOid().startsWith(root)) {
+                        break;
+                    }
+                    if (vb.getOid().compareTo(last) <= 0) {
+                        throw new IOException("GETBULK of " + last + " returned " + vb.getOid()
+                                + " which does not increase");
+                    }
+                    last = vb.getOid();
+                    size++;
+                    more = size == pdu.size();
+                }
+                while (pdu.size() > size) {
+                    pdu.trim();
+                }
+                response = pdu;
+                index = 0;
+                if (more) {
+                    nextResponse = sendNext();
+                } else if (size == 0) {
+                    done = true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new RuntimeException("Walk of " + root + " interrupted", e);
+            } catch (ExecutionException e) {
+                close();
+                throw new RuntimeException("Walk of " + root + " failed", e.getCause());
+            } catch (IOException e) {
+                close();
+                throw new RuntimeException("Walk of " + root + " failed", e);
+            }
+        }
+
+        private CompletableFuture<PDU> sendNext() throws IOException, InterruptedException {
+            PDU pdu = buildPDU(PDU.GETBULK, last);
+            pdu.setMaxRepetitions(maxRepetitions);
+            return sendAsync(pdu);
+        }
+
+        private void close() {
+            done = true;
+            if (nextResponse != null) {
+                nextResponse.cancel(false);
+                nextResponse = null;
+            }
+        }
+    }
+
     private PDU buildGetPDU(OID ... oids) {
+        return buildPDU(PDU.GET, oids);
+    }
+
+    private PDU buildPDU(int type, OID ... oids) {
         PDU pdu = new PDU();
         for (OID oid : oids) {
             pdu.add(new VariableBinding(oid));
         }
 
-        pdu.setType(PDU.GET);
+        pdu.setType(type);
         return pdu;
     }
 }
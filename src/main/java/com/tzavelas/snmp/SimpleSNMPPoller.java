@@ -0,0 +1,402 @@
+package com.tzavelas.snmp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.GenericAddress;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Polls the same OIDs of many agents periodically.
+ *
+ * Unlike SimpleSNMPClient, which owns a socket and a dispatcher thread per
+ * agent, all targets share one Snmp instance and a few UDP transports, the
+ * targets are spread over the transports round robin. The polls are scheduled
+ * by one thread on a hashed timing wheel, so thousands of targets cost one
+ * slot entry each rather than a timer each.
+ *
+ * Each poll is delayed by a random fraction of the interval, see setJitter,
+ * so targets added together do not keep polling in bursts. A target has at
+ * most maxInFlight polls outstanding, a poll due while the target is at its
+ * limit is skipped, see PollTarget.getSkipped.
+ *
+ * The PollListener runs on the thread of the transport that received the
+ * response, it should hand off any slow work.
+ */
+public class SimpleSNMPPoller {
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+    public static final double DEFAULT_JITTER = 0.1;
+
+    private static final Logger logger = Logger.getLogger(SimpleSNMPPoller.class.getName());
+
+    /**
+     * Receives the outcome of every poll of a target
+     */
+    public interface PollListener {
+        void onResponse(PollTarget target, PDU response);
+
+        /**
+         * @param error a TimeoutException if the agent did not answer, the error otherwise
+         */
+        void onFailure(PollTarget target, Throwable error);
+    }
+
+    private final int transportCount;
+    private long tickMillis = DEFAULT_TICK_MILLIS;
+    private int wheelSize = DEFAULT_WHEEL_SIZE;
+    private double jitter = DEFAULT_JITTER;
+
+    private Snmp snmp = null;
+    private TransportMapping[] transports = null;
+    private final AtomicInteger nextTransport = new AtomicInteger();
+    private final Queue<PollTarget> added = new ConcurrentLinkedQueue<>();
+    private List<PollTarget>[] wheel = null;
+    private Thread wheelThread = null;
+    private volatile boolean running = false;
+
+    private final ResponseListener pollListener = new ResponseListener() {
+        @Override
+        public void onResponse(ResponseEvent event) {
+            // Stop the retries of the request, snmp4j keeps them until cancelled.
+            // Not while closing, close() calls back every pending request as it
+            // iterates them and drops them all afterwards
+            if (running) {
+                ((Snmp) event.getSource()).cancel(event.getRequest(), this);
+            }
+            ((PollTarget) event.getUserObject()).onResponse(event);
+        }
+    };
+
+    public SimpleSNMPPoller() {
+        this(1);
+    }
+
+    /**
+     * @param transports number of UDP transports, each has its own socket and receiving thread
+     */
+    public SimpleSNMPPoller(int transports) {
+        Preconditions.checkArgument(transports > 0, "transports must be positive");
+        this.transportCount = transports;
+    }
+
+    /**
+     * Resolution of the timing wheel, polls run up to one tick late. Set before start()
+     */
+    public void setTickMillis(long tickMillis) {
+        Preconditions.checkArgument(tickMillis > 0, "tickMillis must be positive");
+        Preconditions.checkState(snmp == null, "Poller already started");
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * Number of slots of the timing wheel, rounded up to a power of two. Set before start()
+     */
+    public void setWheelSize(int wheelSize) {
+        Preconditions.checkArgument(wheelSize > 0, "wheelSize must be positive");
+        Preconditions.checkState(snmp == null, "Poller already started");
+        this.wheelSize = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+    }
+
+    /**
+     * Each poll runs up to jitter * interval earlier or later than its period,
+     * and the first poll of a target at a random point of its first interval.
+     * The offsets of the polls are independent, they do not add up.
+     *
+     * @param jitter fraction of the interval between 0 and 1
+     */
+    public void setJitter(double jitter) {
+        Preconditions.checkArgument(jitter >= 0 && jitter <= 1, "jitter must be between 0 and 1");
+        this.jitter = jitter;
+    }
+
+    public void start() throws IOException {
+        Preconditions.checkState(snmp == null, "Poller already started");
+        transports = new TransportMapping[transportCount];
+        for (int i = 0; i < transportCount; i++) {
+            transports[i] = new DefaultUdpTransportMapping();
+        }
+        // This constructor sets up the message processing models
+        snmp = new Snmp(transports[0]);
+        for (int i = 1; i < transportCount; i++) {
+            snmp.addTransportMapping(transports[i]);
+        }
+        @SuppressWarnings("unchecked")
+        List<PollTarget>[] slots = (List<PollTarget>[]) new List<?>[wheelSize];
+        wheel = slots;
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        running = true;
+        snmp.listen();
+        wheelThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWheel();
+            }
+        }, "SimpleSNMPPoller-wheel");
+        wheelThread.setDaemon(true);
+        wheelThread.start();
+    }
+
+    public void shutdown() throws IOException {
+        running = false;
+        if (wheelThread != null) {
+            wheelThread.interrupt();
+            try {
+                wheelThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (snmp != null) {
+            snmp.close();
+        }
+    }
+
+    /**
+     * Poll an SNMP v2c agent with community "public", one poll in flight at a time.
+     * A poll times out after an interval without retries, the next poll replaces it.
+     *
+     * @param address should match format IP/Port. e.g. 127.0.0.1/2001
+     */
+    public PollTarget addTarget(String address, long intervalMillis, PollListener listener, OID ... oids) {
+        CommunityTarget target = new CommunityTarget();
+        target.setCommunity(new OctetString("public"));
+        target.setAddress(GenericAddress.parse(address));
+        target.setVersion(SnmpConstants.version2c);
+        target.setRetries(0);
+        target.setTimeout(intervalMillis);
+        return addTarget(target, intervalMillis, 1, listener, oids);
+    }
+
+    /**
+     * Poll an agent with a GET of the oids every intervalMillis, until removed
+     *
+     * @param target address, community, timeout and retries of the agent
+     * @param maxInFlight maximum number of polls of the agent outstanding at once
+     */
+    public PollTarget addTarget(CommunityTarget target, long intervalMillis, int maxInFlight,
+                                PollListener listener, OID ... oids) {
+        Preconditions.checkState(running, "Poller not started");
+        Preconditions.checkArgument(intervalMillis >= tickMillis, "interval shorter than a tick");
+        Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+        Preconditions.checkArgument(oids.length > 0, "no OIDs to poll");
+        int transport = Math.floorMod(nextTransport.getAndIncrement(), transports.length);
+        PollTarget pollTarget = new PollTarget(target, transports[transport], intervalMillis, maxInFlight,
+                listener, oids);
+        // The first poll falls anywhere in the first interval
+        pollTarget.period = TimeUnit.NANOSECONDS.toMillis(System.nanoTime())
+                + ThreadLocalRandom.current().nextLong(intervalMillis);
+        pollTarget.deadline = pollTarget.period;
+        added.add(pollTarget);
+        return pollTarget;
+    }
+
+    /**
+     * Stop polling the target, responses to polls in flight are still delivered
+     */
+    public void removeTarget(PollTarget target) {
+        target.removed = true;
+    }
+
+    private void runWheel() {
+        long start = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        long tick = 0;
+        while (running) {
+            long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+            long dueTick = (now - start) / tickMillis;
+            if (tick > dueTick) {
+                try {
+                    Thread.sleep((start + tick * tickMillis) - now);
+                } catch (InterruptedException e) {
+                    // shutdown
+                }
+                continue;
+            }
+            PollTarget target;
+            while ((target = added.poll()) != null) {
+                schedule(target, start, tick);
+            }
+            // Catch up on ticks missed while polling or descheduled
+            for (; tick <= dueTick && running; tick++) {
+                expire(start, tick);
+            }
+        }
+    }
+
+    private void schedule(PollTarget target, long start, long currentTick) {
+        // A deadline already passed is polled at the current tick
+        target.deadlineTick = Math.max(currentTick, (target.deadline - start + tickMillis - 1) / tickMillis);
+        wheel[(int) (target.deadlineTick & (wheelSize - 1))].add(target);
+    }
+
+    private void expire(long start, long tick) {
+        int index = (int) (tick & (wheelSize - 1));
+        List<PollTarget> slot = wheel[index];
+        if (slot.isEmpty()) {
+            return;
+        }
+        // Polled targets are scheduled again, maybe into this slot, so detach it first
+        wheel[index] = new ArrayList<>(slot.size());
+        for (PollTarget target : slot) {
+            if (target.removed) {
+                continue;
+            }
+            if (target.deadlineTick > tick) {
+                // Not due in this round of the wheel
+                wheel[index].add(target);
+                continue;
+            }
+            target.poll();
+            advance(target, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+            schedule(target, start, tick + 1);
+        }
+    }
+
+    /**
+     * Move the target to its next period and pick the jitter of its next poll
+     *
+     * @param now time of the poll just sent, in milliseconds
+     * @return the deadline of the next poll
+     */
+    long advance(PollTarget target, long now) {
+        long interval = target.intervalMillis;
+        if (now - target.period > interval) {
+            // Stalled, e.g. by a GC pause, resume from now rather than poll on every tick to catch up
+            target.period = now;
+        }
+        target.period += interval;
+        long delta = (long) (interval * jitter);
+        long offset = delta > 0 ? ThreadLocalRandom.current().nextLong(-delta, delta + 1) : 0;
+        target.deadline = target.period + offset;
+        return target.deadline;
+    }
+
+    /**
+     * An agent polled by the poller
+     */
+    public class PollTarget {
+        private final CommunityTarget target;
+        private final TransportMapping transport;
+        private final long intervalMillis;
+        private final int maxInFlight;
+        private final PollListener listener;
+        private final OID[] oids;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong polls = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private volatile boolean removed = false;
+
+        // Owned by the wheel thread, the deadline is the period moved by the jitter
+        private long period;
+        private long deadline;
+        private long deadlineTick;
+
+        private PollTarget(CommunityTarget target, TransportMapping transport, long intervalMillis,
+                           int maxInFlight, PollListener listener, OID[] oids) {
+            this.target = target;
+            this.transport = transport;
+            this.intervalMillis = intervalMillis;
+            this.maxInFlight = maxInFlight;
+            this.listener = listener;
+            this.oids = oids.clone();
+        }
+
+        public CommunityTarget getTarget() {
+            return target;
+        }
+
+        /**
+         * @return the number of polls sent
+         */
+        public long getPolls() {
+            return polls.get();
+        }
+
+        /**
+         * @return the number of polls skipped because maxInFlight polls were outstanding
+         */
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * @return the number of polls waiting for their response
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        private void poll() {
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                skipped.incrementAndGet();
+                return;
+            }
+            PDU pdu = new PDU();
+            for (OID oid : oids) {
+                pdu.add(new VariableBinding(oid));
+            }
+            pdu.setType(PDU.GET);
+            polls.incrementAndGet();
+            try {
+                snmp.send(pdu, target, transport, this, pollListener);
+            } catch (IOException | RuntimeException e) {
+                inFlight.decrementAndGet();
+                notifyFailure(e);
+            }
+        }
+
+        private void onResponse(ResponseEvent event) {
+            inFlight.decrementAndGet();
+            if (event.getError() != null) {
+                notifyFailure(event.getError());
+            } else if (event.getResponse() == null) {
+                notifyFailure(new TimeoutException("No response from " + target.getAddress()));
+            } else {
+                try {
+                    listener.onResponse(this, event.getResponse());
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "PollListener of " + target.getAddress() + " failed", e);
+                }
+            }
+        }
+
+        private void notifyFailure(Throwable error) {
+            try {
+                listener.onFailure(this, error);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "PollListener of " + target.getAddress() + " failed", e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "PollTarget[" + target.getAddress() + ", every " + intervalMillis + "ms]";
+        }
+    }
+}
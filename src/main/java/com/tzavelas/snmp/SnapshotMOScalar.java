@@ -0,0 +1,111 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.snmp4j.agent.MOAccess;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.agent.request.Request;
+import org.snmp4j.agent.request.SubRequest;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+
+/**
+ * Scalar of an annotated member that can serve a request from a snapshot of
+ * all the members of its annotated object.
+ * Used by AnnotatedStatsMOGroup hence why its not public
+ *
+ * The first time a request reads one of the members, every member of the
+ * object is read back to back and kept with the request. All the varbinds of
+ * that request are then served from the snapshot, so related counters are
+ * consistent and each member is evaluated at most once per request.
+ */
+class SnapshotMOScalar extends MOScalar {
+    /** Request being processed by the current thread, only set during get and next */
+    private static final ThreadLocal<Request> CURRENT_REQUEST = new ThreadLocal<>();
+
+    /**
+     * The scalars of one annotated object, the snapshot of a request is keyed by it
+     */
+    static class Scope {
+        private final SnapshotSettings settings;
+        private final List<SnapshotMOScalar> scalars = new ArrayList<>();
+
+        Scope(SnapshotSettings settings) {
+            this.settings = settings;
+        }
+
+        private Variable[] getSnapshot(Request request) {
+            Variable[] snapshot = (Variable[]) request.getProcessingUserObject(this);
+            if (snapshot == null) {
+                snapshot = new Variable[scalars.size()];
+                for (int i = 0; i < snapshot.length; i++) {
+                    snapshot[i] = scalars.get(i).getLiveValue();
+                }
+                request.setProcessingUserObject(this, snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Settings shared by the scopes of a group
+     */
+    static class SnapshotSettings {
+        private volatile boolean enabled = false;
+
+        boolean isEnabled() {
+            return enabled;
+        }
+
+        void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    private final Scope scope;
+    private final int index;
+
+    SnapshotMOScalar(OID id, MOAccess access, Variable value, Scope scope) {
+        super(id, access, value);
+        this.scope = scope;
+        this.index = scope.scalars.size();
+        scope.scalars.add(this);
+    }
+
+    /**
+     * @return a copy of the value read from the annotated member
+     */
+    private Variable getLiveValue() {
+        return (Variable) super.getValue().clone();
+    }
+
+    @Override
+    public Variable getValue() {
+        Request request = CURRENT_REQUEST.get();
+        if (request == null || !scope.settings.isEnabled()) {
+            return super.getValue();
+        }
+        return scope.getSnapshot(request)[index];
+    }
+
+    @Override
+    public void get(SubRequest request) {
+        CURRENT_REQUEST.set(request.getRequest());
+        try {
+            super.get(request);
+        } finally {
+            CURRENT_REQUEST.remove();
+        }
+    }
+
+    @Override
+    public boolean next(SubRequest request) {
+        CURRENT_REQUEST.set(request.getRequest());
+        try {
+            return super.next(request);
+        } finally {
+            CURRENT_REQUEST.remove();
+        }
+    }
+}
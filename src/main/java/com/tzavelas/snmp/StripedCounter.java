@@ -0,0 +1,62 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter that many threads can increment without contending on a
+ * single memory location. Updates are spread over cells that are only summed
+ * when the counter is read, so writers scale with the number of threads.
+ *
+ * A @MibObject member of this type is a Counter64 by default.
+ *
+ * Usage:
+ *         @MibObject(oid="1.3.6.1.4.1.29506.1.1")
+ *         private final StripedCounter requests = new StripedCounter();
+ *         ...
+ *         requests.increment();
+ */
+public final class StripedCounter extends Number {
+    private static final long serialVersionUID = 1L;
+
+    private final LongAdder adder = new LongAdder();
+
+    public void increment() {
+        adder.increment();
+    }
+
+    public void add(long delta) {
+        adder.add(delta);
+    }
+
+    /**
+     * @return the sum of the increments, not an atomic snapshot while updates are in progress
+     */
+    public long get() {
+        return adder.sum();
+    }
+
+    @Override
+    public int intValue() {
+        return (int) get();
+    }
+
+    @Override
+    public long longValue() {
+        return get();
+    }
+
+    @Override
+    public float floatValue() {
+        return get();
+    }
+
+    @Override
+    public double doubleValue() {
+        return get();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
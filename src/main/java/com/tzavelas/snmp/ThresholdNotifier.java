@@ -0,0 +1,337 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.snmp4j.agent.NotificationOriginator;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.smi.VariantVariable;
+import org.snmp4j.smi.VariantVariableCallback;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Sends notifications when the @MibObject members of the groups it watches
+ * cross their risingThreshold or fallingThreshold, or change when they are
+ * notifyOnChange. The thresholds behave like the alarms of RMON (RFC 2819)
+ * with both a rising and a falling alarm possible at startup.
+ *
+ * Usage:
+ *         agent.addNotificationTarget("127.0.0.1/162");
+ *         agent.start();
+ *         ThresholdNotifier notifier = new ThresholdNotifier(agent.getNotificationOriginator());
+ *         moGroup.setNotifier(notifier);
+ *         notifier.start(1000);
+ *
+ * The members are evaluated in the background at a fixed interval, all the
+ * events of an evaluation are batched into one notification per kind, with
+ * up to maxVarbinds varbinds each. To survive alarm storms the events of an
+ * OID are rate limited: after a notification of an OID, its next events wait
+ * for minIntervalMillis and are coalesced meanwhile, only the last event of
+ * each kind is sent with the value of the member at that time.
+ *
+ * The statistics are @MibObject members with relative OIDs, register them
+ * under a prefix, e.g. moGroup.addAnnotatedMibObject(notifier, "1.3.6.1.4.1.29506.17.")
+ */
+public class ThresholdNotifier {
+    private static final Logger logger = Logger.getLogger(ThresholdNotifier.class.getName());
+
+    /** Notification of a member at or above its risingThreshold, with the member as varbind */
+    public static final OID RISING_NOTIFICATION = new OID("1.3.6.1.4.1.29506.0.1");
+    /** Notification of a member at or below its fallingThreshold, with the member as varbind */
+    public static final OID FALLING_NOTIFICATION = new OID("1.3.6.1.4.1.29506.0.2");
+    /** Notification of a notifyOnChange member whose value changed, with the member as varbind */
+    public static final OID CHANGE_NOTIFICATION = new OID("1.3.6.1.4.1.29506.0.3");
+
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 1000;
+    public static final int DEFAULT_MAX_VARBINDS = 20;
+
+    private final NotificationOriginator originator;
+    private final OctetString context;
+    private final List<Watch> watches = new CopyOnWriteArrayList<>();
+    private volatile long minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MIN_INTERVAL_MILLIS);
+    private volatile int maxVarbinds = DEFAULT_MAX_VARBINDS;
+
+    // Guarded by this, events not sent yet by notification then member OID
+    private final Map<OID, Map<OID, VariableBinding>> pending = new LinkedHashMap<>();
+    // Guarded by this, when the last notification of each member OID was sent
+    private final Map<OID, Long> lastSentNanos = new HashMap<>();
+
+    private ScheduledExecutorService evaluator = null;
+    private ScheduledFuture<?> evaluationTask = null;
+    private boolean ownEvaluator = false;
+
+    @MibObject(oid="1", type="Counter64", description="Notifications sent")
+    private final AtomicLong notifications = new AtomicLong();
+    @MibObject(oid="2", type="Counter64", description="Threshold crossings and changes of the watched members")
+    private final AtomicLong events = new AtomicLong();
+    @MibObject(oid="3", type="Counter64", description="Events replaced by a later one of the same member before being sent")
+    private final AtomicLong coalescedEvents = new AtomicLong();
+
+    /**
+     * Notifier in the public context of SimpleSNMPAgent
+     *
+     * @param originator e.g. agent.getNotificationOriginator() once the agent is started
+     */
+    public ThresholdNotifier(NotificationOriginator originator) {
+        this(originator, new OctetString("public"));
+    }
+
+    /**
+     * @param originator sends the notifications to the targets of the agent
+     * @param context context of the notifications
+     */
+    public ThresholdNotifier(NotificationOriginator originator, OctetString context) {
+        this.originator = Preconditions.checkNotNull(originator, "originator");
+        this.context = Preconditions.checkNotNull(context, "context");
+    }
+
+    /**
+     * A member of a group with its thresholds and the state of its alarms.
+     * Only used by the evaluating thread once added to a notifier.
+     */
+    static final class Watch {
+        private final OID oid;
+        private final VariantVariableCallback callback;
+        private final VariantVariable value;
+        private final long risingThreshold;
+        private final long fallingThreshold;
+        private final boolean notifyOnChange;
+
+        private boolean risingArmed = true;
+        private boolean fallingArmed = true;
+        private Variable lastValue = null;
+
+        /**
+         * @param oid OID of the member
+         * @param callback evaluates the member
+         * @param mibValue variable of the type of the member, the values are written to
+         */
+        Watch(OID oid, VariantVariableCallback callback, Variable mibValue,
+              long risingThreshold, long fallingThreshold, boolean notifyOnChange) {
+            this.oid = oid;
+            this.callback = callback;
+            this.value = new VariantVariable(mibValue, callback);
+            this.risingThreshold = risingThreshold;
+            this.fallingThreshold = fallingThreshold;
+            this.notifyOnChange = notifyOnChange;
+        }
+
+        private boolean hasRisingThreshold() {
+            return risingThreshold != Long.MAX_VALUE;
+        }
+
+        private boolean hasFallingThreshold() {
+            return fallingThreshold != Long.MIN_VALUE;
+        }
+
+        /**
+         * Evaluate the member and report its events to the notifier
+         */
+        void check(ThresholdNotifier notifier) {
+            callback.updateVariable(value);
+            Variable current = value.getVariable();
+
+            if (hasRisingThreshold() || hasFallingThreshold()) {
+                long v = current.toLong();
+                if (risingArmed && v >= risingThreshold) {
+                    risingArmed = false;
+                    fallingArmed = true;
+                    notifier.addEvent(RISING_NOTIFICATION, oid, current);
+                } else if (fallingArmed && v <= fallingThreshold) {
+                    fallingArmed = false;
+                    risingArmed = true;
+                    notifier.addEvent(FALLING_NOTIFICATION, oid, current);
+                }
+                // A single threshold is armed again once the value is back on the other side of it
+                if (!hasFallingThreshold() && v < risingThreshold) {
+                    risingArmed = true;
+                }
+                if (!hasRisingThreshold() && v > fallingThreshold) {
+                    fallingArmed = true;
+                }
+            }
+
+            if (notifyOnChange) {
+                if (lastValue != null && !lastValue.equals(current)) {
+                    notifier.addEvent(CHANGE_NOTIFICATION, oid, current);
+                }
+                lastValue = (Variable) current.clone();
+            }
+        }
+    }
+
+    void addWatch(Watch watch) {
+        watches.add(watch);
+    }
+
+    void removeWatch(Watch watch) {
+        watches.remove(watch);
+    }
+
+    /**
+     * Minimum interval between two notifications of the same member OID,
+     * its events are coalesced meanwhile
+     */
+    public void setMinIntervalMillis(long minIntervalMillis) {
+        Preconditions.checkArgument(minIntervalMillis >= 0, "minIntervalMillis must not be negative");
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+    }
+
+    /**
+     * Maximum number of members in a notification, besides sysUpTime and
+     * snmpTrapOID. Further events are sent in another notification.
+     */
+    public void setMaxVarbinds(int maxVarbinds) {
+        Preconditions.checkArgument(maxVarbinds > 0, "maxVarbinds must be positive");
+        this.maxVarbinds = maxVarbinds;
+    }
+
+    public long getNotifications() {
+        return notifications.get();
+    }
+
+    public long getEvents() {
+        return events.get();
+    }
+
+    public long getCoalescedEvents() {
+        return coalescedEvents.get();
+    }
+
+    private synchronized void addEvent(OID notificationID, OID oid, Variable value) {
+        events.incrementAndGet();
+        Map<OID, VariableBinding> kindEvents = pending.get(notificationID);
+        if (kindEvents == null) {
+            kindEvents = new LinkedHashMap<>();
+            pending.put(notificationID, kindEvents);
+        }
+        if (kindEvents.put(oid, new VariableBinding(oid, (Variable) value.clone())) != null) {
+            coalescedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * Evaluate the watched members and send the notifications of their events
+     * that are not rate limited
+     */
+    void evaluate() {
+        for (Watch watch : watches) {
+            try {
+                watch.check(this);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Evaluation of " + watch.oid + " failed", e);
+            }
+        }
+        flush(System.nanoTime());
+    }
+
+    private void flush(long now) {
+        Map<OID, List<VariableBinding>> ready = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Map.Entry<OID, Map<OID, VariableBinding>> kind : pending.entrySet()) {
+                Iterator<VariableBinding> kindEvents = kind.getValue().values().iterator();
+                while (kindEvents.hasNext()) {
+                    VariableBinding event = kindEvents.next();
+                    Long lastSent = lastSentNanos.get(event.getOid());
+                    // Several kinds of events of a member may go out in the same flush
+                    if (lastSent != null && lastSent != now && now - lastSent < minIntervalNanos) {
+                        continue;
+                    }
+                    kindEvents.remove();
+                    lastSentNanos.put(event.getOid(), now);
+                    List<VariableBinding> vbs = ready.get(kind.getKey());
+                    if (vbs == null) {
+                        vbs = new ArrayList<>();
+                        ready.put(kind.getKey(), vbs);
+                    }
+                    vbs.add(event);
+                }
+            }
+        }
+
+        int maxVarbinds = this.maxVarbinds;
+        for (Map.Entry<OID, List<VariableBinding>> kind : ready.entrySet()) {
+            List<VariableBinding> vbs = kind.getValue();
+            for (int from = 0; from < vbs.size(); from += maxVarbinds) {
+                List<VariableBinding> batch = vbs.subList(from, Math.min(vbs.size(), from + maxVarbinds));
+                try {
+                    originator.notify(context, kind.getKey(), batch.toArray(new VariableBinding[batch.size()]));
+                    notifications.incrementAndGet();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Notification " + kind.getKey() + " failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluate the watched members in the background on a dedicated daemon thread.
+     *
+     * @param intervalMillis evaluation interval
+     */
+    public synchronized void start(long intervalMillis) {
+        Preconditions.checkArgument(intervalMillis > 0, "Evaluation interval must be positive");
+        Preconditions.checkState(evaluator == null, "Notifier already started");
+        ScheduledExecutorService evaluator = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ThresholdNotifier-evaluator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        start(evaluator, intervalMillis);
+        ownEvaluator = true;
+    }
+
+    /**
+     * Evaluate the watched members in the background.
+     *
+     * @param evaluator executor running the evaluations, one at a time
+     * @param intervalMillis evaluation interval
+     */
+    public synchronized void start(ScheduledExecutorService evaluator, long intervalMillis) {
+        Preconditions.checkArgument(intervalMillis > 0, "Evaluation interval must be positive");
+        Preconditions.checkState(this.evaluator == null, "Notifier already started");
+        this.evaluator = evaluator;
+        ownEvaluator = false;
+        evaluationTask = evaluator.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evaluate();
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop evaluating the watched members, pending events are not sent.
+     */
+    public synchronized void stop() {
+        if (evaluator == null) {
+            return;
+        }
+        evaluationTask.cancel(false);
+        evaluationTask = null;
+        if (ownEvaluator) {
+            evaluator.shutdown();
+        }
+        evaluator = null;
+    }
+}
@@ -0,0 +1,104 @@
+package com.tzavelas.snmp;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors running each task on its own virtual thread, for code that blocks
+ * in a synchronous style, e.g. one SimpleSNMPClient loop per polled target or
+ * slow annotated methods evaluated by SimpleSNMPAgent.
+ *
+ * Virtual threads need Java 21, the library is built for Java 8 so they are
+ * looked up at runtime. On older JVMs the executors fall back to a cached
+ * pool of daemon platform threads, which runs the same code with a thread
+ * per concurrent task.
+ */
+public final class VirtualThreads {
+    // Thread.ofVirtual().name(prefix, 0).factory() and Executors.newThreadPerTaskExecutor
+    private static final MethodHandle VIRTUAL_THREAD_FACTORY;
+    private static final MethodHandle THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        MethodHandle factory = null;
+        MethodHandle executor = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Class<?> virtualBuilder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual",
+                    MethodType.methodType(virtualBuilder));
+            MethodHandle name = lookup.findVirtual(virtualBuilder, "name",
+                    MethodType.methodType(virtualBuilder, String.class, long.class));
+            MethodHandle toFactory = lookup.findVirtual(builder, "factory",
+                    MethodType.methodType(ThreadFactory.class));
+            // (String, long) -> ThreadFactory
+            factory = MethodHandles.filterReturnValue(
+                    MethodHandles.foldArguments(name, ofVirtual),
+                    toFactory.asType(MethodType.methodType(ThreadFactory.class, virtualBuilder)));
+            executor = lookup.findStatic(Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+        } catch (ReflectiveOperationException e) {
+            // Java before 21, use platform threads
+            factory = null;
+            executor = null;
+        }
+        VIRTUAL_THREAD_FACTORY = factory;
+        THREAD_PER_TASK_EXECUTOR = executor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return whether this JVM has virtual threads, otherwise the executors use platform threads
+     */
+    public static boolean isSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * @param name prefix of the names of the threads, they are numbered from 0
+     * @return a factory of virtual threads, or of daemon platform threads if unsupported
+     */
+    public static ThreadFactory newThreadFactory(final String name) {
+        if (isSupported()) {
+            try {
+                return (ThreadFactory) VIRTUAL_THREAD_FACTORY.invoke(name + "-", 0L);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot create virtual thread factory", e);
+            }
+        }
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, name + "-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * @param name prefix of the names of the threads
+     * @return an executor starting a virtual thread per task, or a cached pool
+     *         of daemon platform threads if unsupported
+     */
+    public static ExecutorService newExecutor(String name) {
+        ThreadFactory factory = newThreadFactory(name);
+        if (isSupported()) {
+            try {
+                return (ExecutorService) THREAD_PER_TASK_EXECUTOR.invoke(factory);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot create virtual thread executor", e);
+            }
+        }
+        return Executors.newCachedThreadPool(factory);
+    }
+}
@@ -0,0 +1,44 @@
+package com.tzavelas.snmp;
+
+/**
+ * Members processed by MibObjectProcessor into GeneratedTestStatsMOGroup, in
+ * its own source file so that the generated group does not reference an
+ * auxiliary class.
+ */
+class GeneratedTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.2";
+
+    @MibObject(oid=OID_PREFIX+".1")
+    byte byteVar = (byte)1;
+
+    @MibObject(oid=OID_PREFIX+".2")
+    Short shortVar = (short)2;
+
+    @MibObject(oid=OID_PREFIX+".3")
+    int intVar = 3;
+
+    @MibObject(oid=OID_PREFIX+".4")
+    long longVar = 4;
+
+    @MibObject(oid=OID_PREFIX+".5")
+    String strVar = "5";
+
+    @MibObject(oid=OID_PREFIX+".7", type="OctetString")
+    int manualInt = 7;
+
+    @MibObject(oid=OID_PREFIX+".13")
+    int getInt(){
+        return 100+intVar;
+    }
+
+    @MibObject(oid=OID_PREFIX+".23")
+    static int staticInt = 23;
+
+    @MibObject(oid=OID_PREFIX+".98")
+    int getChecked() throws java.io.IOException {
+        return 98;
+    }
+
+    @MibObject(oid=OID_PREFIX+".99")
+    private int privateInt = 99;
+}
@@ -0,0 +1,125 @@
+package com.tzavelas.snmp;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.UdpAddress;
+
+class ListenerStats {
+    static final String OID_PREFIX = "1.3.6.1.4.1.29506.13";
+
+    @MibObject(oid=OID_PREFIX+".1")
+    int answer = 42;
+}
+
+/**
+ * Test the listener sockets and socket buffers of SimpleSNMPAgent. The agents
+ * all set a socket option so they use ReusePortUdpTransportMapping, which
+ * releases the port when the agent stops, unlike the asynchronous close of
+ * DefaultUdpTransportMapping that races with the next test binding it.
+ */
+public class TestAgentListeners {
+    private static final String ADDRESS = "127.0.0.1/2009";
+    private static final OID ANSWER = new OID(ListenerStats.OID_PREFIX + ".1.0");
+
+    private SimpleSNMPAgent agent = null;
+    private AnnotatedStatsMOGroup moGroup = null;
+    private final List<SimpleSNMPClient> clients = new ArrayList<>();
+
+    private void start(SimpleSNMPAgent agent) throws Exception {
+        this.agent = agent;
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new ListenerStats());
+        agent.start();
+        moGroup.registerMOs(agent.getServer(), null);
+    }
+
+    private SimpleSNMPClient newClient() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+        clients.add(client);
+        return client;
+    }
+
+    @After
+    public void teardown() throws Exception {
+        for (SimpleSNMPClient client : clients) {
+            client.shutdown();
+        }
+        if (agent != null) {
+            moGroup.unregisterMOs(agent.getServer(), null);
+            agent.stop();
+        }
+    }
+
+    @Test
+    public void severalListenersAnswerAllClients() throws Exception {
+        Assume.assumeTrue(ReusePortUdpTransportMapping.isReusePortSupported());
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(ADDRESS);
+        agent.setListeners(4);
+        agent.setReceiveBufferSize(1 << 20);
+        agent.setSendBufferSize(1 << 20);
+        start(agent);
+
+        // Each client has its own source port, so the kernel spreads them over the listeners
+        List<CompletableFuture<PDU>> responses = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            SimpleSNMPClient client = newClient();
+            for (int j = 0; j < 4; j++) {
+                responses.add(client.getMibObjectsAsync(ANSWER));
+            }
+        }
+        for (CompletableFuture<PDU> response : responses) {
+            Assert.assertEquals(42, response.get(10, TimeUnit.SECONDS).get(0).getVariable().toInt());
+        }
+    }
+
+    @Test
+    public void receiveBufferSizeIsApplied() throws Exception {
+        ReusePortUdpTransportMapping mapping = new ReusePortUdpTransportMapping(
+                new UdpAddress("127.0.0.1/0"), false, 256 * 1024, 0);
+        try {
+            // Linux doubles the requested size for its bookkeeping, other OSes may cap it
+            Assert.assertTrue(mapping.getReceiveBufferSize() > 0);
+        } finally {
+            mapping.close();
+        }
+    }
+
+    @Test
+    public void singleListenerWithBuffersAnswers() throws Exception {
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(ADDRESS);
+        agent.setReceiveBufferSize(256 * 1024);
+        start(agent);
+
+        Assert.assertEquals(42, newClient().getMibObjects(ANSWER).getResponse().get(0).getVariable().toInt());
+    }
+
+    @Test
+    public void receiveDropsAreReported() throws Exception {
+        Assume.assumeTrue(new File("/proc/net/udp").canRead());
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(ADDRESS);
+        agent.setReceiveBufferSize(256 * 1024);
+        start(agent);
+
+        Assert.assertTrue(agent.getReceiveDrops() >= 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void listenersCannotChangeAfterStart() throws Exception {
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(ADDRESS);
+        agent.setReceiveBufferSize(256 * 1024);
+        start(agent);
+
+        agent.setListeners(2);
+    }
+}
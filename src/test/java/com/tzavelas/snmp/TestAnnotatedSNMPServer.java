@@ -7,7 +7,9 @@ import java.lang.reflect.Method;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.snmp4j.agent.DefaultMOServer;
 import org.snmp4j.agent.DuplicateRegistrationException;
+import org.snmp4j.agent.mo.MOScalar;
 import org.snmp4j.smi.OID;
 
 /**
@@ -345,4 +347,27 @@ public class TestAnnotatedSNMPServer {
         Assert.assertTrue("MO added is incorrect: declared: "+moDeclared+", added: "+moAdded,
                 (moDeclared-1) == moAdded);
     }
+
+    ///////////////////////////////////////////////////////////////
+    //Test several instances of the same class share the registration plan
+    ///////////////////////////////////////////////////////////////
+    @Test
+    public void canAddManyInstancesWithPrefix() throws Exception{
+        AnnotatedStatsMOGroup moGroup2 = new AnnotatedStatsMOGroup();
+        DefaultMOServer server = new DefaultMOServer();
+        int instances = 100;
+        int moPerInstance = moGroup2.addAnnotatedMibObject(new SampleTestStats(), "1.3.6.1.4.1.29506.9.0.");
+        for(int i=1;i<instances;i++){
+            SampleTestStats stats = new SampleTestStats();
+            stats.setPrivateInt(i);
+            Assert.assertEquals(moPerInstance, moGroup2.addAnnotatedMibObject(stats, "1.3.6.1.4.1.29506.9."+i+"."));
+        }
+        moGroup2.registerMOs(server, null);
+
+        for(int i=1;i<instances;i++){
+            MOScalar mo = (MOScalar) server.getManagedObject(
+                    new OID("1.3.6.1.4.1.29506.9."+i+"."+OID_PRIVATE_FIELD), null);
+            Assert.assertEquals(i, mo.getValue().toInt());
+        }
+    }
 }
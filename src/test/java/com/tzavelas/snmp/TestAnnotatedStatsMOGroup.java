@@ -0,0 +1,181 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.smi.OID;
+
+/**
+ * Test the evaluation modes of AnnotatedStatsMOGroup.
+ */
+
+class SampledTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.5";
+
+    AtomicInteger slowEvaluations = new AtomicInteger();
+    AtomicInteger fastEvaluations = new AtomicInteger();
+    volatile String lastEvaluatingThread = null;
+
+    @MibObject(oid=OID_PREFIX+".1")
+    private int getSlow(){
+        lastEvaluatingThread = Thread.currentThread().getName();
+        return slowEvaluations.incrementAndGet();
+    }
+
+    @MibObject(oid=OID_PREFIX+".2", sampleMillis=10)
+    private int getFast(){
+        return fastEvaluations.incrementAndGet();
+    }
+}
+
+class SnapshotTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.6";
+
+    int packetEvaluations = 0;
+    int byteEvaluations = 0;
+
+    @MibObject(oid=OID_PREFIX+".1")
+    private int getPackets(){
+        return ++packetEvaluations;
+    }
+
+    @MibObject(oid=OID_PREFIX+".2")
+    private int getBytes(){
+        return 1000 * ++byteEvaluations;
+    }
+}
+
+class FailingSampledTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.27";
+
+    AtomicInteger evaluations = new AtomicInteger();
+
+    @MibObject(oid=OID_PREFIX+".1", sampleMillis=10)
+    private int getFailing(){
+        throw new AssertionError("member failed");
+    }
+
+    @MibObject(oid=OID_PREFIX+".2", sampleMillis=10)
+    private int getCounted(){
+        return evaluations.incrementAndGet();
+    }
+}
+
+public class TestAnnotatedStatsMOGroup {
+    private SampledTestStats statsObj = null;
+    private AnnotatedStatsMOGroup moGroup = null;
+    private DefaultMOServer server = null;
+
+    @Before
+    public void setup() throws Exception {
+        statsObj = new SampledTestStats();
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(statsObj);
+        server = new DefaultMOServer();
+        moGroup.registerMOs(server, null);
+    }
+
+    @After
+    public void teardown() {
+        moGroup.stopSampling();
+    }
+
+    private int getValue(String oidSuffix) {
+        MOScalar mo = (MOScalar) server.getManagedObject(new OID(SampledTestStats.OID_PREFIX + oidSuffix), null);
+        return mo.getValue().toInt();
+    }
+
+    @Test
+    public void evaluatesOnRequestWithoutSampling() {
+        Assert.assertEquals(1, getValue(".1.0"));
+        Assert.assertEquals(2, getValue(".1.0"));
+        Assert.assertEquals(Thread.currentThread().getName(), statsObj.lastEvaluatingThread);
+    }
+
+    @Test
+    public void servesLastSampleWhenSampling() throws Exception {
+        moGroup.startSampling(60000);
+        Thread.sleep(100);
+
+        int sampled = statsObj.slowEvaluations.get();
+        Assert.assertTrue("Member was not sampled", sampled >= 1);
+        Assert.assertEquals(sampled, getValue(".1.0"));
+        Assert.assertEquals(sampled, getValue(".1.0"));
+        Assert.assertEquals(sampled, statsObj.slowEvaluations.get());
+        Assert.assertEquals("AnnotatedStatsMOGroup-sampler", statsObj.lastEvaluatingThread);
+    }
+
+    @Test
+    public void honorsMemberSamplingInterval() throws Exception {
+        moGroup.startSampling(60000);
+        Thread.sleep(200);
+
+        Assert.assertEquals(1, statsObj.slowEvaluations.get());
+        Assert.assertTrue("Member sampled " + statsObj.fastEvaluations.get() + " times",
+                statsObj.fastEvaluations.get() > 5);
+    }
+
+    @Test
+    public void keepsSamplingAfterMemberThrowsError() throws Exception {
+        FailingSampledTestStats failingStats = new FailingSampledTestStats();
+        AnnotatedStatsMOGroup failingGroup = new AnnotatedStatsMOGroup();
+        failingGroup.addAnnotatedMibObject(failingStats);
+        failingGroup.startSampling(60000);
+        try {
+            Thread.sleep(200);
+            Assert.assertTrue("Member sampled " + failingStats.evaluations.get() + " times",
+                    failingStats.evaluations.get() > 5);
+        } finally {
+            failingGroup.stopSampling();
+        }
+    }
+
+    @Test
+    public void evaluatesOnRequestAfterStopSampling() throws Exception {
+        moGroup.startSampling(60000);
+        Thread.sleep(100);
+        moGroup.stopSampling();
+
+        int sampled = statsObj.slowEvaluations.get();
+        Assert.assertEquals(sampled + 1, getValue(".1.0"));
+        Assert.assertEquals(Thread.currentThread().getName(), statsObj.lastEvaluatingThread);
+    }
+
+    @Test
+    public void servesRequestFromSnapshot() throws Exception {
+        String address = "127.0.0.1/2002";
+        SnapshotTestStats snapshotStats = new SnapshotTestStats();
+        AnnotatedStatsMOGroup snapshotGroup = new AnnotatedStatsMOGroup();
+        snapshotGroup.addAnnotatedMibObject(snapshotStats);
+        snapshotGroup.setRequestSnapshots(true);
+
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(address);
+        agent.start();
+        snapshotGroup.registerMOs(agent.getServer(), null);
+        SimpleSNMPClient client = new SimpleSNMPClient(address);
+        client.start();
+        try {
+            OID packets = new OID(SnapshotTestStats.OID_PREFIX + ".1.0");
+            OID bytes = new OID(SnapshotTestStats.OID_PREFIX + ".2.0");
+            ResponseEvent event = client.getMibObjects(packets, bytes, packets, bytes);
+            Assert.assertEquals(1, event.getResponse().get(0).getVariable().toInt());
+            Assert.assertEquals(1000, event.getResponse().get(1).getVariable().toInt());
+            Assert.assertEquals(1, event.getResponse().get(2).getVariable().toInt());
+            Assert.assertEquals(1000, event.getResponse().get(3).getVariable().toInt());
+
+            event = client.getMibObjects(bytes, packets);
+            Assert.assertEquals(2000, event.getResponse().get(0).getVariable().toInt());
+            Assert.assertEquals(2, event.getResponse().get(1).getVariable().toInt());
+        } finally {
+            client.shutdown();
+            snapshotGroup.unregisterMOs(agent.getServer(), null);
+            agent.stop();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.tzavelas.snmp;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariantVariable;
+
+/**
+ * Test that primitive members are read without allocating and that cached values are honored.
+ */
+
+class PrimitiveTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.4";
+
+    // Values outside of the Integer/Long valueOf caches so boxing would allocate
+    @MibObject(oid=OID_PREFIX+".1")
+    private short shortVar = (short)1234;
+
+    @MibObject(oid=OID_PREFIX+".2")
+    private int intVar = 123456;
+
+    @MibObject(oid=OID_PREFIX+".3")
+    private long longVar = 123456789012L;
+
+    @MibObject(oid=OID_PREFIX+".4", type="Gauge32")
+    private int gaugeVar = 654321;
+
+    @MibObject(oid=OID_PREFIX+".5", type="Integer32")
+    private long truncatedLongVar = 0x100000001L;
+
+    @MibObject(oid=OID_PREFIX+".6")
+    private final StripedCounter stripedVar = new StripedCounter();
+    {
+        stripedVar.add(123456789012L);
+    }
+
+    @MibObject(oid=OID_PREFIX+".13")
+    private int getInt(){
+        return intVar + 1;
+    }
+
+    @MibObject(oid=OID_PREFIX+".14")
+    private long getLong(){
+        return longVar + 1;
+    }
+
+    AtomicInteger evaluations = new AtomicInteger();
+
+    @MibObject(oid=OID_PREFIX+".21", cacheMillis=60000)
+    private int getCachedInt(){
+        return evaluations.incrementAndGet();
+    }
+
+    @MibObject(oid=OID_PREFIX+".22", cacheMillis=1)
+    private long getSlowLong() throws InterruptedException{
+        evaluations.incrementAndGet();
+        Thread.sleep(100);
+        return longVar;
+    }
+}
+
+public class TestDynamicVariantVariableCallback {
+    private static final int READ_COUNT = 100000;
+    private static DefaultMOServer server = null;
+    private static PrimitiveTestStats statsObj = null;
+
+    @BeforeClass
+    public static void setupClass() throws Exception {
+        AnnotatedStatsMOGroup moGroup = new AnnotatedStatsMOGroup();
+        statsObj = new PrimitiveTestStats();
+        moGroup.addAnnotatedMibObject(statsObj);
+        server = new DefaultMOServer();
+        moGroup.registerMOs(server, null);
+    }
+
+    private static MOScalar getScalar(String oidSuffix) {
+        return (MOScalar) server.getManagedObject(new OID(PrimitiveTestStats.OID_PREFIX + oidSuffix), null);
+    }
+
+    private static long readAll(MOScalar mo, int times) {
+        long sum = 0;
+        for (int i = 0; i < times; i++) {
+            sum += mo.getValue().toLong();
+        }
+        return sum;
+    }
+
+    private void testNoAllocation(String oidSuffix) {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        MOScalar mo = getScalar(oidSuffix);
+
+        // warm up so that the callback is compiled
+        readAll(mo, READ_COUNT);
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        readAll(mo, READ_COUNT);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        Assert.assertTrue("OID " + oidSuffix + " allocated " + allocated + " bytes for " + READ_COUNT + " reads",
+                allocated < READ_COUNT);
+    }
+
+    @Test
+    public void canReadPrimitiveValues() {
+        Assert.assertEquals(1234, getScalar(".1.0").getValue().toInt());
+        Assert.assertEquals(123456, getScalar(".2.0").getValue().toInt());
+        Assert.assertEquals(123456789012L, getScalar(".3.0").getValue().toLong());
+        Assert.assertEquals(654321L, getScalar(".4.0").getValue().toLong());
+        Assert.assertEquals(1, getScalar(".5.0").getValue().toInt());
+        Assert.assertEquals(123456789012L, getScalar(".6.0").getValue().toLong());
+        Assert.assertEquals(123457, getScalar(".13.0").getValue().toInt());
+        Assert.assertEquals(123456789013L, getScalar(".14.0").getValue().toLong());
+    }
+
+    @Test
+    public void primitiveReadsDoNotAllocate() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        for (String oidSuffix : new String[]{".1.0", ".2.0", ".3.0", ".4.0", ".6.0", ".13.0", ".14.0"}) {
+            testNoAllocation(oidSuffix);
+        }
+    }
+
+    @Test
+    public void cachedValueIsReused() {
+        MOScalar mo = getScalar(".21.0");
+        int first = mo.getValue().toInt();
+        Assert.assertEquals(first, mo.getValue().toInt());
+        Assert.assertEquals(first, mo.getValue().toInt());
+    }
+
+    private static DynamicVariantVariableCallback slowLongCallback() throws Exception {
+        return new DynamicVariantVariableCallback
+                .DynamicVariantVariableCallbackBuilder(statsObj)
+                .method(PrimitiveTestStats.class.getDeclaredMethod("getSlowLong"))
+                .mibType(Counter64.class)
+                .cacheMillis(1)
+                .build();
+    }
+
+    private static void assertEvaluatedOnce(final DynamicVariantVariableCallback callback) throws Exception {
+        // Separate variables so that the VariantVariable lock does not serialize the readers
+        int readers = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] values = new long[readers];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            final int reader = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    VariantVariable variable = new VariantVariable(new Counter64(), callback);
+                    values[reader] = variable.toLong();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        int before = statsObj.evaluations.get();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(1, statsObj.evaluations.get() - before);
+        for (long value : values) {
+            Assert.assertEquals(123456789012L, value);
+        }
+    }
+
+    @Test
+    public void expiredValueIsRefreshedOnce() throws Exception {
+        DynamicVariantVariableCallback callback = slowLongCallback();
+        callback.updateVariable(new VariantVariable(new Counter64(), callback));
+        Thread.sleep(10);
+        assertEvaluatedOnce(callback);
+    }
+
+    @Test
+    public void firstValueIsEvaluatedOnce() throws Exception {
+        assertEvaluatedOnce(slowLongCallback());
+    }
+}
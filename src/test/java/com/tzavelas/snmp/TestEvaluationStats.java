@@ -0,0 +1,168 @@
+package com.tzavelas.snmp;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.OID;
+
+/**
+ * Test the evaluation statistics recorded by AnnotatedStatsMOGroup and exposed by SimpleSNMPAgent.
+ */
+
+class TimedTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.14";
+
+    @MibObject(oid=OID_PREFIX+".1")
+    private int fast = 1;
+
+    @MibObject(oid=OID_PREFIX+".2")
+    private int getSlow() throws InterruptedException {
+        Thread.sleep(2);
+        return 2;
+    }
+
+    @MibObject(oid=OID_PREFIX+".3", cacheMillis=60000)
+    private int getCached() {
+        return 3;
+    }
+}
+
+public class TestEvaluationStats {
+    private static final String ADDRESS = "127.0.0.1/2014";
+    private static final String STATS_PREFIX = "1.3.6.1.4.1.29506.15.";
+
+    private EvaluationStats stats = null;
+    private AnnotatedStatsMOGroup moGroup = null;
+    private DefaultMOServer server = null;
+
+    @Before
+    public void setup() throws Exception {
+        stats = new EvaluationStats();
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.setEvaluationStats(stats);
+        moGroup.addAnnotatedMibObject(new TimedTestStats());
+        server = new DefaultMOServer();
+        moGroup.registerMOs(server, null);
+    }
+
+    @After
+    public void teardown() {
+        moGroup.stopSampling();
+    }
+
+    private int getValue(String oidSuffix) {
+        MOScalar mo = (MOScalar) server.getManagedObject(new OID(TimedTestStats.OID_PREFIX + oidSuffix), null);
+        return mo.getValue().toInt();
+    }
+
+    private static EvaluationStats.Member find(List<EvaluationStats.Member> members, String oidSuffix) {
+        for (EvaluationStats.Member member : members) {
+            if (member.getOid().equals(TimedTestStats.OID_PREFIX + oidSuffix)) {
+                return member;
+            }
+        }
+        throw new AssertionError("No statistics for " + oidSuffix);
+    }
+
+    private static long sumBuckets(EvaluationStats.Member member) {
+        long sum = 0;
+        for (int bucket = 0; bucket < EvaluationStats.BUCKETS; bucket++) {
+            sum += member.getBucketCount(bucket);
+        }
+        return sum;
+    }
+
+    @Test
+    public void recordsEvaluationsPerOid() {
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(1, getValue(".1.0"));
+            Assert.assertEquals(2, getValue(".2.0"));
+        }
+
+        List<EvaluationStats.Member> members = stats.snapshot();
+        Assert.assertEquals(3, members.size());
+        EvaluationStats.Member fast = find(members, ".1.0");
+        EvaluationStats.Member slow = find(members, ".2.0");
+        Assert.assertEquals(3, fast.getEvaluations());
+        Assert.assertEquals(3, slow.getEvaluations());
+        Assert.assertEquals(3, sumBuckets(fast));
+        Assert.assertEquals(3, sumBuckets(slow));
+        Assert.assertTrue(slow.getTotalNanos() >= 6000000);
+        Assert.assertTrue(slow.getTotalNanos() > fast.getTotalNanos());
+        // Every slow evaluation sleeps longer than the bound of the first four buckets
+        for (int bucket = 0; bucket < 4; bucket++) {
+            Assert.assertEquals(0, slow.getBucketCount(bucket));
+        }
+    }
+
+    @Test
+    public void snapshotDoesNotChange() {
+        getValue(".1.0");
+        EvaluationStats.Member before = find(stats.snapshot(), ".1.0");
+        getValue(".1.0");
+        Assert.assertEquals(1, before.getEvaluations());
+        Assert.assertEquals(2, find(stats.snapshot(), ".1.0").getEvaluations());
+    }
+
+    @Test
+    public void cachedReadsAreNotEvaluations() {
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(3, getValue(".3.0"));
+        }
+        Assert.assertEquals(1, find(stats.snapshot(), ".3.0").getEvaluations());
+    }
+
+    @Test
+    public void samplesAreEvaluations() throws Exception {
+        moGroup.startSampling(5);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (find(stats.snapshot(), ".1.0").getEvaluations() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertTrue(find(stats.snapshot(), ".1.0").getEvaluations() >= 2);
+    }
+
+    @Test
+    public void groupWithoutEvaluationStatsRecordsNothing() {
+        AnnotatedStatsMOGroup untimed = new AnnotatedStatsMOGroup();
+        untimed.addAnnotatedMibObject(new TimedTestStats(), "1.3.6.1.4.1.29506.16.");
+        Assert.assertEquals(3, stats.snapshot().size());
+    }
+
+    @Test
+    public void agentExposesEvaluationStats() throws Exception {
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(ADDRESS, true);
+        AnnotatedStatsMOGroup agentGroup = new AnnotatedStatsMOGroup();
+        agentGroup.setEvaluationStats(agent.getEvaluationStats());
+        agentGroup.addAnnotatedMibObject(new TimedTestStats());
+        agent.start();
+        agentGroup.registerMOs(agent.getServer(), null);
+        agent.registerEvaluationStats(STATS_PREFIX);
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+        try {
+            Assert.assertEquals(2, client.getMibObjectAsInteger(new OID(TimedTestStats.OID_PREFIX + ".2.0")));
+
+            // Table 1, entry 1, the rows are indexed by registration order from 1
+            List<EvaluationStats.Member> members = agent.getEvaluationStats().snapshot();
+            int row = members.indexOf(find(members, ".2.0")) + 1;
+            PDU response = client.getMibObjects(new OID(STATS_PREFIX + "1.1.1." + row),
+                    new OID(STATS_PREFIX + "1.1.2." + row), new OID(STATS_PREFIX + "1.1.9." + row)).getResponse();
+            Assert.assertEquals(PDU.noError, response.getErrorStatus());
+            Assert.assertEquals(TimedTestStats.OID_PREFIX + ".2.0", response.get(0).getVariable().toString());
+            Assert.assertEquals(1, response.get(1).getVariable().toLong());
+            Assert.assertEquals(find(members, ".2.0").getBucketCount(4),
+                    response.get(2).getVariable().toLong());
+        } finally {
+            client.shutdown();
+            agentGroup.unregisterMOs(agent.getServer(), null);
+            agent.stop();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.tzavelas.snmp;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+
+/**
+ * Test the file-free startup of SimpleSNMPAgent.
+ */
+
+class InMemoryStats {
+    static final String OID_PREFIX = "1.3.6.1.4.1.29506.26";
+
+    @MibObject(oid=OID_PREFIX+".1")
+    int answer = 42;
+}
+
+public class TestInMemoryAgent {
+    // A port per test, the asynchronous close of DefaultUdpTransportMapping races with the next bind
+    private static final String ADDRESS = "127.0.0.1/2011";
+    private static final String DEFAULT_ADDRESS = "127.0.0.1/2012";
+    private static final String MIB_ADDRESS = "127.0.0.1/2013";
+    private static final OID ANSWER = new OID(InMemoryStats.OID_PREFIX + ".1.0");
+    private static final OID SYS_UP_TIME = new OID("1.3.6.1.2.1.1.3.0");
+    private static final OID SNMP_ENGINE_ID = new OID("1.3.6.1.6.3.10.2.1.1.0");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SimpleSNMPAgent agent = null;
+    private AnnotatedStatsMOGroup moGroup = null;
+    private SimpleSNMPClient client = null;
+
+    private void start(SimpleSNMPAgent agent, String address) throws Exception {
+        this.agent = agent;
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new InMemoryStats());
+        agent.start();
+        moGroup.registerMOs(agent.getServer(), null);
+        client = new SimpleSNMPClient(address);
+        client.start();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        client.shutdown();
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Test
+    public void inMemoryAgentWritesNoFiles() throws Exception {
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(ADDRESS, true);
+        File config = new File(folder.getRoot(), "conf.agent");
+        File bootCounter = new File(folder.getRoot(), "bootCounter.agent");
+        agent.setConfigFile(config);
+        agent.setBootCounterFile(bootCounter);
+        start(agent, ADDRESS);
+
+        Assert.assertEquals(42, client.getMibObjectAsInteger(ANSWER));
+        agent.saveConfig();
+        Assert.assertFalse(config.exists());
+        Assert.assertFalse(bootCounter.exists());
+    }
+
+    @Test
+    public void defaultAgentWritesBootCounter() throws Exception {
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(DEFAULT_ADDRESS);
+        File bootCounter = new File(folder.getRoot(), "bootCounter.agent");
+        agent.setBootCounterFile(bootCounter);
+        start(agent, DEFAULT_ADDRESS);
+
+        Assert.assertEquals(42, client.getMibObjectAsInteger(ANSWER));
+        Assert.assertTrue(bootCounter.exists());
+    }
+
+    @Test
+    public void inMemoryAgentRegistersOnlySnmpv2Mib() throws Exception {
+        start(new SimpleSNMPAgent(MIB_ADDRESS, true), MIB_ADDRESS);
+
+        PDU response = client.getMibObjects(SYS_UP_TIME, SNMP_ENGINE_ID).getResponse();
+        Assert.assertEquals(PDU.noError, response.getErrorStatus());
+        Assert.assertFalse(response.get(0).getVariable() instanceof Null);
+        Assert.assertTrue(response.get(1).getVariable() instanceof Null);
+    }
+}
@@ -0,0 +1,288 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * Test the tables registered for @MibTable members through an agent.
+ */
+
+class QueueStats {
+    static final AtomicInteger depthReads = new AtomicInteger();
+
+    private final String name;
+    private final int depth;
+
+    QueueStats(String name, int depth) {
+        this.name = name;
+        this.depth = depth;
+    }
+
+    @MibObject(oid="1")
+    private String getName(){
+        return name;
+    }
+
+    @MibObject(oid="2")
+    private int getDepth(){
+        depthReads.incrementAndGet();
+        return depth;
+    }
+}
+
+class CountingIterable implements Iterable<QueueStats> {
+    final List<QueueStats> rows = new ArrayList<>();
+    final AtomicInteger nextCalls = new AtomicInteger();
+
+    @Override
+    public Iterator<QueueStats> iterator() {
+        final Iterator<QueueStats> iterator = rows.iterator();
+        return new Iterator<QueueStats>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public QueueStats next() {
+                nextCalls.incrementAndGet();
+                return iterator.next();
+            }
+        };
+    }
+}
+
+class TableTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.7";
+
+    @MibTable(oid=OID_PREFIX+".1")
+    List<QueueStats> queues = new ArrayList<>();
+
+    @MibTable(oid=OID_PREFIX+".2")
+    Map<Integer, QueueStats> tenants = new ConcurrentSkipListMap<>();
+
+    @MibTable(oid=OID_PREFIX+".3")
+    QueueStats[] array = new QueueStats[] { new QueueStats("a0", 0), null, new QueueStats("a2", 2) };
+
+    @MibTable(oid=OID_PREFIX+".4", entry=QueueStats.class)
+    CountingIterable iterable = new CountingIterable();
+
+    @MibTable(oid=OID_PREFIX+".5")
+    Map<Long, QueueStats> unordered = new HashMap<>();
+
+    @MibObject(oid=OID_PREFIX+".9")
+    int afterTables = 9;
+}
+
+public class TestLazyMOTable {
+    private static final String ADDRESS = "127.0.0.1/2003";
+    private static SimpleSNMPAgent agent = null;
+    private static SimpleSNMPClient client = null;
+    private static AnnotatedStatsMOGroup moGroup = null;
+    private static TableTestStats statsObj = null;
+
+    @BeforeClass
+    public static void setupClass() throws Exception {
+        statsObj = new TableTestStats();
+        moGroup = new AnnotatedStatsMOGroup();
+        Assert.assertEquals(6, moGroup.addAnnotatedMibObject(statsObj));
+
+        agent = new SimpleSNMPAgent(ADDRESS);
+        agent.start();
+        moGroup.registerMOs(agent.getServer(), null);
+        client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+    }
+
+    @AfterClass
+    public static void teardownClass() throws Exception {
+        client.shutdown();
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Before
+    public void setup() {
+        statsObj.queues.clear();
+        statsObj.queues.add(new QueueStats("q1", 10));
+        statsObj.queues.add(new QueueStats("q2", 20));
+        statsObj.queues.add(new QueueStats("q3", 30));
+        statsObj.tenants.clear();
+        statsObj.tenants.put(5, new QueueStats("t5", 50));
+        statsObj.tenants.put(10, new QueueStats("t10", 100));
+        statsObj.unordered.clear();
+    }
+
+    private static OID oid(String suffix) {
+        return new OID(TableTestStats.OID_PREFIX + suffix);
+    }
+
+    private static void assertBinding(PDU response, int i, String oidSuffix, Object value) {
+        Assert.assertEquals(oid(oidSuffix), response.get(i).getOid());
+        Assert.assertEquals(value, response.get(i).getVariable());
+    }
+
+    @Test
+    public void canWalkListTable() throws Exception {
+        PDU response = client.getBulkMibObjects(7, oid(".1")).getResponse();
+        Assert.assertEquals(7, response.size());
+        assertBinding(response, 0, ".1.1.1.1", new OctetString("q1"));
+        assertBinding(response, 1, ".1.1.1.2", new OctetString("q2"));
+        assertBinding(response, 2, ".1.1.1.3", new OctetString("q3"));
+        assertBinding(response, 3, ".1.1.2.1", new Integer32(10));
+        assertBinding(response, 4, ".1.1.2.2", new Integer32(20));
+        assertBinding(response, 5, ".1.1.2.3", new Integer32(30));
+        assertBinding(response, 6, ".2.1.1.5", new OctetString("t5"));
+    }
+
+    @Test
+    public void canGetCell() throws Exception {
+        PDU response = client.getMibObjects(oid(".1.1.2.2"), oid(".1.1.2.4"), oid(".1.1.3.1")).getResponse();
+        Assert.assertEquals(new Integer32(20), response.get(0).getVariable());
+        Assert.assertEquals(Null.noSuchInstance, response.get(1).getVariable());
+        Assert.assertEquals(Null.noSuchObject, response.get(2).getVariable());
+    }
+
+    @Test
+    public void mapRowsAreIndexedByKey() throws Exception {
+        PDU response = client.getNextMibObjects(oid(".2.1.1"), oid(".2.1.1.5"), oid(".2.1.1.10"),
+                oid(".2.1.2.7")).getResponse();
+        assertBinding(response, 0, ".2.1.1.5", new OctetString("t5"));
+        assertBinding(response, 1, ".2.1.1.10", new OctetString("t10"));
+        assertBinding(response, 2, ".2.1.2.5", new Integer32(50));
+        assertBinding(response, 3, ".2.1.2.10", new Integer32(100));
+    }
+
+    @Test
+    public void arrayRowsSkipNullElements() throws Exception {
+        PDU response = client.getBulkMibObjects(3, oid(".3")).getResponse();
+        assertBinding(response, 0, ".3.1.1.1", new OctetString("a0"));
+        assertBinding(response, 1, ".3.1.1.3", new OctetString("a2"));
+        assertBinding(response, 2, ".3.1.2.1", new Integer32(0));
+    }
+
+    @Test
+    public void nextOfLargeTableReadsOneRow() throws Exception {
+        for (int i = 4; i <= 100000; i++) {
+            statsObj.queues.add(new QueueStats("q" + i, i));
+        }
+        QueueStats.depthReads.set(0);
+        PDU response = client.getNextMibObjects(oid(".1.1.2.50000")).getResponse();
+        assertBinding(response, 0, ".1.1.2.50001", new Integer32(50001));
+        Assert.assertEquals(1, QueueStats.depthReads.get());
+    }
+
+    @Test
+    public void walkOfIterableTableIteratesOnce() throws Exception {
+        int rows = 1000;
+        statsObj.iterable.rows.clear();
+        for (int i = 1; i <= rows; i++) {
+            statsObj.iterable.rows.add(new QueueStats("i" + i, i));
+        }
+        statsObj.iterable.nextCalls.set(0);
+
+        OID column = oid(".4.1.2");
+        OID last = column;
+        int walked = 0;
+        while (true) {
+            ResponseEvent event = client.getBulkMibObjects(50, last);
+            PDU response = event.getResponse();
+            OID oid = response.get(response.size() - 1).getOid();
+            for (int i = 0; i < response.size() && response.get(i).getOid().startsWith(column); i++) {
+                walked++;
+                Assert.assertEquals(walked, response.get(i).getVariable().toInt());
+            }
+            if (!oid.startsWith(column)) {
+                break;
+            }
+            last = oid;
+        }
+        Assert.assertEquals(rows, walked);
+        Assert.assertTrue("Iterated " + statsObj.iterable.nextCalls.get() + " times for " + rows + " rows",
+                statsObj.iterable.nextCalls.get() <= rows + 1);
+    }
+
+    private static int walkColumn(OID column, int expectedStep) throws Exception {
+        OID last = column;
+        int walked = 0;
+        while (true) {
+            PDU response = client.getBulkMibObjects(50, last).getResponse();
+            for (int i = 0; i < response.size() && response.get(i).getOid().startsWith(column); i++) {
+                walked++;
+                Assert.assertEquals(column.toString() + "." + walked * expectedStep,
+                        response.get(i).getOid().toString());
+                Assert.assertEquals(walked * expectedStep, response.get(i).getVariable().toInt());
+            }
+            OID oid = response.get(response.size() - 1).getOid();
+            if (!oid.startsWith(column)) {
+                return walked;
+            }
+            last = oid;
+        }
+    }
+
+    @Test
+    public void walkOfUnorderedMapIsSorted() throws Exception {
+        int rows = 1000;
+        for (long i = rows; i >= 1; i--) {
+            statsObj.unordered.put(i * 3, new QueueStats("u" + i, (int) i * 3));
+        }
+        Assert.assertEquals(rows, walkColumn(oid(".5.1.2"), 3));
+
+        // The keys are sorted again once the map changed
+        statsObj.unordered.put((rows + 1) * 3L, new QueueStats("last", (rows + 1) * 3));
+        Assert.assertEquals(rows + 1, walkColumn(oid(".5.1.2"), 3));
+        PDU response = client.getNextMibObjects(oid(".5.1.1.6")).getResponse();
+        assertBinding(response, 0, ".5.1.1.9", new OctetString("u3"));
+
+        // A key replaced by another one at the same size
+        statsObj.unordered.remove((rows + 1) * 3L);
+        statsObj.unordered.put(1L, new QueueStats("first", 1));
+        response = client.getNextMibObjects(oid(".5.1.1"), oid(".5.1.1.2997"), oid(".5.1.1.3000")).getResponse();
+        assertBinding(response, 0, ".5.1.1.1", new OctetString("first"));
+        assertBinding(response, 1, ".5.1.1.3000", new OctetString("u1000"));
+        assertBinding(response, 2, ".5.1.2.1", new Integer32(1));
+        // Within a walk too
+        statsObj.unordered.remove(3000L);
+        statsObj.unordered.put(3001L, new QueueStats("last", 3001));
+        response = client.getNextMibObjects(oid(".5.1.1.2997")).getResponse();
+        assertBinding(response, 0, ".5.1.1.3001", new OctetString("last"));
+    }
+
+    @Test
+    public void replacedIterableRowIsNotServedStale() throws Exception {
+        statsObj.iterable.rows.clear();
+        statsObj.iterable.rows.add(new QueueStats("i1", 1));
+        statsObj.iterable.rows.add(new QueueStats("i2", 2));
+        PDU response = client.getNextMibObjects(oid(".4.1.1")).getResponse();
+        assertBinding(response, 0, ".4.1.1.1", new OctetString("i1"));
+
+        statsObj.iterable.rows.set(0, new QueueStats("replaced", 10));
+        response = client.getNextMibObjects(oid(".4.1.2")).getResponse();
+        assertBinding(response, 0, ".4.1.2.1", new Integer32(10));
+    }
+
+    @Test
+    public void nextOfLastCellLeavesTable() throws Exception {
+        PDU response = client.getNextMibObjects(oid(".2.1.2.10"), oid(".4.1.3")).getResponse();
+        assertBinding(response, 0, ".3.1.1.1", new OctetString("a0"));
+        assertBinding(response, 1, ".9.0", new Integer32(9));
+    }
+}
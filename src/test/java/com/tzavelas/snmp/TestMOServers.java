@@ -0,0 +1,111 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.DuplicateRegistrationException;
+import org.snmp4j.agent.MOServer;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * Test the registration of many managed objects at once.
+ */
+public class TestMOServers {
+    private static final String OID_PREFIX = "1.3.6.1.4.1.29506.23.";
+
+    private static List<ManagedObject> scalars(int from, int to) {
+        List<ManagedObject> mos = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            mos.add(new MOScalar(new OID(OID_PREFIX + i + ".0"), MOAccessImpl.ACCESS_READ_ONLY, new Integer32(i)));
+        }
+        return mos;
+    }
+
+    private static void assertRegistered(MOServer server, int from, int to) {
+        for (int i = 0; i < to + 10; i++) {
+            ManagedObject mo = ((DefaultMOServer) server).getManagedObject(new OID(OID_PREFIX + i + ".0"), null);
+            Assert.assertEquals("" + i, i >= from && i < to, mo != null);
+        }
+    }
+
+    private static void assertAllOrNothing(MOServer server) throws Exception {
+        MOServers.register(server, scalars(0, 100), null);
+        assertRegistered(server, 0, 100);
+
+        // Conflicts with a registered one
+        try {
+            MOServers.register(server, scalars(99, 200), null);
+            Assert.fail();
+        } catch (DuplicateRegistrationException ex) {
+            Assert.assertEquals(new OID(OID_PREFIX + "99"), ex.getRegisteredScope().getLowerBound());
+        }
+        assertRegistered(server, 0, 100);
+
+        // Conflicts among themselves
+        List<ManagedObject> mos = scalars(100, 200);
+        mos.addAll(scalars(150, 151));
+        Collections.shuffle(mos);
+        try {
+            MOServers.register(server, mos, null);
+            Assert.fail();
+        } catch (DuplicateRegistrationException ex) {
+            Assert.assertEquals(new OID(OID_PREFIX + "150"), ex.getRegisteredScope().getLowerBound());
+        }
+        assertRegistered(server, 0, 100);
+    }
+
+    @Test
+    public void registersAllOrNothing() throws Exception {
+        assertAllOrNothing(new OidTrieMOServer());
+    }
+
+    @Test
+    public void registersAllOrNothingWithDefaultMOServer() throws Exception {
+        assertAllOrNothing(new DefaultMOServer());
+    }
+
+    @Test
+    public void unregistersAll() throws Exception {
+        OidTrieMOServer server = new OidTrieMOServer();
+        List<ManagedObject> mos = scalars(0, 100);
+        MOServers.register(server, mos, null);
+        Assert.assertEquals(100, server.size());
+
+        MOServers.unregister(server, mos.subList(10, 90), null);
+        Assert.assertEquals(20, server.size());
+        assertRegistered(server, 0, 10);
+        Assert.assertNotNull(server.getManagedObject(new OID(OID_PREFIX + "95.0"), null));
+
+        // Those not registered are skipped
+        MOServers.unregister(server, mos, null);
+        Assert.assertEquals(0, server.size());
+    }
+
+    @Test
+    public void registersInContexts() throws Exception {
+        OidTrieMOServer server = new OidTrieMOServer();
+        OctetString ctx = new OctetString("ctx");
+        MOServers.register(server, scalars(0, 10), ctx);
+        // Already in ctx
+        try {
+            MOServers.register(server, scalars(5, 6), null);
+            Assert.fail();
+        } catch (DuplicateRegistrationException ex) {
+            Assert.assertEquals(10, server.size());
+        }
+        MOServers.register(server, scalars(0, 10), new OctetString("other"));
+        Assert.assertEquals(20, server.size());
+        MOServers.register(server, Arrays.<ManagedObject>asList(), ctx);
+        Assert.assertEquals(20, server.size());
+    }
+}
@@ -0,0 +1,129 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariantVariable;
+
+/**
+ * Test the contention-free metric types and their registration.
+ */
+
+class MetricTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.8";
+
+    @MibObject(oid=OID_PREFIX+".1")
+    final StripedCounter requests = new StripedCounter();
+
+    @MibObject(oid=OID_PREFIX+".2")
+    final MaxGauge peakDepth = new MaxGauge();
+
+    @MibObject(oid=OID_PREFIX+".3")
+    final MinGauge lowestFree = new MinGauge();
+
+    @MibObject(oid=OID_PREFIX+".4")
+    final RateMeter requestRate = new RateMeter(50, TimeUnit.MILLISECONDS);
+}
+
+public class TestMetricTypes {
+    private MetricTestStats statsObj = null;
+    private DefaultMOServer server = null;
+
+    @Before
+    public void setup() throws Exception {
+        statsObj = new MetricTestStats();
+        AnnotatedStatsMOGroup moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(statsObj);
+        server = new DefaultMOServer();
+        moGroup.registerMOs(server, null);
+    }
+
+    private VariantVariable getValue(String oidSuffix) {
+        MOScalar mo = (MOScalar) server.getManagedObject(new OID(MetricTestStats.OID_PREFIX + oidSuffix), null);
+        VariantVariable variable = (VariantVariable) mo.getValue();
+        // Any read of the VariantVariable refreshes its value through the callback
+        variable.toString();
+        return variable;
+    }
+
+    @Test
+    public void metricTypesMapToMibTypes() {
+        Assert.assertTrue(getValue(".1.0").getVariable() instanceof Counter64);
+        Assert.assertTrue(getValue(".2.0").getVariable() instanceof Gauge32);
+        Assert.assertTrue(getValue(".3.0").getVariable() instanceof Gauge32);
+        Assert.assertTrue(getValue(".4.0").getVariable() instanceof Gauge32);
+    }
+
+    @Test
+    public void counterSumsConcurrentIncrements() throws Exception {
+        final int threads = 8;
+        final int increments = 100000;
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < increments; j++) {
+                        statsObj.requests.increment();
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        statsObj.requests.add(5);
+        Assert.assertEquals(threads * increments + 5, getValue(".1.0").toLong());
+    }
+
+    @Test
+    public void gaugesKeepExtremes() {
+        Assert.assertEquals(0, getValue(".2.0").toLong());
+        Assert.assertEquals(0, getValue(".3.0").toLong());
+
+        for (long value : new long[] { 7, 3, 12, 5 }) {
+            statsObj.peakDepth.update(value);
+            statsObj.lowestFree.update(value);
+        }
+        Assert.assertEquals(12, getValue(".2.0").toLong());
+        Assert.assertEquals(3, getValue(".3.0").toLong());
+
+        Assert.assertEquals(12, statsObj.peakDepth.getAndReset());
+        Assert.assertEquals(0, getValue(".2.0").toLong());
+    }
+
+    @Test
+    public void gaugesAreBoundedToGauge32() {
+        statsObj.peakDepth.update(1L << 40);
+        statsObj.lowestFree.update(-1);
+        Assert.assertEquals(0xFFFFFFFFL, getValue(".2.0").toLong());
+        Assert.assertEquals(0, getValue(".3.0").toLong());
+    }
+
+    @Test
+    public void meterMeasuresRatePerSecond() throws Exception {
+        RateMeter meter = statsObj.requestRate;
+        meter.getRate();
+        long start = System.nanoTime();
+        meter.mark(100);
+        Thread.sleep(100);
+        double rate = meter.getRate();
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Assert.assertEquals(100, meter.getCount());
+        Assert.assertTrue("Rate " + rate, rate > 100 / (elapsedSeconds + 0.05) && rate <= 100 / 0.1);
+        // The rate of the window is kept until the next window ends
+        Assert.assertEquals(rate, meter.getRate(), 0);
+    }
+}
@@ -0,0 +1,90 @@
+package com.tzavelas.snmp;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariantVariable;
+
+/**
+ * Test the MOGroup generated by MibObjectProcessor for GeneratedTestStats.
+ */
+public class TestMibObjectProcessor {
+    private GeneratedTestStats statsObj = null;
+    private DefaultMOServer server = null;
+
+    @Before
+    public void setup() throws Exception {
+        statsObj = new GeneratedTestStats();
+        server = new DefaultMOServer();
+        new GeneratedTestStatsMOGroup(statsObj).registerMOs(server, null);
+    }
+
+    private Variable getValue(OID oid) {
+        MOScalar mo = (MOScalar) server.getManagedObject(oid, null);
+        Assert.assertNotNull("OID " + oid + " is not registered", mo);
+        VariantVariable variable = (VariantVariable) mo.getValue();
+        // Any read of the VariantVariable refreshes its value through the callback
+        variable.toString();
+        return variable.getVariable();
+    }
+
+    @Test
+    public void generatesOidConstants() {
+        Assert.assertEquals(new OID(GeneratedTestStats.OID_PREFIX + ".3.0"), GeneratedTestStatsMOGroup.INT_VAR_OID);
+        Assert.assertEquals(new OID(GeneratedTestStats.OID_PREFIX + ".13.0"), GeneratedTestStatsMOGroup.GET_INT_OID);
+    }
+
+    @Test
+    public void canAccessAnnotatedTypes() {
+        Assert.assertEquals(new Integer32(1), getValue(GeneratedTestStatsMOGroup.BYTE_VAR_OID));
+        Assert.assertEquals(new Integer32(2), getValue(GeneratedTestStatsMOGroup.SHORT_VAR_OID));
+        Assert.assertEquals(new Integer32(3), getValue(GeneratedTestStatsMOGroup.INT_VAR_OID));
+        Assert.assertEquals(new Counter64(4), getValue(GeneratedTestStatsMOGroup.LONG_VAR_OID));
+        Assert.assertEquals(new OctetString("5"), getValue(GeneratedTestStatsMOGroup.STR_VAR_OID));
+        Assert.assertEquals(new OctetString("7"), getValue(GeneratedTestStatsMOGroup.MANUAL_INT_OID));
+        Assert.assertEquals(new Integer32(103), getValue(GeneratedTestStatsMOGroup.GET_INT_OID));
+        Assert.assertEquals(new Integer32(23), getValue(GeneratedTestStatsMOGroup.STATIC_INT_OID));
+    }
+
+    @Test
+    public void canAccessChangedValue() {
+        statsObj.intVar = 12341234;
+        Assert.assertEquals(new Integer32(12341234), getValue(GeneratedTestStatsMOGroup.INT_VAR_OID));
+        Assert.assertEquals(new Integer32(12341334), getValue(GeneratedTestStatsMOGroup.GET_INT_OID));
+    }
+
+    @Test
+    public void keepsPreviousValueOfNullMember() {
+        Assert.assertEquals(new OctetString("5"), getValue(GeneratedTestStatsMOGroup.STR_VAR_OID));
+        Assert.assertEquals(new Integer32(2), getValue(GeneratedTestStatsMOGroup.SHORT_VAR_OID));
+        statsObj.strVar = null;
+        Assert.assertEquals(new OctetString("5"), getValue(GeneratedTestStatsMOGroup.STR_VAR_OID));
+        statsObj.shortVar = null;
+        Assert.assertEquals(new Integer32(2), getValue(GeneratedTestStatsMOGroup.SHORT_VAR_OID));
+    }
+
+    @Test
+    public void skipsPrivateMember() {
+        Assert.assertNull(server.getManagedObject(new OID(GeneratedTestStats.OID_PREFIX + ".99.0"), null));
+    }
+
+    @Test
+    public void skipsMethodThrowingCheckedException() {
+        Assert.assertNull(server.getManagedObject(new OID(GeneratedTestStats.OID_PREFIX + ".98.0"), null));
+    }
+
+    @Test
+    public void canRegisterWithPrefix() throws Exception {
+        DefaultMOServer prefixed = new DefaultMOServer();
+        new GeneratedTestStatsMOGroup(statsObj, "1.3.6.1.4.1.29506.3.").registerMOs(prefixed, null);
+        OID oid = new OID("1.3.6.1.4.1.29506.3." + GeneratedTestStatsMOGroup.INT_VAR_OID);
+        Assert.assertNotNull(prefixed.getManagedObject(oid, null));
+    }
+}
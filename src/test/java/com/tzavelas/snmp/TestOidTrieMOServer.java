@@ -0,0 +1,293 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.snmp4j.agent.DefaultMOContextScope;
+import org.snmp4j.agent.DefaultMOQuery;
+import org.snmp4j.agent.DefaultMOScope;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.DuplicateRegistrationException;
+import org.snmp4j.agent.MOScope;
+import org.snmp4j.agent.MOServer;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.request.SubRequest;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * Test OidTrieMOServer against DefaultMOServer and through an agent.
+ */
+
+/**
+ * Managed object with an arbitrary scope, only looked up
+ */
+class ScopedTestMO implements ManagedObject {
+    private final MOScope scope;
+
+    ScopedTestMO(OID lowerBound, boolean lowerIncluded, OID upperBound, boolean upperIncluded) {
+        this.scope = new DefaultMOScope(lowerBound, lowerIncluded, upperBound, upperIncluded);
+    }
+
+    @Override
+    public MOScope getScope() {
+        return scope;
+    }
+
+    @Override
+    public OID find(MOScope range) {
+        return null;
+    }
+
+    @Override
+    public void get(SubRequest request) {
+    }
+
+    @Override
+    public boolean next(SubRequest request) {
+        return false;
+    }
+
+    @Override
+    public void prepare(SubRequest request) {
+    }
+
+    @Override
+    public void commit(SubRequest request) {
+    }
+
+    @Override
+    public void undo(SubRequest request) {
+    }
+
+    @Override
+    public void cleanup(SubRequest request) {
+    }
+
+    @Override
+    public String toString() {
+        return "ScopedTestMO" + scope;
+    }
+}
+
+class WideTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.22";
+
+    @MibObject(oid=OID_PREFIX+".1")
+    private int first = 1;
+
+    @MibObject(oid=OID_PREFIX+".2")
+    private long getSecond() {
+        return 2;
+    }
+
+    @MibObject(oid=OID_PREFIX+".10")
+    private String tenth = "ten";
+}
+
+public class TestOidTrieMOServer {
+    private static final String ADDRESS = "127.0.0.1/2020";
+    private static final OctetString[] QUERY_CONTEXTS = { null, new OctetString("ctx"), new OctetString("other") };
+
+    private final Random random = new Random(29506);
+
+    private static OID child(OID parent, int subid) {
+        OID oid = new OID(parent);
+        oid.append(subid);
+        return oid;
+    }
+
+    private OID randomOID() {
+        OID oid = new OID("1.3.6.1.4.1.29506.9");
+        int length = 1 + random.nextInt(4);
+        for (int i = 0; i < length; i++) {
+            oid.append(random.nextInt(4));
+        }
+        return oid;
+    }
+
+    /**
+     * A table, a single OID or a scalar like scope. DefaultMOServer orders
+     * scopes with the same lower bound by registration, so an OID always
+     * gets the same kind of scope.
+     */
+    private ManagedObject randomMO() {
+        OID oid = randomOID();
+        switch ((oid.hashCode() & Integer.MAX_VALUE) % 3) {
+        case 0:
+            return new ScopedTestMO(oid, true, oid.nextPeer(), false);
+        case 1:
+            return new ScopedTestMO(oid, true, oid, true);
+        default:
+            return new ScopedTestMO(oid, false, child(oid, 0), true);
+        }
+    }
+
+    private DefaultMOQuery randomQuery() {
+        OctetString context = QUERY_CONTEXTS[random.nextInt(QUERY_CONTEXTS.length)];
+        OID oid = randomOID();
+        switch (random.nextInt(3)) {
+        case 0:
+            // GET
+            return new DefaultMOQuery(new DefaultMOContextScope(context, oid, true, oid, true));
+        case 1:
+            // GETNEXT
+            return new DefaultMOQuery(new DefaultMOContextScope(context, oid, false, null, false));
+        default:
+            return new DefaultMOQuery(new DefaultMOContextScope(context, oid, true, oid.nextPeer(), false));
+        }
+    }
+
+    private static boolean register(MOServer server, ManagedObject mo, OctetString context) {
+        try {
+            server.register(mo, context);
+            return true;
+        } catch (DuplicateRegistrationException ex) {
+            return false;
+        }
+    }
+
+    private void assertSameLookups(DefaultMOServer expected, OidTrieMOServer actual) {
+        for (int i = 0; i < 2000; i++) {
+            DefaultMOQuery query = randomQuery();
+            Assert.assertSame(query.toString(), expected.lookup(query), actual.lookup(query));
+        }
+        List<Object> expectedRegistry = new ArrayList<>();
+        for (Object mo : expected.getRegistry().values()) {
+            expectedRegistry.add(mo);
+        }
+        List<Object> actualRegistry = new ArrayList<Object>(actual.getRegistry().values());
+        Assert.assertEquals(expectedRegistry, actualRegistry);
+    }
+
+    @Test
+    public void looksUpLikeDefaultMOServer() {
+        DefaultMOServer expected = new DefaultMOServer();
+        OidTrieMOServer actual = new OidTrieMOServer();
+        List<ManagedObject> mos = new ArrayList<>();
+        // In all contexts, as the registry of DefaultMOServer is not consistently ordered across contexts
+        for (int i = 0; i < 500; i++) {
+            ManagedObject mo = randomMO();
+            boolean registered = register(expected, mo, null);
+            Assert.assertEquals(mo.toString(), registered, register(actual, mo, null));
+            if (registered) {
+                mos.add(mo);
+            }
+        }
+        Assert.assertEquals(mos.size(), actual.size());
+        assertSameLookups(expected, actual);
+
+        for (int i = mos.size() - 1; i >= 0; i -= 2) {
+            expected.unregister(mos.get(i), null);
+            actual.unregister(mos.get(i), null);
+        }
+        Assert.assertEquals(expected.getRegistry().size(), actual.size());
+        assertSameLookups(expected, actual);
+    }
+
+    @Test
+    public void rejectsOverlappingRegistrations() throws Exception {
+        OidTrieMOServer server = new OidTrieMOServer();
+        OID table = new OID("1.3.6.1.4.1.29506.9.1");
+        server.register(new ScopedTestMO(table, true, table.nextPeer(), false), null);
+
+        OID column = child(table, 2);
+        Assert.assertFalse(register(server, new ScopedTestMO(column, true, column, true), null));
+        // Managed objects of all contexts are in every context
+        Assert.assertFalse(register(server, new ScopedTestMO(column, true, column, true), new OctetString("ctx")));
+        Assert.assertTrue(register(server, new ScopedTestMO(table.nextPeer(), true, table.nextPeer(), true), null));
+        Assert.assertEquals(2, server.size());
+    }
+
+    @Test
+    public void looksUpInContexts() throws Exception {
+        OidTrieMOServer server = new OidTrieMOServer();
+        OctetString ctx = new OctetString("ctx");
+        OctetString other = new OctetString("other");
+        OID[] oids = new OID[3];
+        ManagedObject[] mos = new ManagedObject[3];
+        for (int i = 0; i < 3; i++) {
+            oids[i] = child(new OID("1.3.6.1.4.1.29506.9"), i);
+            mos[i] = new ScopedTestMO(oids[i], true, oids[i], true);
+        }
+        server.register(mos[0], ctx);
+        server.register(mos[1], null);
+        server.register(mos[2], other);
+        // The same OID in another context
+        Assert.assertTrue(register(server, new ScopedTestMO(oids[0], true, oids[0], true), other));
+
+        // Managed objects of all contexts and of the query context
+        Assert.assertSame(mos[0], server.getManagedObject(oids[0], ctx));
+        Assert.assertSame(mos[1], server.getManagedObject(oids[1], ctx));
+        Assert.assertNull(server.getManagedObject(oids[2], ctx));
+        Assert.assertSame(mos[2], server.getManagedObject(oids[2], other));
+        Assert.assertNull(server.lookup(new DefaultMOQuery(new DefaultMOContextScope(ctx, oids[1], false, null, false))));
+        // The null context matches the managed objects of all contexts
+        Assert.assertSame(mos[2], server.getManagedObject(oids[2], null));
+    }
+
+    @Test
+    public void walksFromAnyOid() throws Exception {
+        OidTrieMOServer server = new OidTrieMOServer();
+        List<ManagedObject> mos = new ArrayList<>();
+        for (int i = 9; i >= 0; i--) {
+            OID oid = child(new OID("1.3.6.1.4.1.29506.9"), i);
+            ManagedObject mo = new ScopedTestMO(oid, true, oid, true);
+            server.register(mo, null);
+            mos.add(0, mo);
+        }
+        // Successive GETNEXT from the previous OID visit the objects in order
+        OID oid = new OID("1.3.6.1.4.1.29506");
+        for (ManagedObject mo : mos) {
+            ManagedObject found = server.lookup(new DefaultMOQuery(new DefaultMOContextScope(null, oid, false, null, false)));
+            Assert.assertSame(mo, found);
+            oid = found.getScope().getLowerBound();
+        }
+        Assert.assertNull(server.lookup(new DefaultMOQuery(new DefaultMOContextScope(null, oid, false, null, false))));
+
+        Iterator<?> registry = server.iterator();
+        for (ManagedObject mo : mos) {
+            Assert.assertSame(mo, ((Map.Entry<?, ?>) registry.next()).getValue());
+        }
+        Assert.assertFalse(registry.hasNext());
+    }
+
+    @Test
+    public void servesAgentRequests() throws Exception {
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(ADDRESS, true);
+        agent.setServer(new OidTrieMOServer());
+        agent.start();
+        AnnotatedStatsMOGroup moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new WideTestStats());
+        moGroup.registerMOs(agent.getServer(), null);
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+        try {
+            Assert.assertTrue(agent.getServer() instanceof OidTrieMOServer);
+            Assert.assertEquals(1, client.getMibObjectAsInteger(WideTestStats.OID_PREFIX + ".1.0"));
+            // The SNMPv2 MIB of the agent is served too
+            Assert.assertNotNull(client.getMibObjectAsString("1.3.6.1.2.1.1.1.0"));
+
+            List<VariableBinding> walk = new ArrayList<>();
+            Iterator<VariableBinding> it = client.walkIterator(new OID(WideTestStats.OID_PREFIX), 2);
+            while (it.hasNext()) {
+                walk.add(it.next());
+            }
+            Assert.assertEquals(3, walk.size());
+            Assert.assertEquals(new OID(WideTestStats.OID_PREFIX + ".1.0"), walk.get(0).getOid());
+            Assert.assertEquals(new OID(WideTestStats.OID_PREFIX + ".2.0"), walk.get(1).getOid());
+            Assert.assertEquals(new OID(WideTestStats.OID_PREFIX + ".10.0"), walk.get(2).getOid());
+            Assert.assertEquals("ten", walk.get(2).getVariable().toString());
+        } finally {
+            client.shutdown();
+            moGroup.unregisterMOs(agent.getServer(), null);
+            agent.stop();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+
+/**
+ * Test the worker pool, queue bound and overload policies of SimpleSNMPAgent.
+ */
+
+class DispatchStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.24";
+    static final long DELAY_MILLIS = 500;
+
+    @MibObject(oid=OID_PREFIX+".1")
+    private int getSlow() throws InterruptedException {
+        Thread.sleep(DELAY_MILLIS);
+        return 1;
+    }
+
+    @MibObject(oid=OID_PREFIX+".2")
+    int fast = 2;
+}
+
+public class TestRequestDispatch {
+    private static final String ADDRESS = "127.0.0.1/2008";
+    private static final OID SLOW = new OID(DispatchStats.OID_PREFIX + ".1.0");
+    private static final OID FAST = new OID(DispatchStats.OID_PREFIX + ".2.0");
+
+    private SimpleSNMPAgent agent = null;
+    private AnnotatedStatsMOGroup moGroup = null;
+    private SimpleSNMPClient client = null;
+
+    private void start(SimpleSNMPAgent agent) throws Exception {
+        this.agent = agent;
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new DispatchStats());
+        agent.start();
+        moGroup.registerMOs(agent.getServer(), null);
+        client = new SimpleSNMPClient(ADDRESS);
+        client.setTimeout(3 * DispatchStats.DELAY_MILLIS);
+        client.setRetries(0);
+        client.start();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        client.shutdown();
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Test
+    public void fixedPoolProcessesRequestsInParallel() throws Exception {
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(ADDRESS);
+        agent.setRequestExecutor(Executors.newFixedThreadPool(4), 16, SimpleSNMPAgent.OverloadPolicy.DROP);
+        start(agent);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<PDU>> slow = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            slow.add(client.getMibObjectsAsync(SLOW));
+        }
+        for (CompletableFuture<PDU> response : slow) {
+            Assert.assertEquals(1, response.get(5, TimeUnit.SECONDS).get(0).getVariable().toInt());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("4 slow GETs took " + elapsedMillis + "ms", elapsedMillis < 2 * DispatchStats.DELAY_MILLIS);
+        Assert.assertEquals(0, agent.getDroppedRequests());
+    }
+
+    @Test
+    public void requestsBeyondBoundAreDropped() throws Exception {
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(ADDRESS);
+        agent.setRequestExecutor(Executors.newFixedThreadPool(1), 1, SimpleSNMPAgent.OverloadPolicy.DROP);
+        start(agent);
+
+        CompletableFuture<PDU> slow = client.getMibObjectsAsync(SLOW);
+        Thread.sleep(DispatchStats.DELAY_MILLIS / 5);
+        CompletableFuture<PDU> dropped = client.getMibObjectsAsync(FAST);
+
+        Assert.assertEquals(1, slow.get(5, TimeUnit.SECONDS).get(0).getVariable().toInt());
+        try {
+            dropped.get(5, TimeUnit.SECONDS);
+            Assert.fail("Request was not dropped");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertEquals(1, agent.getDroppedRequests());
+        // The pool is free again
+        Assert.assertEquals(2, client.getMibObjectAsInteger(FAST));
+    }
+
+    @Test
+    public void callerRunsRequestsBeyondBound() throws Exception {
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(ADDRESS);
+        agent.setRequestExecutor(Executors.newFixedThreadPool(1), 1, SimpleSNMPAgent.OverloadPolicy.CALLER_RUNS);
+        start(agent);
+
+        CompletableFuture<PDU> slow = client.getMibObjectsAsync(SLOW);
+        Thread.sleep(DispatchStats.DELAY_MILLIS / 5);
+        Assert.assertEquals(2, client.getMibObjectAsInteger(FAST));
+        Assert.assertFalse(slow.isDone());
+        Assert.assertEquals(1, slow.get(5, TimeUnit.SECONDS).get(0).getVariable().toInt());
+        Assert.assertEquals(0, agent.getDroppedRequests());
+    }
+}
@@ -0,0 +1,107 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+
+/**
+ * Test the response cache of SimpleSNMPAgent.
+ */
+
+class PolledTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.21";
+
+    final AtomicInteger polls = new AtomicInteger();
+
+    @MibObject(oid=OID_PREFIX+".1")
+    private int getPolls() {
+        return polls.incrementAndGet();
+    }
+
+    @MibObject(oid=OID_PREFIX+".2")
+    private int other = 2;
+}
+
+public class TestResponseCache {
+    // A port per test, the asynchronous close of DefaultUdpTransportMapping races with the next bind
+    private static final String ADDRESS = "127.0.0.1/2017";
+    private static final String EXPIRY_ADDRESS = "127.0.0.1/2018";
+    private static final String EVICTION_ADDRESS = "127.0.0.1/2019";
+    private static final OID POLLS = new OID(PolledTestStats.OID_PREFIX + ".1.0");
+    private static final OID OTHER = new OID(PolledTestStats.OID_PREFIX + ".2.0");
+
+    private SimpleSNMPAgent agent = null;
+    private AnnotatedStatsMOGroup moGroup = null;
+    private PolledTestStats statsObj = null;
+    private SimpleSNMPClient client = null;
+
+    private void start(String address, long windowMillis, long maxBytes) throws Exception {
+        agent = new SimpleSNMPAgent(address, true);
+        agent.setResponseCache(windowMillis, maxBytes);
+        statsObj = new PolledTestStats();
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(statsObj);
+        agent.start();
+        moGroup.registerMOs(agent.getServer(), null);
+        client = new SimpleSNMPClient(address);
+        client.start();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        client.shutdown();
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Test
+    public void identicalRequestsShareAResponse() throws Exception {
+        start(ADDRESS, 60000, 1 << 20);
+
+        Assert.assertEquals(1, client.getMibObjectAsInteger(POLLS));
+        Assert.assertEquals(1, client.getMibObjectAsInteger(POLLS));
+        Assert.assertEquals(1, statsObj.polls.get());
+        Assert.assertEquals(1, agent.getResponseCache().getHits());
+
+        // Another list of OIDs is another request
+        PDU response = client.getMibObjects(POLLS, OTHER).getResponse();
+        Assert.assertEquals(2, response.get(0).getVariable().toInt());
+        Assert.assertEquals(2, statsObj.polls.get());
+        Assert.assertEquals(2, agent.getResponseCache().getMisses());
+        Assert.assertEquals(2, agent.getResponseCache().size());
+
+        // GETNEXT of the same OID is another request too
+        Assert.assertEquals(OTHER, client.getNextMibObjects(POLLS).getResponse().get(0).getOid());
+        Assert.assertEquals(3, agent.getResponseCache().getMisses());
+    }
+
+    @Test
+    public void responsesExpireAfterTheWindow() throws Exception {
+        start(EXPIRY_ADDRESS, 200, 1 << 20);
+
+        Assert.assertEquals(1, client.getMibObjectAsInteger(POLLS));
+        Thread.sleep(300);
+        Assert.assertEquals(2, client.getMibObjectAsInteger(POLLS));
+        Assert.assertEquals(0, agent.getResponseCache().getHits());
+    }
+
+    @Test
+    public void leastRecentlyUsedResponsesAreEvicted() throws Exception {
+        // Room for a single response
+        start(EVICTION_ADDRESS, 60000, 400);
+
+        Assert.assertEquals(1, client.getMibObjectAsInteger(POLLS));
+        Assert.assertEquals(2, client.getMibObjectAsInteger(OTHER));
+        Assert.assertEquals(2, client.getMibObjectAsInteger(POLLS));
+
+        ResponseCache cache = agent.getResponseCache();
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(2, cache.getEvictions());
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(cache.getBytes() <= 400);
+    }
+}
@@ -0,0 +1,104 @@
+package com.tzavelas.snmp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariantVariable;
+
+/**
+ * Test the round trip time estimation and the retransmit timeout derived from it.
+ */
+public class TestRttEstimator {
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void timeoutFollowsSamples() {
+        RttEstimator rtt = new RttEstimator(1000, 10, 5000);
+        Assert.assertEquals(1000, rtt.getTimeoutMillis());
+
+        rtt.addSample(millis(100));
+        // SRTT + 4 * RTTVAR with RTTVAR = RTT / 2 after the first sample
+        Assert.assertEquals(100000, rtt.getSmoothedRttMicros());
+        Assert.assertEquals(300, rtt.getTimeoutMillis());
+
+        for (int i = 0; i < 100; i++) {
+            rtt.addSample(millis(20));
+        }
+        Assert.assertEquals(20000, rtt.getSmoothedRttMicros(), 100);
+        Assert.assertEquals(20, rtt.getTimeoutMillis(), 1);
+    }
+
+    @Test
+    public void timeoutIsBounded() {
+        RttEstimator rtt = new RttEstimator(1000, 100, 2000);
+        rtt.addSample(TimeUnit.MICROSECONDS.toNanos(50));
+        Assert.assertEquals(100, rtt.getTimeoutMillis());
+        rtt.addSample(millis(10000));
+        Assert.assertEquals(2000, rtt.getTimeoutMillis());
+    }
+
+    @Test
+    public void retriesAndTimeoutsBackOff() {
+        RttEstimator rtt = new RttEstimator(100, 100, 1000);
+        Assert.assertEquals(100, rtt.getTimeoutMillis(0));
+        Assert.assertEquals(200, rtt.getTimeoutMillis(1));
+        Assert.assertEquals(400, rtt.getTimeoutMillis(2));
+        Assert.assertEquals(1000, rtt.getTimeoutMillis(4));
+        Assert.assertEquals(1000, rtt.getTimeoutMillis(100));
+        Assert.assertEquals(700, rtt.getRequestTimeoutMillis(2));
+
+        rtt.onTimeout();
+        Assert.assertEquals(200, rtt.getTimeoutMillis());
+        Assert.assertEquals(1, rtt.getTimeouts());
+        // A sample ends the backoff
+        rtt.addSample(millis(1));
+        Assert.assertEquals(100, rtt.getTimeoutMillis());
+    }
+
+    @Test
+    public void percentilesOfRecentSamples() {
+        RttEstimator rtt = new RttEstimator();
+        Assert.assertEquals(0, rtt.getRttPercentileMicros(50));
+        for (int i = 1; i <= 100; i++) {
+            rtt.addSample(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        Assert.assertEquals(50, rtt.getRttPercentileMicros(50));
+        Assert.assertEquals(99, rtt.getRttPercentileMicros(99));
+        Assert.assertEquals(100, rtt.getRttPercentileMicros(100));
+        Assert.assertEquals(1, rtt.getRttPercentileMicros(0));
+    }
+
+    @Test
+    public void statisticsAreMibObjects() throws Exception {
+        RttEstimator rtt = new RttEstimator();
+        rtt.addSample(millis(2));
+        rtt.onRetransmit();
+        String prefix = "1.3.6.1.4.1.29506.12";
+        AnnotatedStatsMOGroup moGroup = new AnnotatedStatsMOGroup();
+        Assert.assertEquals(8, moGroup.addAnnotatedMibObject(rtt, prefix + "."));
+        DefaultMOServer server = new DefaultMOServer();
+        moGroup.registerMOs(server, null);
+
+        Assert.assertEquals(new Gauge32(2000), getValue(server, prefix + ".1.0"));
+        Assert.assertEquals(new Gauge32(100), getValue(server, prefix + ".3.0"));
+        Assert.assertEquals(new Counter64(1), getValue(server, prefix + ".4.0"));
+        Assert.assertEquals(new Gauge32(2000), getValue(server, prefix + ".8.0"));
+    }
+
+    private static Variable getValue(DefaultMOServer server, String oid) {
+        MOScalar mo = (MOScalar) server.getManagedObject(new OID(oid), null);
+        VariantVariable variable = (VariantVariable) mo.getValue();
+        // Any read of the VariantVariable refreshes its value through the callback
+        variable.toString();
+        return variable.getVariable();
+    }
+}
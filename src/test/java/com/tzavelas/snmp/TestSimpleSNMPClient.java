@@ -0,0 +1,455 @@
+package com.tzavelas.snmp;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageException;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * Test the asynchronous requests of SimpleSNMPClient against an agent.
+ */
+
+class ClientTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.9";
+
+    @MibObject(oid=OID_PREFIX+".1")
+    int first = 1;
+
+    @MibObject(oid=OID_PREFIX+".2")
+    int second = 2;
+
+    // Cells large enough that a GET of all of them is tooBig for the agent
+    @MibTable(oid=OID_PREFIX+".3")
+    List<LargeRow> largeRows = new ArrayList<>();
+
+    @MibTable(oid=OID_PREFIX+".4")
+    List<IndexRow> indexRows = new ArrayList<>();
+
+    ClientTestStats() {
+        for (int i = 1; i <= 20; i++) {
+            largeRows.add(new LargeRow(i));
+        }
+        for (int i = 1; i <= IndexRow.ROWS; i++) {
+            indexRows.add(new IndexRow(i));
+        }
+    }
+}
+
+class IndexRow {
+    static final int ROWS = 5000;
+
+    @MibObject(oid="1")
+    final int index;
+
+    @MibObject(oid="2")
+    final int square;
+
+    IndexRow(int index) {
+        this.index = index;
+        this.square = index * index;
+    }
+}
+
+class LargeRow {
+    static final int SIZE = 4000;
+
+    @MibObject(oid="1")
+    final String value;
+
+    LargeRow(int index) {
+        char[] chars = new char[SIZE];
+        Arrays.fill(chars, (char) ('a' + index));
+        value = new String(chars);
+    }
+}
+
+/**
+ * Forwards datagrams between a client and an agent, dropping every dropEvery-th request
+ */
+class LossyUdpProxy implements AutoCloseable {
+    private final DatagramSocket clientSide;
+    private final DatagramSocket agentSide;
+    private volatile SocketAddress client = null;
+    private int requests = 0;
+
+    LossyUdpProxy(int port, final int agentPort, final int dropEvery) throws IOException {
+        clientSide = new DatagramSocket(port, InetAddress.getLoopbackAddress());
+        agentSide = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        final SocketAddress agent = new InetSocketAddress(InetAddress.getLoopbackAddress(), agentPort);
+        startForwarding(clientSide, agentSide, new Forward() {
+            @Override
+            public SocketAddress to(DatagramPacket packet) {
+                client = packet.getSocketAddress();
+                return ++requests % dropEvery == 0 ? null : agent;
+            }
+        });
+        startForwarding(agentSide, clientSide, new Forward() {
+            @Override
+            public SocketAddress to(DatagramPacket packet) {
+                return client;
+            }
+        });
+    }
+
+    private interface Forward {
+        SocketAddress to(DatagramPacket packet);
+    }
+
+    private static void startForwarding(final DatagramSocket from, final DatagramSocket via, final Forward forward) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[65535];
+                while (!from.isClosed()) {
+                    try {
+                        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                        from.receive(packet);
+                        SocketAddress to = forward.to(packet);
+                        if (to != null) {
+                            via.send(new DatagramPacket(packet.getData(), packet.getLength(), to));
+                        }
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        clientSide.close();
+        agentSide.close();
+    }
+}
+
+/**
+ * Agent that answers every GET with the first varbind of the request only
+ */
+class TruncatingAgent implements CommandResponder, AutoCloseable {
+    private final Snmp snmp;
+
+    TruncatingAgent(String address) throws IOException {
+        snmp = new Snmp(new DefaultUdpTransportMapping(new UdpAddress(address)));
+        snmp.addCommandResponder(this);
+        snmp.listen();
+    }
+
+    @Override
+    public void processPdu(CommandResponderEvent event) {
+        PDU response = new PDU();
+        response.setType(PDU.RESPONSE);
+        response.setRequestID(event.getPDU().getRequestID());
+        response.add(new VariableBinding(event.getPDU().get(0).getOid(), new Integer32(1)));
+        try {
+            event.getMessageDispatcher().returnResponsePdu(event.getMessageProcessingModel(),
+                    event.getSecurityModel(), event.getSecurityName(), event.getSecurityLevel(), response,
+                    event.getMaxSizeResponsePDU(), event.getStateReference(), new StatusInformation());
+        } catch (MessageException e) {
+            throw new IllegalStateException(e);
+        }
+        event.setProcessed(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        snmp.close();
+    }
+}
+
+public class TestSimpleSNMPClient {
+    private static final String ADDRESS = "127.0.0.1/2004";
+    private static final OID FIRST = new OID(ClientTestStats.OID_PREFIX + ".1.0");
+    private static final OID SECOND = new OID(ClientTestStats.OID_PREFIX + ".2.0");
+
+    private static SimpleSNMPAgent agent = null;
+    private static AnnotatedStatsMOGroup moGroup = null;
+
+    @BeforeClass
+    public static void setupClass() throws Exception {
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new ClientTestStats());
+        agent = new SimpleSNMPAgent(ADDRESS);
+        agent.start();
+        moGroup.registerMOs(agent.getServer(), null);
+    }
+
+    @AfterClass
+    public static void teardownClass() throws Exception {
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Test
+    public void asyncGetCompletesWithResponse() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+        try {
+            PDU response = client.getMibObjectsAsync(FIRST, SECOND).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(1, response.get(0).getVariable().toInt());
+            Assert.assertEquals(2, response.get(1).getVariable().toInt());
+            Assert.assertEquals(0, client.getInFlight());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void pipelinedGetsStayWithinWindow() throws Exception {
+        int maxInFlight = 8;
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.setMaxInFlight(maxInFlight);
+        client.start();
+        try {
+            List<CompletableFuture<PDU>> futures = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                futures.add(client.getMibObjectsAsync(i % 2 == 0 ? FIRST : SECOND));
+                Assert.assertTrue(client.getInFlight() <= maxInFlight);
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                PDU response = futures.get(i).get(5, TimeUnit.SECONDS);
+                Assert.assertEquals(i % 2 == 0 ? 1 : 2, response.get(0).getVariable().toInt());
+            }
+            Assert.assertEquals(0, client.getInFlight());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncGetTimesOutWithoutAgent() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient("127.0.0.1/2999");
+        client.setTimeout(100);
+        client.setRetries(0);
+        client.start();
+        try {
+            client.getMibObjectsAsync(FIRST).get(5, TimeUnit.SECONDS);
+            Assert.fail("Request did not time out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+            Assert.assertEquals(0, client.getInFlight());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelReleasesWindow() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient("127.0.0.1/2999");
+        client.setMaxInFlight(1);
+        client.start();
+        try {
+            CompletableFuture<PDU> future = client.getMibObjectsAsync(FIRST);
+            Assert.assertEquals(1, client.getInFlight());
+            Assert.assertTrue(future.cancel(false));
+            Assert.assertEquals(0, client.getInFlight());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void shutdownFailsPendingRequests() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient("127.0.0.1/2999");
+        client.start();
+        List<CompletableFuture<PDU>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(client.getMibObjectsAsync(FIRST));
+        }
+        client.shutdown();
+        for (CompletableFuture<PDU> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                Assert.fail("Pending request completed after shutdown");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof InterruptedException);
+            }
+        }
+        Assert.assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    public void batchedGetKeepsRequestOrder() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.setMaxOidsPerPdu(7);
+        client.start();
+        try {
+            List<OID> oids = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                oids.add(i % 3 == 0 ? FIRST : SECOND);
+            }
+            List<VariableBinding> results = client.getMibObjectsAsync(oids).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(oids.size(), results.size());
+            for (int i = 0; i < oids.size(); i++) {
+                Assert.assertEquals(oids.get(i), results.get(i).getOid());
+                Assert.assertEquals(i % 3 == 0 ? 1 : 2, results.get(i).getVariable().toInt());
+            }
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void tooBigBatchIsSplit() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.setMaxOidsPerPdu(20);
+        client.start();
+        try {
+            List<OID> oids = new ArrayList<>();
+            for (int i = 1; i <= 20; i++) {
+                oids.add(new OID(ClientTestStats.OID_PREFIX + ".3.1.1." + i));
+            }
+            Assert.assertEquals(PDU.tooBig, client.getMibObjectsAsync(oids.toArray(new OID[oids.size()]))
+                    .get(5, TimeUnit.SECONDS).getErrorStatus());
+
+            List<VariableBinding> results = client.getMibObjectsAsync(oids).get(5, TimeUnit.SECONDS);
+            for (int i = 0; i < oids.size(); i++) {
+                Assert.assertEquals(oids.get(i), results.get(i).getOid());
+                Assert.assertEquals(new LargeRow(i + 1).value, results.get(i).getVariable().toString());
+            }
+            Assert.assertTrue("Learned " + client.getMaxOidsPerPdu() + " OIDs per PDU", client.getMaxOidsPerPdu() < 20);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void batchAnsweredWithMissingVarbindsFails() throws Exception {
+        try (TruncatingAgent truncating = new TruncatingAgent("127.0.0.1/2021")) {
+            SimpleSNMPClient client = new SimpleSNMPClient("127.0.0.1/2021");
+            client.start();
+            try {
+                client.getMibObjectsAsync(Arrays.asList(FIRST, SECOND)).get(5, TimeUnit.SECONDS);
+                Assert.fail("Batch with a missing varbind completed");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IOException);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void walkReturnsSubtreeInOrder() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.setMaxInFlight(1);
+        client.start();
+        try {
+            OID column = new OID(ClientTestStats.OID_PREFIX + ".4.1.2");
+            Iterator<VariableBinding> walk = client.walkIterator(column, 37);
+            for (int i = 1; i <= IndexRow.ROWS; i++) {
+                Assert.assertTrue(walk.hasNext());
+                VariableBinding vb = walk.next();
+                Assert.assertEquals(new OID(column.toString() + "." + i), vb.getOid());
+                Assert.assertEquals(i * i, vb.getVariable().toInt());
+            }
+            Assert.assertFalse(walk.hasNext());
+            Assert.assertEquals(0, client.getInFlight());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void walkOfScalarAndOfEmptySubtree() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+        try {
+            List<VariableBinding> scalar = client.walk(new OID(ClientTestStats.OID_PREFIX + ".1"), 10)
+                    .collect(Collectors.<VariableBinding>toList());
+            Assert.assertEquals(1, scalar.size());
+            Assert.assertEquals(FIRST, scalar.get(0).getOid());
+
+            Assert.assertEquals(0, client.walk(new OID(ClientTestStats.OID_PREFIX + ".8"), 10).count());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void closingWalkCancelsNextRequest() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+        try {
+            OID table = new OID(ClientTestStats.OID_PREFIX + ".4");
+            try (Stream<VariableBinding> walk = client.walk(table, 10)) {
+                Assert.assertEquals(15, walk.limit(15).count());
+            }
+            Assert.assertEquals(0, client.getInFlight());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void adaptiveTimeoutFollowsRtt() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+        try {
+            Assert.assertEquals(RttEstimator.DEFAULT_INITIAL_TIMEOUT_MILLIS, client.getRttEstimator().getTimeoutMillis());
+            for (int i = 0; i < 50; i++) {
+                Assert.assertEquals(1, client.getMibObjectAsInteger(FIRST));
+                client.getMibObjectsAsync(SECOND).get(5, TimeUnit.SECONDS);
+            }
+            RttEstimator rtt = client.getRttEstimator();
+            Assert.assertEquals(100, rtt.getSamples());
+            Assert.assertTrue(rtt.getSmoothedRttMicros() > 0);
+            Assert.assertTrue(rtt.getTimeoutMillis() < RttEstimator.DEFAULT_INITIAL_TIMEOUT_MILLIS);
+            Assert.assertTrue(rtt.getRttPercentileMicros(50) <= rtt.getRttPercentileMicros(99));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void droppedRequestsAreRetransmittedAfterRtt() throws Exception {
+        try (LossyUdpProxy proxy = new LossyUdpProxy(2007, 2004, 3)) {
+            SimpleSNMPClient client = new SimpleSNMPClient("127.0.0.1/2007");
+            client.start();
+            try {
+                long start = System.nanoTime();
+                for (int i = 0; i < 30; i++) {
+                    Assert.assertEquals(1, client.getMibObjectAsInteger(FIRST));
+                }
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                RttEstimator rtt = client.getRttEstimator();
+                Assert.assertTrue("Retransmitted " + rtt.getRetransmits(), rtt.getRetransmits() >= 10);
+                Assert.assertEquals(0, rtt.getTimeouts());
+                // About 10 retransmits after the minimum timeout rather than the 5s of a fixed timeout
+                Assert.assertTrue("30 GETs took " + elapsedMillis + "ms", elapsedMillis < 5000);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.GenericAddress;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * Test polling many targets over the shared transports of SimpleSNMPPoller.
+ */
+
+class PollerTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.10";
+
+    @MibObject(oid=OID_PREFIX+".1")
+    int value = 42;
+}
+
+class CountingPollListener implements SimpleSNMPPoller.PollListener {
+    final ConcurrentMap<SimpleSNMPPoller.PollTarget, AtomicInteger> responses = new ConcurrentHashMap<>();
+    final ConcurrentMap<SimpleSNMPPoller.PollTarget, AtomicInteger> failures = new ConcurrentHashMap<>();
+    final AtomicReference<Throwable> lastFailure = new AtomicReference<>();
+    final AtomicReference<PDU> lastResponse = new AtomicReference<>();
+
+    @Override
+    public void onResponse(SimpleSNMPPoller.PollTarget target, PDU response) {
+        lastResponse.set(response);
+        increment(responses, target);
+    }
+
+    @Override
+    public void onFailure(SimpleSNMPPoller.PollTarget target, Throwable error) {
+        lastFailure.set(error);
+        increment(failures, target);
+    }
+
+    int responses(SimpleSNMPPoller.PollTarget target) {
+        return count(responses, target);
+    }
+
+    int failures(SimpleSNMPPoller.PollTarget target) {
+        return count(failures, target);
+    }
+
+    private static void increment(ConcurrentMap<SimpleSNMPPoller.PollTarget, AtomicInteger> counts,
+                                  SimpleSNMPPoller.PollTarget target) {
+        counts.putIfAbsent(target, new AtomicInteger());
+        counts.get(target).incrementAndGet();
+    }
+
+    private static int count(ConcurrentMap<SimpleSNMPPoller.PollTarget, AtomicInteger> counts,
+                             SimpleSNMPPoller.PollTarget target) {
+        AtomicInteger count = counts.get(target);
+        return count == null ? 0 : count.get();
+    }
+}
+
+public class TestSimpleSNMPPoller {
+    private static final String ADDRESS = "127.0.0.1/2005";
+    private static final OID VALUE = new OID(PollerTestStats.OID_PREFIX + ".1.0");
+
+    private static SimpleSNMPAgent agent = null;
+    private static AnnotatedStatsMOGroup moGroup = null;
+    private SimpleSNMPPoller poller = null;
+
+    @BeforeClass
+    public static void setupClass() throws Exception {
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new PollerTestStats());
+        agent = new SimpleSNMPAgent(ADDRESS);
+        agent.start();
+        moGroup.registerMOs(agent.getServer(), null);
+    }
+
+    @AfterClass
+    public static void teardownClass() throws Exception {
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        poller = new SimpleSNMPPoller(2);
+        poller.setTickMillis(5);
+        poller.setWheelSize(16);
+        poller.start();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        poller.shutdown();
+    }
+
+    @Test
+    public void pollsEveryTargetPeriodically() throws Exception {
+        CountingPollListener listener = new CountingPollListener();
+        List<SimpleSNMPPoller.PollTarget> targets = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // Intervals longer than the wheel period take several rounds of the wheel
+            targets.add(poller.addTarget(ADDRESS, 100 + i, listener, VALUE));
+        }
+        Thread.sleep(2000);
+        for (SimpleSNMPPoller.PollTarget target : targets) {
+            poller.removeTarget(target);
+        }
+        // Let the polls in flight complete
+        Thread.sleep(300);
+        for (SimpleSNMPPoller.PollTarget target : targets) {
+            long polls = target.getPolls();
+            Assert.assertTrue(target + " polled " + polls + " times", polls >= 8 && polls <= 25);
+            // Every poll is answered or reported, a loaded machine may time out a few
+            Assert.assertEquals(polls, listener.responses(target) + listener.failures(target));
+            Assert.assertTrue(listener.responses(target) >= polls - 2);
+        }
+        Assert.assertEquals(42, listener.lastResponse.get().get(0).getVariable().toInt());
+    }
+
+    @Test
+    public void removedTargetIsNotPolled() throws Exception {
+        CountingPollListener listener = new CountingPollListener();
+        SimpleSNMPPoller.PollTarget target = poller.addTarget(ADDRESS, 20, listener, VALUE);
+        Thread.sleep(200);
+        poller.removeTarget(target);
+        Thread.sleep(50);
+        long polls = target.getPolls();
+        Assert.assertTrue(polls > 0);
+        Thread.sleep(200);
+        Assert.assertEquals(polls, target.getPolls());
+    }
+
+    @Test
+    public void jitterDoesNotAccumulate() throws Exception {
+        long interval = 1000000;
+        SimpleSNMPPoller.PollTarget target = poller.addTarget(ADDRESS, interval, new CountingPollListener(), VALUE);
+        // Let the wheel thread schedule the target, its first poll is far ahead
+        Thread.sleep(50);
+        long maxOffset = (long) (interval * SimpleSNMPPoller.DEFAULT_JITTER);
+
+        // Far behind its first period, so anchored at the first poll
+        long now = 1L << 40;
+        long deadline = poller.advance(target, now);
+        long period = now + interval;
+        Assert.assertTrue(Math.abs(deadline - period) <= maxOffset);
+        for (int i = 0; i < 1000; i++) {
+            deadline = poller.advance(target, deadline);
+            period += interval;
+            Assert.assertTrue("Poll " + i + " off by " + (deadline - period), Math.abs(deadline - period) <= maxOffset);
+        }
+
+        // A stall does not lead to a catch up burst
+        now = period + 10 * interval;
+        deadline = poller.advance(target, now);
+        Assert.assertTrue(Math.abs(deadline - (now + interval)) <= maxOffset);
+        poller.removeTarget(target);
+    }
+
+    @Test
+    public void shutdownWithoutStart() throws Exception {
+        new SimpleSNMPPoller().shutdown();
+    }
+
+    @Test
+    public void pollsOverInFlightLimitAreSkipped() throws Exception {
+        final CountDownLatch timedOut = new CountDownLatch(1);
+        CountingPollListener listener = new CountingPollListener() {
+            @Override
+            public void onFailure(SimpleSNMPPoller.PollTarget target, Throwable error) {
+                super.onFailure(target, error);
+                timedOut.countDown();
+            }
+        };
+        CommunityTarget unreachable = new CommunityTarget();
+        unreachable.setCommunity(new OctetString("public"));
+        unreachable.setAddress(GenericAddress.parse("127.0.0.1/2998"));
+        unreachable.setVersion(SnmpConstants.version2c);
+        unreachable.setRetries(0);
+        unreachable.setTimeout(300);
+        SimpleSNMPPoller.PollTarget target = poller.addTarget(unreachable, 20, 2, listener, VALUE);
+
+        Assert.assertTrue(timedOut.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(String.valueOf(listener.lastFailure.get()), listener.lastFailure.get() instanceof TimeoutException);
+        Assert.assertTrue(target.getInFlight() <= 2);
+        Assert.assertTrue("Skipped " + target.getSkipped(), target.getSkipped() > 0);
+    }
+}
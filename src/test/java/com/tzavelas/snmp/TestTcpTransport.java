@@ -0,0 +1,130 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * Test SimpleSNMPAgent and SimpleSNMPClient over TCP.
+ */
+
+class TcpTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.25";
+
+    @MibObject(oid=OID_PREFIX+".1")
+    int first = 1;
+
+    @MibTable(oid=OID_PREFIX+".2")
+    List<TcpIndexRow> indexRows = new ArrayList<>();
+
+    TcpTestStats() {
+        for (int i = 1; i <= TcpIndexRow.ROWS; i++) {
+            indexRows.add(new TcpIndexRow(i));
+        }
+    }
+}
+
+class TcpIndexRow {
+    static final int ROWS = 5000;
+
+    @MibObject(oid="1")
+    final int index;
+
+    TcpIndexRow(int index) {
+        this.index = index;
+    }
+}
+
+public class TestTcpTransport {
+    private static final String ADDRESS = "tcp:127.0.0.1/2010";
+    private static final OID FIRST = new OID(TcpTestStats.OID_PREFIX + ".1.0");
+    private static final OID INDEX_COLUMN = new OID(TcpTestStats.OID_PREFIX + ".2.1.1");
+    // About 24 bytes per varbind, beyond the 64KB a UDP response is trimmed to
+    private static final int BULK_ROWS = 3000;
+
+    private static SimpleSNMPAgent agent = null;
+    private static AnnotatedStatsMOGroup moGroup = null;
+
+    @BeforeClass
+    public static void setupClass() throws Exception {
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new TcpTestStats());
+        agent = new SimpleSNMPAgent(ADDRESS);
+        agent.start();
+        moGroup.registerMOs(agent.getServer(), null);
+    }
+
+    @AfterClass
+    public static void teardownClass() throws Exception {
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Test
+    public void getOverTcp() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+        try {
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals(1, client.getMibObjectAsInteger(FIRST));
+            }
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void bulkResponseLargerThanDatagram() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+        try {
+            PDU response = client.getBulkMibObjects(BULK_ROWS, INDEX_COLUMN).getResponse();
+            Assert.assertEquals(PDU.noError, response.getErrorStatus());
+            Assert.assertEquals(BULK_ROWS, response.size());
+            Assert.assertTrue(response.getBERLength() > SimpleSNMPAgent.MAX_RESPONSE_PDU_SIZE);
+            for (int i = 0; i < BULK_ROWS; i++) {
+                Assert.assertEquals(new OID(INDEX_COLUMN.toString() + "." + (i + 1)), response.get(i).getOid());
+            }
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void walkOverTcp() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+        try {
+            Iterator<VariableBinding> walk = client.walkIterator(INDEX_COLUMN, 1000);
+            int rows = 0;
+            while (walk.hasNext()) {
+                Assert.assertEquals(++rows, walk.next().getVariable().toInt());
+            }
+            Assert.assertEquals(TcpIndexRow.ROWS, rows);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void requestAfterIdleTimeoutReconnects() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.setIdleTimeout(100);
+        client.start();
+        try {
+            Assert.assertEquals(1, client.getMibObjectAsInteger(FIRST));
+            Thread.sleep(500);
+            Assert.assertEquals(1, client.getMibObjectAsInteger(FIRST));
+        } finally {
+            client.shutdown();
+        }
+    }
+}
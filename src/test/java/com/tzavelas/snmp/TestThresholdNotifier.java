@@ -0,0 +1,284 @@
+package com.tzavelas.snmp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.agent.NotificationOriginator;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * Test the notifications of ThresholdNotifier.
+ */
+
+class AlarmTestStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.18";
+
+    @MibObject(oid=OID_PREFIX+".1", type="Gauge32", risingThreshold=100, fallingThreshold=10)
+    volatile long queueDepth = 50;
+
+    @MibObject(oid=OID_PREFIX+".2", risingThreshold=5)
+    volatile int errors = 0;
+
+    @MibObject(oid=OID_PREFIX+".3", notifyOnChange=true)
+    volatile String state = "up";
+}
+
+class InvertedThresholdStats {
+    @MibObject(oid=AlarmTestStats.OID_PREFIX+".4", risingThreshold=10, fallingThreshold=20)
+    volatile int value = 15;
+}
+
+/**
+ * Stand-in for the notification originator of an agent, keeps the notifications
+ */
+class RecordingOriginator implements NotificationOriginator {
+    final List<OID> notificationIDs = new ArrayList<>();
+    final List<VariableBinding[]> notifications = new ArrayList<>();
+
+    @Override
+    public synchronized Object notify(OctetString context, OID notificationID, VariableBinding[] vbs) {
+        notificationIDs.add(notificationID);
+        notifications.add(vbs);
+        return null;
+    }
+
+    @Override
+    public Object notify(OctetString context, OID notificationID, TimeTicks sysUpTime, VariableBinding[] vbs) {
+        return notify(context, notificationID, vbs);
+    }
+}
+
+/**
+ * Local trap receiver standing in for a manager
+ */
+class TrapReceiver implements CommandResponder {
+    final BlockingQueue<PDU> traps = new LinkedBlockingQueue<>();
+    private final Snmp snmp;
+
+    TrapReceiver(String address) throws IOException {
+        snmp = new Snmp(new DefaultUdpTransportMapping(new UdpAddress(address)));
+        snmp.addCommandResponder(this);
+        snmp.listen();
+    }
+
+    @Override
+    public void processPdu(CommandResponderEvent event) {
+        traps.add(event.getPDU());
+    }
+
+    void close() throws IOException {
+        snmp.close();
+    }
+}
+
+public class TestThresholdNotifier {
+    private static final String AGENT_ADDRESS = "127.0.0.1/2015";
+    private static final String RECEIVER_ADDRESS = "127.0.0.1/2016";
+    private static final OID QUEUE_DEPTH = new OID(AlarmTestStats.OID_PREFIX + ".1.0");
+    private static final OID ERRORS = new OID(AlarmTestStats.OID_PREFIX + ".2.0");
+    private static final OID STATE = new OID(AlarmTestStats.OID_PREFIX + ".3.0");
+
+    private AlarmTestStats statsObj = null;
+    private AnnotatedStatsMOGroup moGroup = null;
+    private RecordingOriginator originator = null;
+    private ThresholdNotifier notifier = null;
+
+    @Before
+    public void setup() {
+        statsObj = new AlarmTestStats();
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(statsObj);
+        originator = new RecordingOriginator();
+        notifier = new ThresholdNotifier(originator);
+        notifier.setMinIntervalMillis(0);
+        moGroup.setNotifier(notifier);
+    }
+
+    @After
+    public void teardown() {
+        notifier.stop();
+    }
+
+    private void assertNotification(int index, OID notificationID, OID oid, long value) {
+        Assert.assertEquals(notificationID, originator.notificationIDs.get(index));
+        VariableBinding[] vbs = originator.notifications.get(index);
+        Assert.assertEquals(1, vbs.length);
+        Assert.assertEquals(oid, vbs[0].getOid());
+        Assert.assertEquals(value, vbs[0].getVariable().toLong());
+    }
+
+    private static Variable findVariable(PDU pdu, OID oid) {
+        for (int i = 0; i < pdu.size(); i++) {
+            if (pdu.get(i).getOid().equals(oid)) {
+                return pdu.get(i).getVariable();
+            }
+        }
+        throw new AssertionError("No " + oid + " in " + pdu);
+    }
+
+    @Test
+    public void risingAndFallingThresholdsWithHysteresis() {
+        notifier.evaluate();
+        Assert.assertEquals(0, originator.notifications.size());
+
+        statsObj.queueDepth = 150;
+        notifier.evaluate();
+        assertNotification(0, ThresholdNotifier.RISING_NOTIFICATION, QUEUE_DEPTH, 150);
+
+        // Above the rising threshold again only once it fell to the falling one
+        statsObj.queueDepth = 200;
+        notifier.evaluate();
+        statsObj.queueDepth = 50;
+        notifier.evaluate();
+        statsObj.queueDepth = 120;
+        notifier.evaluate();
+        Assert.assertEquals(1, originator.notifications.size());
+
+        statsObj.queueDepth = 5;
+        notifier.evaluate();
+        assertNotification(1, ThresholdNotifier.FALLING_NOTIFICATION, QUEUE_DEPTH, 5);
+        statsObj.queueDepth = 150;
+        notifier.evaluate();
+        assertNotification(2, ThresholdNotifier.RISING_NOTIFICATION, QUEUE_DEPTH, 150);
+    }
+
+    @Test
+    public void singleThresholdIsArmedAgainBelowIt() {
+        statsObj.errors = 6;
+        notifier.evaluate();
+        statsObj.errors = 7;
+        notifier.evaluate();
+        statsObj.errors = 3;
+        notifier.evaluate();
+        statsObj.errors = 6;
+        notifier.evaluate();
+
+        Assert.assertEquals(2, originator.notifications.size());
+        assertNotification(0, ThresholdNotifier.RISING_NOTIFICATION, ERRORS, 6);
+        assertNotification(1, ThresholdNotifier.RISING_NOTIFICATION, ERRORS, 6);
+    }
+
+    @Test
+    public void ignoresFallingThresholdNotBelowRising() {
+        InvertedThresholdStats inverted = new InvertedThresholdStats();
+        moGroup.addAnnotatedMibObject(inverted);
+        for (int value : new int[] { 15, 5, 15, 25, 15 }) {
+            inverted.value = value;
+            notifier.evaluate();
+        }
+        Assert.assertEquals(0, originator.notifications.size());
+    }
+
+    @Test
+    public void notifiesChanges() {
+        notifier.evaluate();
+        notifier.evaluate();
+        Assert.assertEquals(0, originator.notifications.size());
+
+        statsObj.state = "down";
+        notifier.evaluate();
+        Assert.assertEquals(1, originator.notifications.size());
+        Assert.assertEquals(ThresholdNotifier.CHANGE_NOTIFICATION, originator.notificationIDs.get(0));
+        Assert.assertEquals(STATE, originator.notifications.get(0)[0].getOid());
+        Assert.assertEquals("down", originator.notifications.get(0)[0].getVariable().toString());
+    }
+
+    @Test
+    public void batchesEventsOfAnEvaluation() {
+        AlarmTestStats[] others = { new AlarmTestStats(), new AlarmTestStats() };
+        moGroup.addAnnotatedMibObject(others[0], "1.3.6.1.4.1.29506.19.");
+        moGroup.addAnnotatedMibObject(others[1], "1.3.6.1.4.1.29506.20.");
+        notifier.setMaxVarbinds(2);
+
+        statsObj.errors = 6;
+        others[0].errors = 6;
+        others[1].errors = 6;
+        statsObj.state = "down";
+        notifier.evaluate();
+        statsObj.state = "up";
+        notifier.evaluate();
+
+        Assert.assertEquals(4, notifier.getEvents());
+        Assert.assertEquals(ThresholdNotifier.RISING_NOTIFICATION, originator.notificationIDs.get(0));
+        Assert.assertEquals(2, originator.notifications.get(0).length);
+        Assert.assertEquals(ThresholdNotifier.RISING_NOTIFICATION, originator.notificationIDs.get(1));
+        Assert.assertEquals(1, originator.notifications.get(1).length);
+        Assert.assertEquals(ThresholdNotifier.CHANGE_NOTIFICATION, originator.notificationIDs.get(2));
+        Assert.assertEquals(3, originator.notifications.size());
+    }
+
+    @Test
+    public void rateLimitsAndCoalescesEventsOfAnOid() {
+        notifier.setMinIntervalMillis(60000);
+        statsObj.errors = 6;
+        notifier.evaluate();
+        Assert.assertEquals(1, originator.notifications.size());
+
+        // Storm of crossings within the interval, only the last one is kept
+        for (int errors = 7; errors < 10; errors++) {
+            statsObj.errors = 3;
+            notifier.evaluate();
+            statsObj.errors = errors;
+            notifier.evaluate();
+        }
+        Assert.assertEquals(1, originator.notifications.size());
+        Assert.assertEquals(4, notifier.getEvents());
+        Assert.assertEquals(2, notifier.getCoalescedEvents());
+
+        notifier.setMinIntervalMillis(0);
+        notifier.evaluate();
+        Assert.assertEquals(2, notifier.getNotifications());
+        assertNotification(1, ThresholdNotifier.RISING_NOTIFICATION, ERRORS, 9);
+    }
+
+    @Test
+    public void stopsNotifyingWithoutNotifier() {
+        moGroup.setNotifier(null);
+        statsObj.errors = 6;
+        notifier.evaluate();
+        Assert.assertEquals(0, notifier.getEvents());
+    }
+
+    @Test
+    public void sendsTrapsToNotificationTargets() throws Exception {
+        TrapReceiver receiver = new TrapReceiver(RECEIVER_ADDRESS);
+        SimpleSNMPAgent agent = new SimpleSNMPAgent(AGENT_ADDRESS, true);
+        agent.addNotificationTarget(RECEIVER_ADDRESS);
+        agent.start();
+        ThresholdNotifier agentNotifier = new ThresholdNotifier(agent.getNotificationOriginator());
+        try {
+            moGroup.setNotifier(agentNotifier);
+            statsObj.errors = 6;
+            agentNotifier.start(10);
+
+            PDU trap = receiver.traps.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(trap);
+            Assert.assertEquals(PDU.TRAP, trap.getType());
+            Assert.assertEquals(ThresholdNotifier.RISING_NOTIFICATION, findVariable(trap, SnmpConstants.snmpTrapOID));
+            Assert.assertEquals(6, findVariable(trap, ERRORS).toInt());
+        } finally {
+            agentNotifier.stop();
+            agent.stop();
+            receiver.close();
+        }
+    }
+}
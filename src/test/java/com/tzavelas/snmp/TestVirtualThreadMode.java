@@ -0,0 +1,140 @@
+package com.tzavelas.snmp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.smi.OID;
+
+/**
+ * Test blocking client calls and agent requests running on VirtualThreads executors.
+ */
+
+class SlowStats {
+    protected static final String OID_PREFIX = "1.3.6.1.4.1.29506.11";
+    static final long DELAY_MILLIS = 500;
+
+    @MibObject(oid=OID_PREFIX+".1")
+    private int getSlow() throws InterruptedException {
+        Thread.sleep(DELAY_MILLIS);
+        return 1;
+    }
+
+    @MibObject(oid=OID_PREFIX+".2")
+    int fast = 2;
+}
+
+public class TestVirtualThreadMode {
+    private static final String ADDRESS = "127.0.0.1/2006";
+    private static final OID SLOW = new OID(SlowStats.OID_PREFIX + ".1.0");
+    private static final OID FAST = new OID(SlowStats.OID_PREFIX + ".2.0");
+
+    private static SimpleSNMPAgent agent = null;
+    private static AnnotatedStatsMOGroup moGroup = null;
+
+    @BeforeClass
+    public static void setupClass() throws Exception {
+        moGroup = new AnnotatedStatsMOGroup();
+        moGroup.addAnnotatedMibObject(new SlowStats());
+        agent = new SimpleSNMPAgent(ADDRESS);
+        agent.setRequestExecutor(VirtualThreads.newExecutor("agent-request"));
+        agent.start();
+        moGroup.registerMOs(agent.getServer(), null);
+    }
+
+    @AfterClass
+    public static void teardownClass() throws Exception {
+        moGroup.unregisterMOs(agent.getServer(), null);
+        agent.stop();
+    }
+
+    @Test
+    public void supportFollowsJavaVersion() throws Exception {
+        String version = System.getProperty("java.specification.version");
+        boolean java21 = !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+        Assert.assertEquals(java21, VirtualThreads.isSupported());
+
+        ExecutorService executor = VirtualThreads.newExecutor("test");
+        try {
+            String name = executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return Thread.currentThread().getName();
+                }
+            }).get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(name, name.startsWith("test-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void slowMethodDoesNotHoldUpOtherRequests() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.start();
+        try {
+            CompletableFuture<PDU> slow = client.getMibObjectsAsync(SLOW);
+            long start = System.nanoTime();
+            PDU fast = client.getMibObjectsAsync(FAST).get(5, TimeUnit.SECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            Assert.assertEquals(2, fast.get(0).getVariable().toInt());
+            Assert.assertFalse(slow.isDone());
+            Assert.assertTrue("Fast GET took " + elapsedMillis + "ms", elapsedMillis < SlowStats.DELAY_MILLIS);
+            Assert.assertEquals(1, slow.get(5, TimeUnit.SECONDS).get(0).getVariable().toInt());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void blockingCallsFromManyThreads() throws Exception {
+        final SimpleSNMPClient client = new SimpleSNMPClient(ADDRESS);
+        client.setVirtualThreadMode(true);
+        client.start();
+        ExecutorService executor = VirtualThreads.newExecutor("poll");
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return client.getMibObjectAsInteger(FAST);
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                Assert.assertEquals(2, result.get(5, TimeUnit.SECONDS).intValue());
+            }
+            Assert.assertEquals(0, client.getInFlight());
+        } finally {
+            executor.shutdown();
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void blockingCallTimesOutWithNullResponse() throws Exception {
+        SimpleSNMPClient client = new SimpleSNMPClient("127.0.0.1/2999");
+        client.setVirtualThreadMode(true);
+        client.setTimeout(100);
+        client.setRetries(0);
+        client.start();
+        try {
+            ResponseEvent event = client.getMibObjects(FAST);
+            Assert.assertNull(event.getResponse());
+        } finally {
+            client.shutdown();
+        }
+    }
+}